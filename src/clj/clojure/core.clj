@@ -2072,6 +2072,10 @@
 
   :error-mode mode-keyword
 
+  :queue-limit n
+
+  :batch-size n
+
   If metadata-map is supplied, it will become the metadata on the
   agent. validate-fn must be nil or a side-effect-free fn of one
   argument, which will be passed the intended new state on any state
@@ -2081,7 +2085,12 @@
   see set-error-handler! for details.  The mode-keyword may be either
   :continue (the default if an error-handler is given) or :fail (the
   default if no error-handler is given) -- see set-error-mode! for
-  details."
+  details. If a queue-limit is given, a send or send-off from outside
+  any action or transaction blocks while n actions are already queued
+  for the agent. A batch-size (default 1, or the clojure.agent.batch-size
+  system property) lets the agent run up to n of its queued actions in
+  turn on one executor thread, rather than resubmitting each one, trading
+  fairness to other agents on the same executor for throughput."
   {:added "1.0"
    :static true
    }
@@ -2091,6 +2100,10 @@
        (setup-reference a options)
        (when (:error-handler opts)
          (.setErrorHandler a (:error-handler opts)))
+       (when (:queue-limit opts)
+         (.setQueueLimit a (:queue-limit opts)))
+       (when (:batch-size opts)
+         (.setBatchSize a (:batch-size opts)))
        (.setErrorMode a (or (:error-mode opts)
                             (if (:error-handler opts) :continue :fail)))
        a)))
@@ -2102,7 +2115,9 @@
   (set! clojure.lang.Agent/pooledExecutor executor))
 
 (defn set-agent-send-off-executor!
-  "Sets the ExecutorService to be used by send-off"
+  "Sets the ExecutorService to be used by send-off. On Java 21 and later
+  (clojure.lang.Agent/virtualThreadExecutor) gives one that runs each
+  action on a new virtual thread."
   {:added "1.5"}
   [executor]
   (set! clojure.lang.Agent/soloExecutor executor))
@@ -3875,7 +3890,8 @@
   start (inclusive) to end (exclusive).  If end is not supplied,
   defaults to (count vector). This operation is O(1) and very fast, as
   the resulting vector shares structure with the original and no
-  trimming is done."
+  trimming is done. Subvecs of RRB vectors (see clojure.core.rrb) are
+  slices instead, O(log n) and trimmed."
   {:added "1.0"
    :static true}
   ([v start]
@@ -6005,48 +6021,100 @@
               (load-one lib need-ns require)
               @*loaded-libs*))))
 
+(defonce ^:private loading-libs (java.util.concurrent.ConcurrentHashMap.))
+
+(defonce ^:private lib-waits (java.util.concurrent.ConcurrentHashMap.))
+
+(defn- check-cyclic-wait
+  "Throws if waiting for lib would close a cycle of threads each waiting
+  for a lib the next is loading, naming the libs in the cycle"
+  [lib]
+  (let [^java.util.concurrent.ConcurrentHashMap libs loading-libs
+        ^java.util.concurrent.ConcurrentHashMap waits lib-waits
+        thread (Thread/currentThread)]
+    (loop [l lib chain [lib]]
+      (when-let [[owner] (.get libs l)]
+        (if (identical? owner thread)
+          (let [pending (map #(if (= % l) (str "[ " % " ]") %) (cons l chain))]
+            (throw-if true "Cyclic load dependency: %s" (apply str (interpose "->" pending))))
+          (when-let [waiting (.get waits owner)]
+            (when-not (some #{waiting} chain)
+              (recur waiting (conj chain waiting)))))))))
+
+(defn- while-loading-lib
+  "Calls f with lib marked as being loaded by this thread, so that threads
+  requiring the same lib at once load it only once. If another thread is
+  loading lib, waits for it to finish before calling f. No lock is held
+  while waiting, and a thread whose wait would close a cycle of threads
+  waiting on each other's libs throws instead of waiting"
+  [lib f]
+  (let [^java.util.concurrent.ConcurrentHashMap libs loading-libs
+        ^java.util.concurrent.ConcurrentHashMap waits lib-waits
+        thread (Thread/currentThread)
+        latch (java.util.concurrent.CountDownLatch. 1)
+        mine [thread latch]]
+    (loop []
+      (let [[owner ^java.util.concurrent.CountDownLatch done :as loading] (.putIfAbsent libs lib mine)]
+        (cond
+         (nil? loading) (try
+                          (f)
+                          (finally
+                            (.remove libs lib mine)
+                            (.countDown latch)))
+         (identical? owner thread) (f)
+         :else (do
+                 (.put waits thread lib)
+                 (try
+                   (check-cyclic-wait lib)
+                   (.await done)
+                   (finally
+                     (.remove waits thread)))
+                 (recur)))))))
+
 (defn- load-lib
   "Loads a lib with options"
   [prefix lib & options]
   (throw-if (and prefix (pos? (.indexOf (name lib) (int \.))))
             "Found lib name '%s' containing period with prefix '%s'.  lib names inside prefix lists must not contain periods"
             (name lib) prefix)
-  (let [lib (if prefix (symbol (str prefix \. lib)) lib)
-        opts (apply hash-map options)
-        {:keys [as reload reload-all require use verbose]} opts
-        loaded (contains? @*loaded-libs* lib)
-        load (cond reload-all
-                   load-all
-                   (or reload (not require) (not loaded))
-                   load-one)
-        need-ns (or as use)
-        filter-opts (select-keys opts '(:exclude :only :rename :refer))
-        undefined-on-entry (not (find-ns lib))]
-    (binding [*loading-verbosely* (or *loading-verbosely* verbose)]
-      (if load
-        (try
-          (load lib need-ns require)
-          (catch Exception e
-            (when undefined-on-entry
-              (dosync
-                (alter *loaded-libs* disj lib))
-              (remove-ns lib))
-            (throw e)))
-        (throw-if (and need-ns (not (find-ns lib)))
-                  "namespace '%s' not found" lib))
-      (when (and need-ns *loading-verbosely*)
-        (printf "(clojure.core/in-ns '%s)\n" (ns-name *ns*)))
-      (when as
-        (when *loading-verbosely*
-          (printf "(clojure.core/alias '%s '%s)\n" as lib))
-        (alias as lib))
-      (when (or use (:refer filter-opts))
-        (when *loading-verbosely*
-          (printf "(clojure.core/refer '%s" lib)
-          (doseq [opt filter-opts]
-            (printf " %s '%s" (key opt) (print-str (val opt))))
-          (printf ")\n"))
-        (apply refer lib (mapcat seq filter-opts))))))
+  (let [lib (if prefix (symbol (str prefix \. lib)) lib)]
+    (while-loading-lib lib
+     (fn []
+       (let [opts (apply hash-map options)
+             {:keys [as reload reload-all require use verbose]} opts
+             loaded (contains? @*loaded-libs* lib)
+             load (cond reload-all
+                        load-all
+                        (or reload (not require) (not loaded))
+                        load-one)
+             need-ns (or as use)
+             filter-opts (select-keys opts '(:exclude :only :rename :refer))
+             undefined-on-entry (not (find-ns lib))]
+         (binding [*loading-verbosely* (or *loading-verbosely* verbose)]
+           (if load
+             (try
+               (load lib need-ns require)
+               (catch Exception e
+                 (when undefined-on-entry
+                   (dosync
+                     (alter *loaded-libs* disj lib))
+                   (remove-ns lib))
+                 (throw e)))
+             (throw-if (and need-ns (not (find-ns lib)))
+                       "namespace '%s' not found" lib))
+           (when (and need-ns *loading-verbosely*)
+             (printf "(clojure.core/in-ns '%s)\n" (ns-name *ns*)))
+           (when as
+             (when *loading-verbosely*
+               (printf "(clojure.core/alias '%s '%s)\n" as lib))
+             (alias as lib))
+           (when (or use (:refer filter-opts))
+             (when *loading-verbosely*
+               (printf "(clojure.core/refer '%s" lib)
+               (doseq [opt filter-opts]
+                 (printf " %s '%s" (key opt) (print-str (val opt))))
+               (printf ")\n"))
+             (apply refer lib (mapcat seq filter-opts)))))))))
 
 (defn- load-libs
   "Loads libs, interpreting libspecs, prefix lists, and flags for
@@ -6158,8 +6226,11 @@
   Future changes may make these equivalent."
   {:added "1.10"}
   [& args]
-  (locking clojure.lang.RT/REQUIRE_LOCK
-    (apply require args)))
+  ;; require loads a lib once however many threads ask for it, waiting
+  ;; for a lib another thread is loading without holding a lock. Holding
+  ;; REQUIRE_LOCK here while waiting would deadlock against a lib whose
+  ;; loading calls requiring-resolve.
+  (apply require args))
 
 (defn requiring-resolve
   "Resolves namespace-qualified sym per 'resolve'. If initial resolve
@@ -6552,6 +6623,8 @@ fails, attempts to require sym's namespace and retries."
   Supported options:
   :elide-meta - a collection of metadata keys to elide during compilation.
   :disable-locals-clearing - set to true to disable clearing, useful for using a debugger
+  :lazy-vars - set to true when AOT compiling to bind top level defns to a thunk
+    that loads the fn's class on first call, rather than when the ns is loaded
   Alpha, subject to change."
   {:added "1.4"})
 
@@ -0,0 +1,176 @@
+;   Copyright (c) Rich Hickey. All rights reserved.
+;   The use and distribution terms for this software are covered by the
+;   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+;   which can be found in the file epl-v10.html at the root of this distribution.
+;   By using this software in any fashion, you are agreeing to be bound by
+;   the terms of this license.
+;   You must not remove this notice, or any other, from this software.
+
+(ns ^{:doc "Loading many libs at once in parallel, for faster startup.
+
+  require-parallel reads the ns form of each lib to build the graph of
+  libs they require, then loads each lib on a bounded pool once all the
+  libs it depends on are loaded. AOT compiled libs gain the most, as
+  their load is mostly running __init, but any lib can be loaded this
+  way. It is typically called once at startup, e.g.
+
+    java -cp ... clojure.main -e \"(clojure.core.loader/require-parallel '[my.app])\" -m my.app
+
+  Libs must not depend on each other in a cycle across threads, two
+  threads loading each side of a cycle wait for each other."}
+  clojure.core.loader
+  (:import [java.io InputStreamReader PushbackReader]
+           [java.net URL]
+           [java.util.concurrent Callable ExecutionException ExecutorCompletionService
+            ExecutorService Executors ThreadFactory]
+           [java.util.concurrent.atomic AtomicInteger]
+           [clojure.lang LoadProfile RT]))
+
+(set! *warn-on-reflection* true)
+
+(defn- source-path
+  "Returns the classpath relative path of lib's source, or nil"
+  [lib]
+  (let [base (.. (name lib) (replace \- \_) (replace \. \/))
+        loader (RT/baseLoader)]
+    (some #(when (RT/getResource loader %) %)
+          [(str base ".clj") (str base ".cljc")])))
+
+(defn- libspec-libs
+  "Returns the libs named by the args of a :require or :use clause"
+  [args]
+  (mapcat (fn [arg]
+            (cond
+             (symbol? arg) [arg]
+             (and (vector? arg) (or (nil? (second arg)) (keyword? (second arg))))
+             [(first arg)]
+             (sequential? arg)
+             (let [[prefix & specs] arg]
+               (for [spec specs
+                     :let [lib (if (vector? spec) (first spec) spec)]
+                     :when (symbol? lib)]
+                 (symbol (str prefix \. lib))))))
+          args))
+
+(defn- read-ns-form
+  [^URL url]
+  (with-open [r (PushbackReader. (InputStreamReader. (.openStream url) "UTF-8"))]
+    (binding [*read-eval* false]
+      (let [form (read {:eof nil :read-cond :allow} r)]
+        (when (and (seq? form) ('#{ns clojure.core/ns} (first form)))
+          form)))))
+
+(defonce ^:private deps-cache (atom {}))
+
+(defn ns-deps
+  "Returns the set of libs named in the :require and :use clauses of the
+  ns form at the top of lib's source, or nil if it has no source on the
+  classpath. Results are cached until the source changes."
+  {:added "1.11"}
+  [lib]
+  (when-let [path (source-path lib)]
+    (let [url (RT/getResource (RT/baseLoader) path)
+          stamp (RT/lastModified url path)
+          [cached-stamp deps] (get @deps-cache (str url))]
+      (if (= stamp cached-stamp)
+        deps
+        (let [form (try (read-ns-form url) (catch Exception _ nil))
+              deps (set (for [clause (drop 2 form)
+                              :when (and (seq? clause) (#{:require :use} (first clause)))
+                              dep (libspec-libs (rest clause))]
+                          dep))]
+          (swap! deps-cache assoc (str url) [stamp deps])
+          deps)))))
+
+(defn dependency-graph
+  "Returns a map from each of libs, and the libs they depend on through
+  their ns forms, to the set of libs in the map it depends on. Libs
+  already loaded are left out."
+  {:added "1.11"}
+  [libs]
+  (let [loaded (loaded-libs)]
+    (loop [graph {} todo (seq libs)]
+      (if-let [[lib & more] todo]
+        (if (or (contains? graph lib) (contains? loaded lib))
+          (recur graph more)
+          (let [deps (disj (into #{} (remove loaded) (ns-deps lib)) lib)]
+            (recur (assoc graph lib deps) (concat deps more))))
+        graph))))
+
+(defn- thread-factory
+  ^ThreadFactory []
+  (let [n (AtomicInteger.)]
+    (reify ThreadFactory
+      (newThread [_ r]
+        (doto (Thread. r (str "clojure-loader-" (.incrementAndGet n)))
+          (.setDaemon true))))))
+
+(defn require-parallel
+  "Requires libs (a collection of lib symbols) and the libs they depend
+  on, loading independent libs in parallel on a pool of :threads threads
+  (default the number of processors). Bindings are conveyed to the
+  loading threads. Returns a map from each lib loaded to the nanoseconds
+  spent loading it, not counting its dependencies. Throws the first
+  exception thrown while loading."
+  {:added "1.11"}
+  [libs & {:keys [threads]
+           :or {threads (.availableProcessors (Runtime/getRuntime))}}]
+  (let [graph (dependency-graph libs)
+        dependents (reduce-kv (fn [m lib deps]
+                                (reduce #(update %1 %2 conj lib) m deps))
+                              {} graph)
+        ^ExecutorService pool (Executors/newFixedThreadPool (max 1 (int threads)) (thread-factory))
+        ^ExecutorCompletionService ecs (ExecutorCompletionService. pool)
+        timed-require (bound-fn* (fn [lib]
+                                   (let [start (System/nanoTime)]
+                                     (require lib)
+                                     [lib (- (System/nanoTime) start)])))]
+    (try
+      (loop [waiting (reduce-kv #(assoc %1 %2 (count %3)) {} graph)
+             running 0
+             times {}]
+        (let [ready (keep (fn [[lib n]] (when (zero? n) lib)) waiting)
+              _ (doseq [lib ready]
+                  (.submit ecs ^Callable (fn [] (timed-require lib))))
+              waiting (apply dissoc waiting ready)
+              running (+ running (count ready))]
+          (if (pos? running)
+            (let [[lib nanos] (try
+                                (.get (.take ecs))
+                                (catch ExecutionException e
+                                  (throw (.getCause e))))]
+              (recur (reduce #(update %1 %2 dec) waiting (dependents lib))
+                     (dec running)
+                     (assoc times lib nanos)))
+            ;; only a cycle is left, load it as require would to report it
+            (reduce (fn [times lib] (conj times (timed-require lib)))
+                    times (sort (keys waiting))))))
+      (finally
+        (.shutdownNow pool)))))
+
+(defn print-load-times
+  "Prints the load times returned by require-parallel, slowest first."
+  {:added "1.11"}
+  [times]
+  (doseq [[lib nanos] (sort-by val > times)]
+    (printf "%10.1f ms  %s%n" (/ nanos 1e6) lib))
+  (flush))
+
+(defn load-profile
+  "When the JVM was started with -Dclojure.load.profile=true, returns a
+  map from the resource path of each lib loaded (without extension) to the
+  nanoseconds spent loading it in each phase, :read, :analyze, :emit (of
+  bytecode), :define (of classes), :init (of AOT __init classes) and
+  :eval (running the lib's top level forms), along with their :total and
+  the number of :loads. Time spent loading other libs is not included."
+  {:added "1.11"}
+  []
+  (LoadProfile/snapshot))
+
+(defn print-load-profile
+  "Prints the load profile in milliseconds to *err*, slowest lib first.
+  This is also printed when the JVM exits, call it once the app has
+  started for a report of startup alone."
+  {:added "1.11"}
+  []
+  (LoadProfile/printReport System/err))
@@ -331,4 +331,114 @@
  clojure.lang.PersistentHashMap
  (coll-fold
   [m n combinef reducef]
-  (.fold m n combinef reducef fjinvoke fjtask fjfork fjjoin)))
+  (.fold m n combinef reducef fjinvoke fjtask fjfork fjjoin))
+
+ clojure.lang.PersistentArrayMap
+ (coll-fold
+  [m n combinef reducef]
+  (.fold m n combinef reducef fjinvoke fjtask fjfork fjjoin))
+
+ clojure.lang.PersistentHashSet
+ (coll-fold
+  [s n combinef reducef]
+  (.fold s n combinef reducef fjinvoke fjtask fjfork fjjoin))
+
+ clojure.lang.LongRange
+ (coll-fold
+  [r n combinef reducef]
+  (.fold r n combinef reducef fjinvoke fjtask fjfork fjjoin))
+
+ clojure.lang.Range
+ (coll-fold
+  [r n combinef reducef]
+  (.fold r n combinef reducef fjinvoke fjtask fjfork fjjoin))
+
+ clojure.lang.PersistentTreeMap
+ (coll-fold
+  [m n combinef reducef]
+  (.fold m n combinef reducef fjinvoke fjtask fjfork fjjoin))
+
+ clojure.lang.PersistentTreeSet
+ (coll-fold
+  [s n combinef reducef]
+  (.fold s n combinef reducef fjinvoke fjtask fjfork fjjoin)))
+
+(defn- key-bound-fn
+  [^clojure.lang.Sorted sc test key]
+  (let [comp (.comparator sc)]
+    (fn [k] (test (.compare comp k key) 0))))
+
+(defn- sorted-range
+  [sc lower upper ascending]
+  (if (instance? clojure.lang.PersistentTreeMap sc)
+    (let [^clojure.lang.PersistentTreeMap m sc]
+      (reify
+       clojure.core.protocols/CollReduce
+       (coll-reduce [this f1]
+                    (clojure.core.protocols/coll-reduce this f1 (f1)))
+       (coll-reduce [_ f1 init]
+                    (.reduce m lower upper ascending f1 init))
+
+       clojure.core.protocols/IKVReduce
+       (kv-reduce [_ f init]
+                  (.kvreduce m lower upper ascending f init))
+
+       CollFold
+       (coll-fold [_ n combinef reducef]
+                  (.fold m lower upper ascending n combinef reducef
+                         fjinvoke fjtask fjfork fjjoin))))
+    (let [^clojure.lang.PersistentTreeSet s sc]
+      (reify
+       clojure.core.protocols/CollReduce
+       (coll-reduce [this f1]
+                    (clojure.core.protocols/coll-reduce this f1 (f1)))
+       (coll-reduce [_ f1 init]
+                    (.reduce s lower upper ascending f1 init))
+
+       CollFold
+       (coll-fold [_ n combinef reducef]
+                  (.fold s lower upper ascending n combinef reducef
+                         fjinvoke fjtask fjfork fjjoin))))))
+
+(defn subrange
+  "Like subseq, but returns a reducible, foldable view of the entries
+  of sorted-map or sorted-set sc, so fold splits the range in
+  parallel. A map's range reduces its entries, and reduce-kv and fold
+  call f with key and val, as they do for the map itself. Other sorted
+  collections get their subseq."
+  {:added "1.11"}
+  ([sc test key]
+     (if (and (#{> >= < <=} test)
+              (or (instance? clojure.lang.PersistentTreeMap sc)
+                  (instance? clojure.lang.PersistentTreeSet sc)))
+       (let [bound (key-bound-fn sc test key)]
+         (if (#{> >=} test)
+           (sorted-range sc bound nil true)
+           (sorted-range sc nil bound true)))
+       (subseq sc test key)))
+  ([sc start-test start-key end-test end-key]
+     (if (or (instance? clojure.lang.PersistentTreeMap sc)
+             (instance? clojure.lang.PersistentTreeSet sc))
+       (sorted-range sc (key-bound-fn sc start-test start-key)
+                     (key-bound-fn sc end-test end-key) true)
+       (subseq sc start-test start-key end-test end-key))))
+
+(defn rsubrange
+  "Like rsubseq, but returns a reducible, foldable view of the entries
+  of sorted-map or sorted-set sc in reverse order. See subrange."
+  {:added "1.11"}
+  ([sc test key]
+     (if (and (#{> >= < <=} test)
+              (or (instance? clojure.lang.PersistentTreeMap sc)
+                  (instance? clojure.lang.PersistentTreeSet sc)))
+       (let [bound (key-bound-fn sc test key)]
+         (if (#{> >=} test)
+           (sorted-range sc bound nil false)
+           (sorted-range sc nil bound false)))
+       (rsubseq sc test key)))
+  ([sc start-test start-key end-test end-key]
+     (if (or (instance? clojure.lang.PersistentTreeMap sc)
+             (instance? clojure.lang.PersistentTreeSet sc))
+       (sorted-range sc (key-bound-fn sc start-test start-key)
+                     (key-bound-fn sc end-test end-key) false)
+       (rsubseq sc start-test start-key end-test end-key))))
@@ -0,0 +1,52 @@
+;   Copyright (c) Rich Hickey. All rights reserved.
+;   The use and distribution terms for this software are covered by the
+;   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+;   which can be found in the file epl-v10.html at the root of this distribution.
+;   By using this software in any fashion, you are agreeing to be bound by
+;   the terms of this license.
+;   You must not remove this notice, or any other, from this software.
+
+(ns ^{:doc "Vectors that concatenate, slice and insert in O(log n).
+
+  RRB vectors (relaxed radix balanced trees) are persistent vectors, so
+  nth, conj, assoc, pop, transients, reduce and fold work on them as on
+  any other, and subvec of one is a slice. A persistent vector becomes
+  one in O(1), sharing its tree."}
+  clojure.core.rrb
+  (:import [clojure.lang RRBVector]))
+
+(set! *warn-on-reflection* true)
+
+(defn rrb-vector
+  "Returns an RRB vector of the items in coll, in O(1) when coll is a
+  persistent vector."
+  {:added "1.11"}
+  (^RRBVector [] RRBVector/EMPTY)
+  (^RRBVector [coll] (RRBVector/create coll)))
+
+(defn catvec
+  "Returns an RRB vector of the items in each of the vs in turn. Takes
+  O(log n) for each RRB or persistent vector, other colls are conj'd."
+  {:added "1.11"}
+  (^RRBVector [] RRBVector/EMPTY)
+  (^RRBVector [v] (RRBVector/create v))
+  (^RRBVector [v1 v2] (.catvec (RRBVector/create v1) (RRBVector/create v2)))
+  (^RRBVector [v1 v2 & vs] (reduce catvec (catvec v1 v2) vs)))
+
+(defn slice
+  "Returns an RRB vector of the items in vector v from start (inclusive)
+  to end (exclusive, defaults to (count v)). Unlike subvec of a
+  persistent vector it takes O(log n), and does not hold on to the rest
+  of v."
+  {:added "1.11"}
+  (^RRBVector [v start]
+   (slice v start (count v)))
+  (^RRBVector [v start end]
+   (.slice (RRBVector/create v) start end)))
+
+(defn insert-at
+  "Returns an RRB vector of the items in vector v with x inserted before
+  index i, in O(log n)."
+  {:added "1.11"}
+  ^RRBVector [v i x]
+  (.insertAt (RRBVector/create v) i x))
@@ -0,0 +1,47 @@
+;   Copyright (c) Rich Hickey. All rights reserved.
+;   The use and distribution terms for this software are covered by the
+;   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+;   which can be found in the file epl-v10.html at the root of this distribution.
+;   By using this software in any fashion, you are agreeing to be bound by
+;   the terms of this license.
+;   You must not remove this notice, or any other, from this software.
+
+(ns ^{:doc "Small maps that share their keys with all the maps of the same shape.
+
+  A shape map holds the vals of a map of keyword keys, no more than an
+  array map holds, along with its shape: the keys in order, interned, so
+  all the maps with those keys share them, and only the vals are kept
+  per map. Shape maps are persistent maps like any other, one that gets
+  a key it can't hold becomes an array or hash map."}
+  clojure.core.shapes
+  (:import [clojure.lang IPersistentMap PersistentShapeMap PersistentShapeMap$Shape]))
+
+(set! *warn-on-reflection* true)
+
+(defn shape
+  "Returns the shape of the maps with keys ks, distinct keywords, in
+  order. Throws if there are more of them than an array map holds."
+  {:added "1.11"}
+  ^PersistentShapeMap$Shape [ks]
+  (PersistentShapeMap$Shape/intern (object-array ks)))
+
+(defn shape-of
+  "Returns the shape of m if it is a shape map, else nil."
+  {:added "1.11"}
+  [m]
+  (when (instance? PersistentShapeMap m)
+    (.shape ^PersistentShapeMap m)))
+
+(defn shaped
+  "Returns m as a shape map, or m itself when it is empty, has a key
+  that is not a keyword, or more keys than an array map holds. With a
+  shape (or keys, as taken by shape) and vals, returns the shape map of
+  its keys to vals, in order."
+  {:added "1.11"}
+  ([m]
+   (PersistentShapeMap/create ^IPersistentMap m))
+  ([shape-or-ks vals]
+   (let [^PersistentShapeMap$Shape s (if (instance? PersistentShapeMap$Shape shape-or-ks)
+                                       shape-or-ks
+                                       (shape shape-or-ks))]
+     (PersistentShapeMap/create s (object-array vals)))))
@@ -0,0 +1,61 @@
+;   Copyright (c) Rich Hickey. All rights reserved.
+;   The use and distribution terms for this software are covered by the
+;   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+;   which can be found in the file epl-v10.html at the root of this distribution.
+;   By using this software in any fashion, you are agreeing to be bound by
+;   the terms of this license.
+;   You must not remove this notice, or any other, from this software.
+
+(ns ^{:doc "Counters for tuning the STM. Collection is off unless the JVM is
+  started with -Dclojure.stm.stats=true (which also registers the
+  clojure.lang:type=STMStats MBean) or turned on with enable-stats!."}
+  clojure.core.stm
+  (:import [clojure.lang STMStats Ref]))
+
+(set! *warn-on-reflection* true)
+
+(defn enable-stats!
+  "Turns collection of STM counters on (the default for this fn) or off.
+  Returns the previous setting."
+  {:added "1.11"}
+  ([] (enable-stats! true))
+  ([on?]
+   (let [was (STMStats/isEnabled)]
+     (STMStats/setEnabled (boolean on?))
+     was)))
+
+(defn register-mbean!
+  "Publishes the STM counters as the clojure.lang:type=STMStats MBean."
+  {:added "1.11"}
+  []
+  (STMStats/register))
+
+(defn stats
+  "Returns a map of the STM counters collected since the last reset:
+  :transactions (including those that threw), :retries (total over all
+  transactions), :max-retries (of any one transaction),
+  :retry-limit-failures, :barges (transactions killed by an older one),
+  :lock-wait-nanos (time spent waiting on refs held by other
+  transactions), :commute-reexecutions (commute fns re-run at commit),
+  :history-faults (reads that found no old enough value) and
+  :history-growths, along with :enabled."
+  {:added "1.11"}
+  []
+  (STMStats/snapshot))
+
+(defn reset-stats!
+  "Zeroes the STM counters."
+  {:added "1.11"}
+  []
+  (STMStats/reset))
+
+(defn ref-stats
+  "Returns a map of the :history-count, :min-history and :max-history of
+  ref r, and its :faults, the reads that have failed since its history
+  last grew."
+  {:added "1.11"}
+  [^Ref r]
+  {:history-count (.getHistoryCount r)
+   :min-history (.getMinHistory r)
+   :max-history (.getMaxHistory r)
+   :faults (.getFaults r)})
@@ -9,7 +9,8 @@
 (ns ^{:doc "edn reading."
       :author "Rich Hickey"}
   clojure.edn
-  (:refer-clojure :exclude [read read-string]))
+  (:refer-clojure :exclude [read read-string])
+  (:import [clojure.lang EdnBufferReader]))
 
 (defn read
   "Reads the next object from stream, which must be an instance of
@@ -43,4 +44,56 @@
   opts is a map as per clojure.edn/read"
   {:added "1.5"}
   ([s] (read-string {:eof nil} s))
-  ([opts s] (when s (clojure.lang.EdnReader/readString s opts))))
\ No newline at end of file
+  ([opts s] (when s (clojure.lang.EdnReader/readString s opts))))
+
+(defn read-seq
+  "Returns a lazy seq of the objects read from source, which can be a
+  String, char array, java.nio.ByteBuffer of UTF-8 (its position is left
+  unchanged), java.io.Reader or clojure.lang.EdnBufferReader. A Reader is
+  read ahead of the objects returned, and is not closed.
+
+  Reads large inputs faster than repeated calls to read, see
+  clojure.lang.EdnBufferReader. Errors are thrown as EdnReader.ReaderException
+  with the line and column reached.
+
+  opts is a map as per clojure.edn/read, except that :eof is ignored"
+  {:added "1.11"}
+  ([source] (read-seq {} source))
+  ([opts source]
+   (let [r (EdnBufferReader/create source)
+         eof (Object.)
+         opts (assoc opts :eof eof)]
+     ((fn step []
+        (lazy-seq
+         (let [o (.read r opts)]
+           (when-not (identical? o eof)
+             (cons o (step))))))))))
+
+(defn read-reducible
+  "Returns a reducible (IReduceInit) of the objects read from source, as
+  per read-seq. Each reduction reads source from the start, except for a
+  Reader or EdnBufferReader, which each reduction reads on from where the
+  last one stopped.
+  Objects are read as they are reduced, and not held on to, so an input
+  larger than memory can be reduced with transduce.
+
+  opts is a map as per clojure.edn/read, except that :eof is ignored"
+  {:added "1.11"}
+  ([source] (read-reducible {} source))
+  ([opts source]
+   (let [shared (when (or (instance? java.io.Reader source)
+                          (instance? EdnBufferReader source))
+                  (EdnBufferReader/create source))]
+     (reify clojure.lang.IReduceInit
+       (reduce [_ f init]
+         (let [r (or shared (EdnBufferReader/create source))
+               eof (Object.)
+               opts (assoc opts :eof eof)]
+           (loop [ret init]
+             (let [o (.read ^EdnBufferReader r opts)]
+               (if (identical? o eof)
+                 ret
+                 (let [ret (f ret o)]
+                   (if (reduced? ret)
+                     @ret
+                     (recur ret))))))))))))
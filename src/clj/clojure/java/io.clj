@@ -10,7 +10,7 @@
   ^{:author "Stuart Sierra, Chas Emerick, Stuart Halloway",
      :doc "This file defines polymorphic I/O utility functions for Clojure."}
     clojure.java.io
-    (:require clojure.string)
+    (:require clojure.string clojure.edn)
     (:import 
      (java.io Reader InputStream InputStreamReader PushbackReader
               BufferedReader File OutputStream
@@ -19,7 +19,11 @@
               StringReader ByteArrayInputStream
               BufferedInputStream BufferedOutputStream
               CharArrayReader Closeable)
-     (java.net URI URL MalformedURLException Socket URLDecoder URLEncoder)))
+     (java.net URI URL MalformedURLException Socket URLDecoder URLEncoder)
+     (java.nio Buffer ByteBuffer)
+     (java.nio.channels FileChannel)
+     (java.nio.file Files OpenOption Path StandardOpenOption)
+     (clojure.lang EdnBufferReader IReduceInit)))
 
 (def
     ^{:doc "Type object for a Java primitive byte array."
@@ -64,7 +68,11 @@
 
   URI
   (as-url [u] (.toURL u))
-  (as-file [u] (as-file (as-url u))))
+  (as-file [u] (as-file (as-url u)))
+
+  Path
+  (as-file [p] (.toFile p))
+  (as-url [p] (.toURL (.toUri p))))
 
 (defprotocol ^{:added "1.2"} IOFactory
   "Factory functions that create ready-to-use, buffered versions of
@@ -88,7 +96,7 @@
    Default implementations always return a java.io.BufferedReader.
 
    Default implementations are provided for Reader, BufferedReader,
-   InputStream, File, URI, URL, Socket, byte arrays, character arrays,
+   InputStream, File, Path, URI, URL, Socket, byte arrays, character arrays,
    and String.
 
    If argument is a String, it tries to resolve it first as a URI, then
@@ -106,7 +114,7 @@
    Default implementations always return a java.io.BufferedWriter.
 
    Default implementations are provided for Writer, BufferedWriter,
-   OutputStream, File, URI, URL, Socket, and String.
+   OutputStream, File, Path, URI, URL, Socket, and String.
 
    If the argument is a String, it tries to resolve it first as a URI, then
    as a local file name.  URIs with a 'file' protocol are converted to
@@ -122,8 +130,8 @@
   "Attempts to coerce its argument into an open java.io.InputStream.
    Default implementations always return a java.io.BufferedInputStream.
 
-   Default implementations are defined for InputStream, File, URI, URL,
-   Socket, byte array, and String arguments.
+   Default implementations are defined for InputStream, File, Path, URI,
+   URL, Socket, byte array, and String arguments.
 
    If the argument is a String, it tries to resolve it first as a URI, then
    as a local file name.  URIs with a 'file' protocol are converted to
@@ -139,8 +147,8 @@
   "Attempts to coerce its argument into an open java.io.OutputStream.
    Default implementations always return a java.io.BufferedOutputStream.
 
-   Default implementations are defined for OutputStream, File, URI, URL,
-   Socket, and String arguments.
+   Default implementations are defined for OutputStream, File, Path, URI,
+   URL, Socket, and String arguments.
 
    If the argument is a String, it tries to resolve it first as a URI, then
    as a local file name.  URIs with a 'file' protocol are converted to
@@ -229,6 +237,19 @@
     :make-input-stream (fn [^File x opts] (make-input-stream (FileInputStream. x) opts))
     :make-output-stream (fn [^File x opts] (make-output-stream (FileOutputStream. x (append? opts)) opts))))
 
+(extend Path
+  IOFactory
+  (assoc default-streams-impl
+    :make-input-stream (fn [^Path x opts]
+                         (make-input-stream (Files/newInputStream x (make-array OpenOption 0)) opts))
+    :make-output-stream (fn [^Path x opts]
+                          (make-output-stream
+                           (Files/newOutputStream x (if (append? opts)
+                                                      (into-array OpenOption [StandardOpenOption/CREATE
+                                                                              StandardOpenOption/APPEND])
+                                                      (make-array OpenOption 0)))
+                           opts))))
+
 (extend URL
   IOFactory
   (assoc default-streams-impl
@@ -449,3 +470,118 @@
   {:added "1.2"}
   ([n] (resource n (.getContextClassLoader (Thread/currentThread))))
   ([n ^ClassLoader loader] (.getResource loader n)))
+
+(defn- ^Path nio-path
+  "Returns x as a Path if it is a Path or File, else nil."
+  [x]
+  (cond
+   (instance? Path x) x
+   (instance? File x) (.toPath ^File x)))
+
+(defn- reducible-source
+  "Returns an IReduceInit over x, each reduction returning (step s f init)
+  for s returned by (open x opts). If x is an open Reader or InputStream it
+  is opened once, each reduction reading on from where the last stopped,
+  and is never closed. Anything else is opened by each reduction, and
+  closed when the reduction completes, stops early or throws."
+  [x opts open step]
+  (if (or (instance? Reader x) (instance? InputStream x))
+    (let [s (open x opts)]
+      (reify IReduceInit
+        (reduce [_ f init] (step s f init))))
+    (reify IReduceInit
+      (reduce [_ f init]
+        (with-open [^Closeable s (open x opts)]
+          (step s f init))))))
+
+(defn- reducible-buffer-size [opts]
+  (or (:buffer-size opts) 65536))
+
+(defn- ^BufferedReader open-lines [x opts]
+  (if-let [p (nio-path x)]
+    (BufferedReader. (InputStreamReader. (Files/newInputStream p (make-array OpenOption 0)) (encoding opts)))
+    (make-reader x opts)))
+
+(defn- reduce-lines [^BufferedReader r f init]
+  (loop [ret init]
+    (if-let [line (.readLine r)]
+      (let [ret (f ret line)]
+        (if (reduced? ret)
+          @ret
+          (recur ret)))
+      ret)))
+
+(defn line-reducible
+  "Returns a reducible (IReduceInit) of the lines of text in x, as read by
+  BufferedReader.readLine. x may be anything reader accepts, Files and
+  Paths are read through java.nio. Each reduction opens x and closes it
+  when the reduction completes, stops early or throws, unless x is an open
+  Reader or InputStream, which each reduction reads on from where the last
+  stopped, and which is not closed. Unlike line-seq, no seq is made, so
+  (transduce xf f (line-reducible file)) allocates little beyond the lines.
+
+  Options are key/value pairs as for reader, e.g. :encoding."
+  {:added "1.11"}
+  [x & opts]
+  (reducible-source x (when opts (apply hash-map opts)) open-lines reduce-lines))
+
+(defn- open-bytes [x opts]
+  (if-let [p (nio-path x)]
+    (FileChannel/open p (make-array OpenOption 0))
+    (make-input-stream x opts)))
+
+(defn- reduce-bytes [s f init buffer-size]
+  (let [buf (byte-array buffer-size)
+        bb (ByteBuffer/wrap buf)]
+    (loop [ret init]
+      (let [n (if (instance? FileChannel s)
+                (do (.clear ^Buffer bb)
+                    (.read ^FileChannel s bb))
+                (.read ^InputStream s buf))]
+        (if (neg? n)
+          ret
+          (let [ret (loop [i 0 ret ret]
+                      (if (and (< i n) (not (reduced? ret)))
+                        (recur (inc i) (f ret (aget buf i)))
+                        ret))]
+            (if (reduced? ret)
+              @ret
+              (recur ret))))))))
+
+(defn byte-reducible
+  "Returns a reducible (IReduceInit) of the bytes in x, as Bytes. x may be
+  anything input-stream accepts, Files and Paths are read from a
+  java.nio.channels.FileChannel. Opened and closed as per line-reducible.
+
+  Options are key/value pairs as for input-stream, and
+    :buffer-size  size of the blocks read, default 65536"
+  {:added "1.11"}
+  [x & opts]
+  (let [opts (when opts (apply hash-map opts))
+        size (reducible-buffer-size opts)]
+    (reducible-source x opts open-bytes
+                      (fn [s f init] (reduce-bytes s f init size)))))
+
+(defn- open-edn [x opts]
+  (let [^Reader r (if-let [p (nio-path x)]
+                    (InputStreamReader. (Files/newInputStream p (make-array OpenOption 0)) (encoding opts))
+                    (make-reader x opts))]
+    (EdnBufferReader. r)))
+
+(defn- reduce-edn [^EdnBufferReader r f init opts]
+  (.reduce ^IReduceInit (clojure.edn/read-reducible (or opts {}) r) f init))
+
+(defn edn-reducible
+  "Returns a reducible (IReduceInit) of the edn forms in x, read with a
+  clojure.lang.EdnBufferReader. x may be anything reader accepts, Files and
+  Paths are read through java.nio. Opened and closed as per line-reducible.
+  Forms are read as they are reduced and not held on to, so an input larger
+  than memory can be reduced.
+
+  Options are key/value pairs as for reader, e.g. :encoding, along with
+  :readers and :default as for clojure.edn/read."
+  {:added "1.11"}
+  [x & opts]
+  (let [opts (when opts (apply hash-map opts))]
+    (reducible-source x opts open-edn
+                      (fn [r f init] (reduce-edn r f init opts)))))
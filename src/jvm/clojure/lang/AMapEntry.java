@@ -37,6 +37,13 @@ public int count(){
 	return 2;
 }
 
+public int hasheq(){
+	int hash = this._hasheq;
+	if(hash == 0)
+		this._hasheq = hash = Murmur3.hashEntry(key(), val());
+	return hash;
+}
+
 public ISeq seq(){
 	return asVector().seq();
 }
@@ -124,13 +124,19 @@ public int hasheq(){
     int cached = this._hasheq;
 	if(cached == 0)
 		{
-		//this._hasheq = mapHasheq(this);
-		this._hasheq = cached = Murmur3.hashUnordered(this);
+		this._hasheq = cached = mapHasheq(this);
 		}
 	return cached;
 }
 
 static public int mapHasheq(IPersistentMap m) {
+	if(m instanceof IKVReduce)
+		{
+		// kvreduce hands over key and val without making an entry for each
+		EntryHash h = new EntryHash();
+		((IKVReduce) m).kvreduce(h, null);
+		return Murmur3.mixCollHash(h.hash, h.count);
+		}
 	return Murmur3.hashUnordered(m);
 //	int hash = 0;
 //	for(ISeq s = m.seq(); s != null; s = s.next())
@@ -142,6 +148,17 @@ static public int mapHasheq(IPersistentMap m) {
 //	return hash;
 }
 
+static final class EntryHash extends AFn{
+	int hash;
+	int count;
+
+	public Object invoke(Object acc, Object key, Object val){
+		hash += Murmur3.hashEntry(key, val);
+		++count;
+		return null;
+	}
+}
+
 static public class KeySeq extends ASeq{
 	final ISeq seq;
 	final Iterable iterable;
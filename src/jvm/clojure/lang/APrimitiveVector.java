@@ -0,0 +1,598 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The 32-way trie of PersistentLongVector and PersistentDoubleVector, whose
+ * leaves are arrays of type A (long[] or double[]). Subclasses supply the leaf
+ * array operations, and the typed nth, cons, assocN and reduce that don't box.
+ */
+abstract class APrimitiveVector<A, V extends APrimitiveVector<A, V>> extends APersistentVector implements IObj, IEditableCollection, IReduce, IKVReduce{
+
+public static class Node implements Serializable {
+	transient public final AtomicReference<Thread> edit;
+	//Object[] of child Nodes for branches, an A for leaves
+	public final Object array;
+
+	public Node(AtomicReference<Thread> edit, Object array){
+		this.edit = edit;
+		this.array = array;
+	}
+
+	Node(AtomicReference<Thread> edit){
+		this.edit = edit;
+		this.array = new Object[32];
+	}
+}
+
+final static AtomicReference<Thread> NOEDIT = new AtomicReference<Thread>(null);
+public final static Node EMPTY_NODE = new Node(NOEDIT);
+
+static final IFn TRANSIENT_VECTOR_CONJ = new AFn() {
+    public Object invoke(Object coll, Object val) {
+        return ((ITransientVector)coll).conj(val);
+    }
+    public Object invoke(Object coll) {
+        return coll;
+    }
+};
+
+final int cnt;
+public final int shift;
+public final Node root;
+public final A tail;
+final IPersistentMap _meta;
+
+APrimitiveVector(IPersistentMap meta, int cnt, int shift, Node root, A tail){
+	this._meta = meta;
+	this.cnt = cnt;
+	this.shift = shift;
+	this.root = root;
+	this.tail = tail;
+}
+
+abstract int leafLength(A leaf);
+
+//a copy of leaf, truncated or zero padded to n elements
+abstract A copyOf(A leaf, int n);
+
+abstract Object boxed(A leaf, int i);
+
+abstract IChunk chunk(A leaf, int off, int end);
+
+abstract V create(IPersistentMap meta, int cnt, int shift, Node root, A tail);
+
+public abstract V empty();
+
+final int tailoff(){
+	if(cnt < 32)
+		return 0;
+	return ((cnt - 1) >>> 5) << 5;
+}
+
+public A arrayFor(int i){
+	if(i >= 0 && i < cnt)
+		{
+		if(i >= tailoff())
+			return tail;
+		Node node = root;
+		for(int level = shift; level > 0; level -= 5)
+			node = (Node) ((Object[]) node.array)[(i >>> level) & 0x01f];
+		return (A) node.array;
+		}
+	throw new IndexOutOfBoundsException();
+}
+
+public Object nth(int i, Object notFound){
+	if(i >= 0 && i < cnt)
+		return nth(i);
+	return notFound;
+}
+
+//the vector with leaf, a changed copy of the leaf holding i, in its place
+V withLeaf(int i, A leaf){
+	if(i >= tailoff())
+		return create(meta(), cnt, shift, root, leaf);
+	return create(meta(), cnt, shift, doAssoc(shift, root, i, leaf), tail);
+}
+
+private static Node doAssoc(int level, Node node, int i, Object leaf){
+	if(level == 0)
+		return new Node(node.edit, leaf);
+	Object[] arr = ((Object[]) node.array).clone();
+	int subidx = (i >>> level) & 0x01f;
+	arr[subidx] = doAssoc(level - 5, (Node) arr[subidx], i, leaf);
+	return new Node(node.edit, arr);
+}
+
+public int count(){
+	return cnt;
+}
+
+public V withMeta(IPersistentMap meta){
+	if(meta() == meta)
+		return (V) this;
+	return create(meta, cnt, shift, root, tail);
+}
+
+public IPersistentMap meta(){
+	return _meta;
+}
+
+//the vector one element longer, newTail being the tail with that element
+//added, or holding only that element if the tail is full
+V conjTail(A newTail){
+	//room in tail?
+	if(cnt - tailoff() < 32)
+		return create(meta(), cnt + 1, shift, root, newTail);
+	//full tail, push into tree
+	Node newroot;
+	Node tailnode = new Node(root.edit, tail);
+	int newshift = shift;
+	//overflow root?
+	if((cnt >>> 5) > (1 << shift))
+		{
+		newroot = new Node(root.edit);
+		((Object[]) newroot.array)[0] = root;
+		((Object[]) newroot.array)[1] = newPath(root.edit, shift, tailnode);
+		newshift += 5;
+		}
+	else
+		newroot = pushTail(shift, root, tailnode);
+	return create(meta(), cnt + 1, newshift, newroot, newTail);
+}
+
+private Node pushTail(int level, Node parent, Node tailnode){
+	int subidx = ((cnt - 1) >>> level) & 0x01f;
+	Object[] arr = ((Object[]) parent.array).clone();
+	Node nodeToInsert;
+	if(level == 5)
+		{
+		nodeToInsert = tailnode;
+		}
+	else
+		{
+		Node child = (Node) arr[subidx];
+		nodeToInsert = (child != null)?
+		                pushTail(level-5,child, tailnode)
+		                :newPath(root.edit,level-5, tailnode);
+		}
+	arr[subidx] = nodeToInsert;
+	return new Node(parent.edit, arr);
+}
+
+private static Node newPath(AtomicReference<Thread> edit,int level, Node node){
+	if(level == 0)
+		return node;
+	Node ret = new Node(edit);
+	((Object[]) ret.array)[0] = newPath(edit, level - 5, node);
+	return ret;
+}
+
+public IChunkedSeq chunkedSeq(){
+	if(count() == 0)
+		return null;
+	return new ChunkedSeq<A>(this,0,0);
+}
+
+public ISeq seq(){
+	return chunkedSeq();
+}
+
+@Override
+Iterator rangedIterator(final int start, final int end){
+	return new Iterator(){
+		int i = start;
+		int base = i - (i%32);
+		A array = (start < count())?arrayFor(i):null;
+
+		public boolean hasNext(){
+			return i < end;
+			}
+
+		public Object next(){
+			if(i < end) {
+				if(i-base == 32){
+					array = arrayFor(i);
+					base += 32;
+				}
+				return boxed(array, i++ & 0x01f);
+			} else {
+				throw new NoSuchElementException();
+			}
+		}
+
+		public void remove(){
+			throw new UnsupportedOperationException();
+		}
+	};
+}
+
+public Iterator iterator(){return rangedIterator(0,count());}
+
+public Object kvreduce(IFn f, Object init){
+    int step = 0;
+    for(int i=0;i<cnt;i+=step){
+        A array = arrayFor(i);
+        int n = leafLength(array);
+        for(int j =0;j<n;++j){
+            init = f.invoke(init,j+i,boxed(array, j));
+            if(RT.isReduced(init))
+	            return ((IDeref)init).deref();
+            }
+        step = n;
+    }
+    return init;
+}
+
+static public final class ChunkedSeq<A> extends ASeq implements IChunkedSeq,Counted{
+
+	public final APrimitiveVector<A, ?> vec;
+	final A node;
+	final int i;
+	public final int offset;
+
+	public ChunkedSeq(APrimitiveVector<A, ?> vec, int i, int offset){
+		this.vec = vec;
+		this.i = i;
+		this.offset = offset;
+		this.node = vec.arrayFor(i);
+	}
+
+	ChunkedSeq(IPersistentMap meta, APrimitiveVector<A, ?> vec, A node, int i, int offset){
+		super(meta);
+		this.vec = vec;
+		this.node = node;
+		this.i = i;
+		this.offset = offset;
+	}
+
+	ChunkedSeq(APrimitiveVector<A, ?> vec, A node, int i, int offset){
+		this.vec = vec;
+		this.node = node;
+		this.i = i;
+		this.offset = offset;
+	}
+
+	public IChunk chunkedFirst() {
+		return vec.chunk(node, offset, vec.leafLength(node));
+		}
+
+	public ISeq chunkedNext(){
+		int n = vec.leafLength(node);
+		if(i + n < vec.cnt)
+			return new ChunkedSeq<A>(vec,i+ n,0);
+		return null;
+		}
+
+	public ISeq chunkedMore(){
+		ISeq s = chunkedNext();
+		if(s == null)
+			return PersistentList.EMPTY;
+		return s;
+	}
+
+	public Obj withMeta(IPersistentMap meta){
+		if(meta == this._meta)
+			return this;
+		return new ChunkedSeq<A>(meta, vec, node, i, offset);
+	}
+
+	public Object first(){
+		return vec.boxed(node, offset);
+	}
+
+	public ISeq next(){
+		if(offset + 1 < vec.leafLength(node))
+			return new ChunkedSeq<A>(vec, node, i, offset + 1);
+		return chunkedNext();
+	}
+
+	public int count(){
+		return vec.cnt - (i + offset);
+	}
+}
+
+public V pop(){
+	if(cnt == 0)
+		throw new IllegalStateException("Can't pop empty vector");
+	if(cnt == 1)
+		return empty();
+	if(cnt-tailoff() > 1)
+		return create(meta(), cnt - 1, shift, root, copyOf(tail, leafLength(tail) - 1));
+	A newtail = arrayFor(cnt - 2);
+
+	Node newroot = popTail(shift, root);
+	int newshift = shift;
+	if(newroot == null)
+		{
+		newroot = EMPTY_NODE;
+		}
+	if(shift > 5 && ((Object[]) newroot.array)[1] == null)
+		{
+		newroot = (Node) ((Object[]) newroot.array)[0];
+		newshift -= 5;
+		}
+	return create(meta(), cnt - 1, newshift, newroot, newtail);
+}
+
+private Node popTail(int level, Node node){
+	int subidx = ((cnt-2) >>> level) & 0x01f;
+	Object[] arr = (Object[]) node.array;
+	if(level > 5)
+		{
+		Node newchild = popTail(level - 5, (Node) arr[subidx]);
+		if(newchild == null && subidx == 0)
+			return null;
+		else
+			{
+			Object[] ret = arr.clone();
+			ret[subidx] = newchild;
+			return new Node(root.edit, ret);
+			}
+		}
+	else if(subidx == 0)
+		return null;
+	else
+		{
+		Object[] ret = arr.clone();
+		ret[subidx] = null;
+		return new Node(root.edit, ret);
+		}
+}
+
+/**
+ * The transient of an APrimitiveVector. Subclasses supply the typed conj,
+ * assocN and nth, writing into the leaves editableArrayFor returns.
+ */
+static abstract class Transient<A, V extends APrimitiveVector<A, V>> extends AFn implements ITransientVector, ITransientAssociative2, Counted{
+	//supplies the leaf array operations
+	final V empty;
+	volatile int cnt;
+	volatile int shift;
+	volatile Node root;
+	volatile A tail;
+
+	Transient(V v, V empty){
+		this.empty = empty;
+		this.cnt = v.cnt;
+		this.shift = v.shift;
+		this.root = editableRoot(v.root);
+		this.tail = empty.copyOf(v.tail, 32);
+	}
+
+	public int count(){
+		ensureEditable();
+		return cnt;
+	}
+
+	Node ensureEditable(Node node){
+		if(node.edit == root.edit)
+			return node;
+		if(node.array instanceof Object[])
+			return new Node(root.edit, ((Object[]) node.array).clone());
+		A leaf = (A) node.array;
+		return new Node(root.edit, empty.copyOf(leaf, empty.leafLength(leaf)));
+	}
+
+	void ensureEditable(){
+		if(root.edit.get() == null)
+			throw new IllegalAccessError("Transient used after persistent! call");
+	}
+
+	static Node editableRoot(Node node){
+		return new Node(new AtomicReference<Thread>(Thread.currentThread()), ((Object[]) node.array).clone());
+	}
+
+	public V persistent(){
+		ensureEditable();
+		root.edit.set(null);
+		return empty.create(null, cnt, shift, root, empty.copyOf(tail, cnt-tailoff()));
+	}
+
+	//pushes the full tail into the tree, newTail, holding the one
+	//element conj'ed, becoming the tail
+	void conjTail(A newTail){
+		Node newroot;
+		Node tailnode = new Node(root.edit, tail);
+		tail = newTail;
+		int newshift = shift;
+		//overflow root?
+		if((cnt >>> 5) > (1 << shift))
+			{
+			newroot = new Node(root.edit);
+			((Object[]) newroot.array)[0] = root;
+			((Object[]) newroot.array)[1] = newPath(root.edit,shift, tailnode);
+			newshift += 5;
+			}
+		else
+			newroot = pushTail(shift, root, tailnode);
+		root = newroot;
+		shift = newshift;
+		++cnt;
+	}
+
+	private Node pushTail(int level, Node parent, Node tailnode){
+		parent = ensureEditable(parent);
+		int subidx = ((cnt - 1) >>> level) & 0x01f;
+		Object[] arr = (Object[]) parent.array;
+		Node nodeToInsert;
+		if(level == 5)
+			{
+			nodeToInsert = tailnode;
+			}
+		else
+			{
+			Node child = (Node) arr[subidx];
+			nodeToInsert = (child != null) ?
+			               pushTail(level - 5, child, tailnode)
+			                               : newPath(root.edit, level - 5, tailnode);
+			}
+		arr[subidx] = nodeToInsert;
+		return parent;
+	}
+
+	final int tailoff(){
+		if(cnt < 32)
+			return 0;
+		return ((cnt-1) >>> 5) << 5;
+	}
+
+	A arrayFor(int i){
+		if(i >= 0 && i < cnt)
+			{
+			if(i >= tailoff())
+				return tail;
+			Node node = root;
+			for(int level = shift; level > 0; level -= 5)
+				node = (Node) ((Object[]) node.array)[(i >>> level) & 0x01f];
+			return (A) node.array;
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	A editableArrayFor(int i){
+		if(i >= 0 && i < cnt)
+			{
+			if(i >= tailoff())
+				return tail;
+			Node node = root;
+			for(int level = shift; level > 0; level -= 5)
+				{
+				Object[] arr = (Object[]) node.array;
+				int subidx = (i >>> level) & 0x01f;
+				Node child = ensureEditable((Node) arr[subidx]);
+				arr[subidx] = child;
+				node = child;
+				}
+			return (A) node.array;
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public Object valAt(Object key){
+		//note - relies on ensureEditable in 2-arg valAt
+		return valAt(key, null);
+	}
+
+	public Object valAt(Object key, Object notFound){
+		ensureEditable();
+		if(Util.isInteger(key))
+			{
+			int i = ((Number) key).intValue();
+			if(i >= 0 && i < cnt)
+				return nth(i);
+			}
+		return notFound;
+	}
+
+	private static final Object NOT_FOUND = new Object();
+	public final boolean containsKey(Object key){
+		return valAt(key, NOT_FOUND) != NOT_FOUND;
+	}
+
+	public final IMapEntry entryAt(Object key){
+		Object v = valAt(key, NOT_FOUND);
+		if(v != NOT_FOUND)
+			return MapEntry.create(key, v);
+		return null;
+	}
+
+	public Object invoke(Object arg1) {
+		//note - relies on ensureEditable in nth
+		if(Util.isInteger(arg1))
+			return nth(((Number) arg1).intValue());
+		throw new IllegalArgumentException("Key must be integer");
+	}
+
+	public Object nth(int i, Object notFound){
+		if(i >= 0 && i < count())
+			return nth(i);
+		return notFound;
+	}
+
+	public ITransientVector assoc(Object key, Object val){
+		//note - relies on ensureEditable in assocN
+		if(Util.isInteger(key))
+			{
+			int i = ((Number) key).intValue();
+			return assocN(i, val);
+			}
+		throw new IllegalArgumentException("Key must be integer");
+	}
+
+	public Transient<A, V> pop(){
+		ensureEditable();
+		if(cnt == 0)
+			throw new IllegalStateException("Can't pop empty vector");
+		if(cnt == 1)
+			{
+			cnt = 0;
+			return this;
+			}
+		int i = cnt - 1;
+		//pop in tail?
+		if((i & 0x01f) > 0)
+			{
+			--cnt;
+			return this;
+			}
+
+		A newtail = editableArrayFor(cnt - 2);
+
+		Node newroot = popTail(shift, root);
+		int newshift = shift;
+		if(newroot == null)
+			{
+			newroot = new Node(root.edit);
+			}
+		if(shift > 5 && ((Object[]) newroot.array)[1] == null)
+			{
+			newroot = ensureEditable((Node) ((Object[]) newroot.array)[0]);
+			newshift -= 5;
+			}
+		root = newroot;
+		shift = newshift;
+		--cnt;
+		tail = newtail;
+		return this;
+	}
+
+	private Node popTail(int level, Node node){
+		node = ensureEditable(node);
+		Object[] arr = (Object[]) node.array;
+		int subidx = ((cnt - 2) >>> level) & 0x01f;
+		if(level > 5)
+			{
+			Node newchild = popTail(level - 5, (Node) arr[subidx]);
+			if(newchild == null && subidx == 0)
+				return null;
+			else
+				{
+				arr[subidx] = newchild;
+				return node;
+				}
+			}
+		else if(subidx == 0)
+			return null;
+		else
+			{
+			arr[subidx] = null;
+			return node;
+			}
+	}
+}
+}
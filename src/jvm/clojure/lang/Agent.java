@@ -12,6 +12,7 @@
 
 package clojure.lang;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -42,16 +43,28 @@ volatile Object state;
     volatile Keyword errorMode = CONTINUE;
     volatile IFn errorHandler = null;
 
+    //max actions queued by direct sends, 0 for no limit; senders wait on queueMonitor
+    volatile int queueLimit = 0;
+    final Object queueMonitor = new Object();
+
+    //max queued actions run back to back on one executor thread
+    volatile int batchSize = defaultBatchSize;
+
 final private static AtomicLong sendThreadPoolCounter = new AtomicLong(0);
 
 final private static AtomicLong sendOffThreadPoolCounter = new AtomicLong(0);
 
+//-Dclojure.agent.send.pool-size=n overrides the size of the send pool
 volatile public static ExecutorService pooledExecutor =
-	Executors.newFixedThreadPool(2 + Runtime.getRuntime().availableProcessors(), 
+	Executors.newFixedThreadPool(Integer.getInteger("clojure.agent.send.pool-size",
+	                                                2 + Runtime.getRuntime().availableProcessors()),
 		createThreadFactory("clojure-agent-send-pool-%d", sendThreadPoolCounter));
 
-volatile public static ExecutorService soloExecutor = Executors.newCachedThreadPool(
-	createThreadFactory("clojure-agent-send-off-pool-%d", sendOffThreadPoolCounter));
+//-Dclojure.agent.send-off.executor=virtual runs send-off (and future) on virtual threads, where available
+volatile public static ExecutorService soloExecutor = createSoloExecutor();
+
+//-Dclojure.agent.batch-size=n lets each agent run up to n queued actions per executor task
+static final int defaultBatchSize = Math.max(1, Integer.getInteger("clojure.agent.batch-size", 1));
 
 final static ThreadLocal<IPersistentVector> nested = new ThreadLocal<IPersistentVector>();
 
@@ -65,6 +78,39 @@ private static ThreadFactory createThreadFactory(final String format, final Atom
 	};
 }
 
+private static ExecutorService createSoloExecutor(){
+	if("virtual".equals(System.getProperty("clojure.agent.send-off.executor")))
+		{
+		ExecutorService exec = virtualThreadExecutor();
+		if(exec != null)
+			return exec;
+		}
+	return Executors.newCachedThreadPool(
+		createThreadFactory("clojure-agent-send-off-pool-%d", sendOffThreadPoolCounter));
+}
+
+/**
+ * Returns an executor that starts a new virtual thread per action, or null
+ * if this JVM doesn't have virtual threads (before Java 21).
+ */
+public static ExecutorService virtualThreadExecutor(){
+	try
+		{
+		//compiled against Java 8, so look the builder API up
+		Class builderClass = Class.forName("java.lang.Thread$Builder");
+		Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+		builder = builderClass.getMethod("name", String.class, long.class)
+				.invoke(builder, "clojure-agent-send-off-virtual-", 0L);
+		ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		Method m = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+		return (ExecutorService) m.invoke(null, factory);
+		}
+	catch(Exception e)
+		{
+		return null;
+		}
+}
+
 public static void shutdown(){
 	soloExecutor.shutdown();
 	pooledExecutor.shutdown();
@@ -105,53 +151,67 @@ static class Action implements Runnable{
 	static void doRun(Action action){
 		try
 			{
-			nested.set(PersistentVector.EMPTY);
-
-			Throwable error = null;
-			try
-				{
-				Object oldval = action.agent.state;
-				Object newval =  action.fn.applyTo(RT.cons(action.agent.state, action.args));
-				action.agent.setState(newval);
-                action.agent.notifyWatches(oldval,newval);
-				}
-			catch(Throwable e)
+			//run up to batchSize queued actions bound for the same executor before handing back the thread
+			int remaining = action.agent.batchSize;
+			for(; ;)
 				{
-				error = e;
-				}
+				nested.set(PersistentVector.EMPTY);
 
-			if(error == null)
-				{
-				releasePendingSends();
-				}
-			else
-				{
-				nested.set(null); // allow errorHandler to send
-				if(action.agent.errorHandler != null)
+				Throwable error = null;
+				try
+					{
+					Object oldval = action.agent.state;
+					Object newval =  action.fn.applyTo(RT.cons(action.agent.state, action.args));
+					action.agent.setState(newval);
+					action.agent.notifyWatches(oldval,newval);
+					}
+				catch(Throwable e)
 					{
-					try
+					error = e;
+					}
+
+				if(error == null)
+					{
+					releasePendingSends();
+					}
+				else
+					{
+					nested.set(null); // allow errorHandler to send
+					if(action.agent.errorHandler != null)
 						{
-						action.agent.errorHandler.invoke(action.agent, error);
+						try
+							{
+							action.agent.errorHandler.invoke(action.agent, error);
+							}
+						catch(Throwable e) {} // ignore errorHandler errors
+						}
+					if(action.agent.errorMode == CONTINUE)
+						{
+						error = null;
 						}
-					catch(Throwable e) {} // ignore errorHandler errors
 					}
-				if(action.agent.errorMode == CONTINUE)
+
+				boolean popped = false;
+				ActionQueue next = null;
+				while(!popped)
 					{
-					error = null;
+					ActionQueue prior = action.agent.aq.get();
+					next = new ActionQueue(prior.q.pop(), error);
+					popped = action.agent.aq.compareAndSet(prior, next);
 					}
-				}
+				if(action.agent.queueLimit > 0)
+					action.agent.notifySenders();
 
-			boolean popped = false;
-			ActionQueue next = null;
-			while(!popped)
-				{
-				ActionQueue prior = action.agent.aq.get();
-				next = new ActionQueue(prior.q.pop(), error);
-				popped = action.agent.aq.compareAndSet(prior, next);
+				if(error != null || next.q.count() == 0)
+					return;
+				Action nextAction = (Action) next.q.peek();
+				if(--remaining <= 0 || nextAction.exec != action.exec)
+					{
+					nextAction.execute();
+					return;
+					}
+				action = nextAction;
 				}
-
-			if(error == null && next.q.count() > 0)
-				((Action) next.q.peek()).execute();
 			}
 		finally
 			{
@@ -204,6 +264,34 @@ public IFn getErrorHandler(){
 	return errorHandler;
 }
 
+public void setQueueLimit(int limit){
+	if(limit < 0)
+		throw new IllegalArgumentException("Queue limit can't be negative: " + limit);
+	queueLimit = limit;
+	notifySenders();
+}
+
+public int getQueueLimit(){
+	return queueLimit;
+}
+
+public void setBatchSize(int n){
+	if(n < 1)
+		throw new IllegalArgumentException("Batch size must be positive: " + n);
+	batchSize = n;
+}
+
+public int getBatchSize(){
+	return batchSize;
+}
+
+void notifySenders(){
+	synchronized(queueMonitor)
+		{
+		queueMonitor.notifyAll();
+		}
+}
+
 synchronized public Object restart(Object newState, boolean clearActions){
 	if(getError() == null)
 		{
@@ -213,7 +301,10 @@ synchronized public Object restart(Object newState, boolean clearActions){
 	state = newState;
 
 	if(clearActions)
+		{
 		aq.set(ActionQueue.EMPTY);
+		notifySenders();
+		}
 	else
 		{
 		boolean restarted = false;
@@ -251,10 +342,43 @@ static void dispatchAction(Action action){
 		{
 		nested.set(nested.get().cons(action));
 		}
+	else if(action.agent.queueLimit > 0)
+		action.agent.enqueueWhenRoom(action);
 	else
 		action.agent.enqueue(action);
 }
 
+//Dispatches a send held by a transaction once it has committed. Like sends from
+//within actions these never wait for room, the committing thread must not block.
+static void dispatchCommitted(Action action){
+	if(nested.get() != null)
+		nested.set(nested.get().cons(action));
+	else
+		action.agent.enqueue(action);
+}
+
+//Only direct sends wait for room. Sends from within actions and transactions
+//are queued regardless, blocking there could deadlock an agent sending to itself.
+void enqueueWhenRoom(Action action){
+	synchronized(queueMonitor)
+		{
+		int limit;
+		ActionQueue q;
+		while((limit = queueLimit) > 0 && (q = aq.get()).q.count() >= limit && q.error == null)
+			{
+			try
+				{
+				queueMonitor.wait();
+				}
+			catch(InterruptedException e)
+				{
+				throw Util.sneakyThrow(e);
+				}
+			}
+		enqueue(action);
+		}
+}
+
 void enqueue(Action action){
 	boolean queued = false;
 	ActionQueue prior = null;
@@ -92,6 +92,23 @@ public ArraySeq withMeta(IPersistentMap meta){
 	return new ArraySeq(meta, array, i);
 }
 
+public int hashCode(){
+	if(_hash == 0 && array != null)
+		{
+		int hash = 1;
+		for(int x = i; x < array.length; x++)
+			hash = 31 * hash + (array[x] == null ? 0 : array[x].hashCode());
+		this._hash = hash;
+		}
+	return super.hashCode();
+}
+
+public int hasheq(){
+	if(_hasheq == 0 && array != null)
+		_hasheq = Murmur3.hashOrdered(array, i, array.length);
+	return super.hasheq();
+}
+
 public Object reduce(IFn f) {
 	if(array != null) {
 		Object ret = array[i];
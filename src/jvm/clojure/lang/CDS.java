@@ -0,0 +1,148 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+
+package clojure.lang;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Builds an AppCDS archive for a Clojure app, and times startup with it.
+//
+//   java -cp <jars> clojure.lang.CDS dump app.jsa [clojure.main args]
+//   java -cp <jars> clojure.lang.CDS bench app.jsa [runs] [clojure.main args]
+//
+// dump starts a JVM running clojure.main with the args as a training run,
+// recording the classes it loads from the classpath (AOT compiled Clojure
+// included, classes made by eval can't be archived) in app.jsa.classlist,
+// then dumps those classes to app.jsa. Start the app with
+// -XX:SharedArchiveFile=app.jsa on the same classpath to use it. The JVM
+// only archives classes from jars, so the classpath should not contain
+// directories of classes.
+//
+// bench times runs JVMs running clojure.main with the args (by default
+// -e nil, i.e. the time to the first eval) without and then with the
+// archive, and prints the median and fastest times.
+//
+// Both use the java of this JVM and its classpath, plus any options in the
+// Java System property "clojure.cds.jvm-opts".
+
+public class CDS{
+
+private static final String JVM_OPTS_PROP = "clojure.cds.jvm-opts";
+private static final int DEFAULT_RUNS = 5;
+
+static List<String> javaCommand(String... opts){
+	ArrayList<String> cmd = new ArrayList<String>();
+	cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+	String jvmOpts = System.getProperty(JVM_OPTS_PROP, "").trim();
+	if(jvmOpts.length() > 0)
+		cmd.addAll(Arrays.asList(jvmOpts.split("\\s+")));
+	cmd.addAll(Arrays.asList(opts));
+	cmd.add("-cp");
+	cmd.add(System.getProperty("java.class.path"));
+	return cmd;
+}
+
+static List<String> mainCommand(List<String> cmd, List<String> mainArgs){
+	cmd.add("clojure.main");
+	cmd.addAll(mainArgs);
+	return cmd;
+}
+
+static int run(List<String> cmd, boolean quiet) throws IOException, InterruptedException{
+	ProcessBuilder pb = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.INHERIT);
+	if(quiet)
+		{
+		boolean windows = System.getProperty("os.name").startsWith("Windows");
+		pb.redirectOutput(new File(windows ? "NUL" : "/dev/null"));
+		}
+	else
+		pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+	return pb.start().waitFor();
+}
+
+public static int dump(String archive, List<String> mainArgs) throws IOException, InterruptedException{
+	String classList = archive + ".classlist";
+	int exit = run(mainCommand(javaCommand("-Xshare:off", "-XX:DumpLoadedClassList=" + classList), mainArgs),
+	               false);
+	if(exit != 0)
+		{
+		System.err.println("Training run exited with " + exit);
+		return exit;
+		}
+	exit = run(javaCommand("-Xshare:dump",
+	                       "-XX:SharedClassListFile=" + classList,
+	                       "-XX:SharedArchiveFile=" + archive),
+	           true);
+	if(exit != 0)
+		System.err.println("Dumping " + archive + " exited with " + exit);
+	else
+		System.out.println("Wrote " + archive + ", use it with -XX:SharedArchiveFile=" + archive);
+	return exit;
+}
+
+//returns the wall clock time of each run in msecs
+static long[] time(List<String> cmd, int runs) throws IOException, InterruptedException{
+	long[] ret = new long[runs];
+	for(int i = 0; i < runs; i++)
+		{
+		long start = System.nanoTime();
+		int exit = run(cmd, true);
+		ret[i] = (System.nanoTime() - start) / 1000000;
+		if(exit != 0)
+			throw new IllegalStateException("Run exited with " + exit + ": " + cmd);
+		}
+	Arrays.sort(ret);
+	return ret;
+}
+
+static String report(long[] times){
+	return String.format("median %d ms, fastest %d ms (%d runs)", times[times.length / 2], times[0], times.length);
+}
+
+public static void bench(String archive, int runs, List<String> mainArgs) throws IOException, InterruptedException{
+	long[] without = time(mainCommand(javaCommand(), mainArgs), runs);
+	System.out.println("without archive: " + report(without));
+	long[] with = time(mainCommand(javaCommand("-Xshare:on", "-XX:SharedArchiveFile=" + archive), mainArgs), runs);
+	System.out.println("with " + archive + ": " + report(with));
+}
+
+static List<String> mainArgs(String[] args, int start){
+	if(start >= args.length)
+		return Arrays.asList("-e", "nil");
+	return Arrays.asList(args).subList(start, args.length);
+}
+
+public static void main(String[] args) throws IOException, InterruptedException{
+	if(args.length >= 2 && args[0].equals("dump"))
+		System.exit(dump(args[1], mainArgs(args, 2)));
+	else if(args.length >= 2 && args[0].equals("bench"))
+		{
+		int runs = DEFAULT_RUNS;
+		int start = 2;
+		if(args.length > 2 && args[2].matches("\\d+"))
+			{
+			runs = Integer.parseInt(args[2]);
+			start = 3;
+			}
+		bench(args[1], Math.max(runs, 1), mainArgs(args, start));
+		}
+	else
+		{
+		System.err.println("Usage: clojure.lang.CDS dump <archive> [clojure.main args]\n" +
+		                   "       clojure.lang.CDS bench <archive> [runs] [clojure.main args]");
+		System.exit(1);
+		}
+}
+}
@@ -258,6 +258,8 @@ static final public Var ADD_ANNOTATIONS = Var.intern(Namespace.findOrCreate(Symb
 
 static final public Keyword disableLocalsClearingKey = Keyword.intern("disable-locals-clearing");
 static final public Keyword directLinkingKey = Keyword.intern("direct-linking");
+static final public Keyword indyLinkingKey = Keyword.intern("indy-linking");
+static final public Keyword lazyVarsKey = Keyword.intern("lazy-vars");
 static final public Keyword elideMetaKey = Keyword.intern("elide-meta");
 
 static final public Var COMPILER_OPTIONS;
@@ -3489,12 +3491,17 @@ static class InvokeExpr implements Expr{
 	public final String source;
 	public boolean isProtocol = false;
 	public boolean isDirect = false;
+	public boolean isIndy = false;
 	public int siteIndex = -1;
 	public Class protocolOn;
     public int classLocal = -1;
 	public java.lang.reflect.Method onMethod;
 	static Keyword onKey = Keyword.intern("on");
 	static Keyword methodMapKey = Keyword.intern("method-map");
+	final static Handle varCallSiteBootstrap = new Handle(H_INVOKESTATIC, "clojure/lang/VarCallSite", "bootstrap",
+	        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+	        false);
+	final static String varCallSiteDescriptor = "(Lclojure/lang/Var;)Ljava/lang/Object;";
     Class jc;
 
     static Object sigTag(int argcount, Var v){
@@ -3548,6 +3555,8 @@ static class InvokeExpr implements Expr{
 					this.onMethod = (java.lang.reflect.Method) methods.get(0);
 					}
 				}
+			else if(!fvar.isDynamic() && RT.booleanCast(getCompilerOption(indyLinkingKey)))
+				this.isIndy = true;
 			}
 		
 		if (tag != null) {
@@ -3589,7 +3598,14 @@ static class InvokeExpr implements Expr{
 
 		else
 			{
-			fexpr.emit(C.EXPRESSION, objx, gen);
+			if(isIndy)
+				{
+				//the root as linked by a VarCallSite, in place of getRawRoot
+				objx.emitVar(gen, ((VarExpr)fexpr).var);
+				gen.invokeDynamic("root", varCallSiteDescriptor, varCallSiteBootstrap);
+				}
+			else
+				fexpr.emit(C.EXPRESSION, objx, gen);
 			gen.visitLineNumber(line, gen.mark());
 			gen.checkCast(IFN_TYPE);
 			emitArgsAndCall(0, context,objx,gen);
@@ -4009,18 +4025,22 @@ static public class FnExpr extends ObjExpr{
 	}
 
 	public void emitForDefn(ObjExpr objx, GeneratorAdapter gen){
-//		if(!hasPrimSigs && closes.count() == 0)
-//			{
-//			Type thunkType = Type.getType(FnLoaderThunk.class);
-////			presumes var on stack
-//			gen.dup();
-//			gen.newInstance(thunkType);
-//			gen.dupX1();
-//			gen.swap();
-//			gen.push(internalName.replace('/','.'));
-//			gen.invokeConstructor(thunkType,Method.getMethod("void <init>(clojure.lang.Var,String)"));
-//			}
-//		else
+		//with :lazy-vars, top level defns in an AOT compiled file are bound to a
+		//thunk that loads the fn's class on first call, rather than as __init runs
+		if(!hasPrimSigs && closes.count() == 0
+		   && objx.internalName != null && objx.internalName.endsWith(RT.LOADER_SUFFIX)
+		   && RT.booleanCast(getCompilerOption(lazyVarsKey)))
+			{
+			Type thunkType = Type.getType(FnLoaderThunk.class);
+//			presumes var on stack
+			gen.dup();
+			gen.newInstance(thunkType);
+			gen.dupX1();
+			gen.swap();
+			gen.push(internalName.replace('/','.'));
+			gen.invokeConstructor(thunkType,Method.getMethod("void <init>(clojure.lang.Var,String)"));
+			}
+		else
 			emit(C.EXPRESSION,objx,gen);
 	}
 }
@@ -4169,6 +4189,23 @@ static public class ObjExpr implements Expr{
 	}
 
 	void compile(String superName, String[] interfaceNames, boolean oneTimeUse) throws IOException{
+		if(!LoadProfile.ENABLED)
+			{
+			emitClass(superName, interfaceNames, oneTimeUse);
+			return;
+			}
+		LoadProfile.enter(LoadProfile.EMIT);
+		try
+			{
+			emitClass(superName, interfaceNames, oneTimeUse);
+			}
+		finally
+			{
+			LoadProfile.exit();
+			}
+	}
+
+	void emitClass(String superName, String[] interfaceNames, boolean oneTimeUse) throws IOException{
 		//create bytecode for a class
 		//with name current_ns.defname[$letname]+
 		//anonymous fns get names fn__id
@@ -6616,6 +6653,21 @@ public static Expr analyze(C context, Object form) {
 	return analyze(context, form, null);
 }
 
+//analyze for eval, timed as analysis when profiling loads
+private static Expr profiledAnalyze(C context, Object form, String name) {
+	if(!LoadProfile.ENABLED)
+		return analyze(context, form, name);
+	LoadProfile.enter(LoadProfile.ANALYZE);
+	try
+		{
+		return analyze(context, form, name);
+		}
+	finally
+		{
+		LoadProfile.exit();
+		}
+}
+
 private static Expr analyze(C context, Object form, String name) {
 	//todo symbol macro expansion?
 	try
@@ -7029,7 +7081,17 @@ public static Object eval(Object form, boolean freshLoader) {
 		Var.pushThreadBindings(bindings);
 		try
 			{
-			form = macroexpand(form);
+			if(LoadProfile.ENABLED)
+				LoadProfile.enter(LoadProfile.ANALYZE);
+			try
+				{
+				form = macroexpand(form);
+				}
+			finally
+				{
+				if(LoadProfile.ENABLED)
+					LoadProfile.exit();
+				}
 			if(form instanceof ISeq && Util.equals(RT.first(form), DO))
 				{
 				ISeq s = RT.next(form);
@@ -7042,14 +7104,14 @@ public static Object eval(Object form, boolean freshLoader) {
 					&& !(RT.first(form) instanceof Symbol
 						&& ((Symbol) RT.first(form)).name.startsWith("def"))))
 				{
-				ObjExpr fexpr = (ObjExpr) analyze(C.EXPRESSION, RT.list(FN, PersistentVector.EMPTY, form),
+				ObjExpr fexpr = (ObjExpr) profiledAnalyze(C.EXPRESSION, RT.list(FN, PersistentVector.EMPTY, form),
 													"eval" + RT.nextID());
 				IFn fn = (IFn) fexpr.eval();
 				return fn.invoke();
 				}
 			else
 				{
-				Expr expr = analyze(C.EVAL, form);
+				Expr expr = profiledAnalyze(C.EVAL, form, null);
 				return expr.eval();
 				}
 			}
@@ -7496,10 +7558,12 @@ public static Object load(Reader rdr, String sourcePath, String sourceName) {
                         ));
 
 	Object readerOpts = readerOpts(sourceName);
+	if(LoadProfile.ENABLED)
+		LoadProfile.beginLoad(sourcePath);
 	try
 		{
-		for(Object r = LispReader.read(pushbackReader, false, EOF, false, readerOpts); r != EOF;
-			r = LispReader.read(pushbackReader, false, EOF, false, readerOpts))
+		for(Object r = readForm(pushbackReader, EOF, readerOpts); r != EOF;
+			r = readForm(pushbackReader, EOF, readerOpts))
 			{
 			consumeWhitespaces(pushbackReader);
 			LINE_AFTER.set(pushbackReader.getLineNumber());
@@ -7522,11 +7586,27 @@ public static Object load(Reader rdr, String sourcePath, String sourceName) {
 		}
 	finally
 		{
+		if(LoadProfile.ENABLED)
+			LoadProfile.endLoad();
 		Var.popThreadBindings();
 		}
 	return ret;
 }
 
+static Object readForm(LineNumberingPushbackReader rdr, Object eof, Object readerOpts){
+	if(!LoadProfile.ENABLED)
+		return LispReader.read(rdr, false, eof, false, readerOpts);
+	LoadProfile.enter(LoadProfile.READ);
+	try
+		{
+		return LispReader.read(rdr, false, eof, false, readerOpts);
+		}
+	finally
+		{
+		LoadProfile.exit();
+		}
+}
+
 static public void writeClassFile(String internalName, byte[] bytecode) throws IOException{
 	String genPath = (String) COMPILE_PATH.deref();
 	if(genPath == null)
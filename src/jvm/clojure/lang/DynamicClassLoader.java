@@ -52,11 +52,21 @@ void installPackage(String className) {
 }
 
 public Class defineClass(String name, byte[] bytes, Object srcForm){
-    installPackage(name);
-	Util.clearCache(rq, classCache);
-	Class c = defineClass(name, bytes, 0, bytes.length);
-    classCache.put(name, new SoftReference(c,rq));
-    return c;
+	if(LoadProfile.ENABLED)
+		LoadProfile.enter(LoadProfile.DEFINE);
+	try
+		{
+		installPackage(name);
+		Util.clearCache(rq, classCache);
+		Class c = defineClass(name, bytes, 0, bytes.length);
+		classCache.put(name, new SoftReference(c,rq));
+		return c;
+		}
+	finally
+		{
+		if(LoadProfile.ENABLED)
+			LoadProfile.exit();
+		}
 }
 
 static Class<?> findInMemoryClass(String name) {
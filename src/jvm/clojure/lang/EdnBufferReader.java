@@ -0,0 +1,680 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads edn as EdnReader does, a form at a time, from a char array,
+ * CharSequence, UTF-8 ByteBuffer or Reader, for reading large inputs.
+ *
+ * <p>Input is read in blocks into a char buffer and tokens are parsed in
+ * place, rather than a char at a time from a PushbackReader. Decimal longs,
+ * and decimal doubles that convert exactly, are parsed without making a
+ * String, and symbols, keywords and the other named tokens are looked up in
+ * a small cache of those read before. The elements of collections are
+ * gathered on a stack shared by the whole read.</p>
+ *
+ * <p>A Reader or ByteBuffer is read ahead of the form returned. Errors are
+ * thrown as EdnReader.ReaderExceptions with the line and column reached.
+ * Closing it closes the Reader read from. Not thread safe.</p>
+ */
+public final class EdnBufferReader implements Closeable{
+
+static final int BUFFER_SIZE = 8192;
+static final int CACHE_SIZE = 1024;
+//longs of up to this many digits can't overflow
+static final int MAX_LONG_DIGITS = 18;
+//doubles of up to this many digits times a power of ten of up to 22 are exact
+static final int MAX_DOUBLE_DIGITS = 15;
+static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+static final byte WHITESPACE = 1;
+static final byte MACRO = 2;
+static final byte TERMINATING = 4;
+static final byte[] CHARS = new byte[128];
+
+static
+	{
+	for(int ch = 0; ch < CHARS.length; ch++)
+		if(EdnReader.isWhitespace(ch))
+			CHARS[ch] = WHITESPACE;
+	for(char ch : "\";^()[]{}\\".toCharArray())
+		CHARS[ch] = MACRO | TERMINATING;
+	CHARS['#'] = MACRO;
+	}
+
+//returned for comments and discarded forms
+static final Object SKIP = new Object();
+
+final Reader in;
+final ByteBuffer bytes;
+final CharsetDecoder decoder;
+boolean eof;
+
+char[] buf;
+int pos;
+int limit;
+//start in buf of the token being read, kept across fills, or -1
+int mark = -1;
+//chars dropped from the front of buf
+long offset;
+int line = 1;
+long lineStart;
+
+Object[] stack = new Object[64];
+int sp;
+
+final String[] cacheTokens = new String[CACHE_SIZE];
+final Object[] cacheValues = new Object[CACHE_SIZE];
+
+private EdnBufferReader(Reader in, ByteBuffer bytes, char[] buf, int pos, int limit){
+	this.in = in;
+	this.bytes = bytes;
+	this.decoder = bytes == null ? null :
+	               StandardCharsets.UTF_8.newDecoder()
+			               .onMalformedInput(CodingErrorAction.REPLACE)
+			               .onUnmappableCharacter(CodingErrorAction.REPLACE);
+	this.eof = in == null && bytes == null;
+	this.buf = buf;
+	this.pos = pos;
+	this.limit = limit;
+	this.offset = 0;
+	this.lineStart = pos;
+}
+
+public EdnBufferReader(char[] chars, int offset, int length){
+	this(null, null, chars, offset, offset + length);
+}
+
+public EdnBufferReader(char[] chars){
+	this(chars, 0, chars.length);
+}
+
+public EdnBufferReader(CharSequence s){
+	this(s.toString().toCharArray());
+}
+
+/**
+ * Reads the UTF-8 encoded chars from the position of bytes to its limit,
+ * advancing its position as they're read.
+ */
+public EdnBufferReader(ByteBuffer bytes){
+	this(null, bytes, new char[BUFFER_SIZE], 0, 0);
+}
+
+public EdnBufferReader(Reader in){
+	this(in, null, new char[BUFFER_SIZE], 0, 0);
+}
+
+/**
+ * Returns a reader of source, a CharSequence, char array, ByteBuffer of
+ * UTF-8 (read from its position without changing it) or Reader, or source
+ * itself if it's an EdnBufferReader.
+ */
+static public EdnBufferReader create(Object source){
+	if(source instanceof EdnBufferReader)
+		return (EdnBufferReader) source;
+	else if(source instanceof CharSequence)
+		return new EdnBufferReader((CharSequence) source);
+	else if(source instanceof char[])
+		return new EdnBufferReader((char[]) source);
+	else if(source instanceof ByteBuffer)
+		return new EdnBufferReader(((ByteBuffer) source).duplicate());
+	else if(source instanceof Reader)
+		return new EdnBufferReader((Reader) source);
+	throw new IllegalArgumentException("Can't read edn from: "
+	                                   + (source == null ? "nil" : source.getClass().getName()));
+}
+
+public void close() throws IOException{
+	if(in != null)
+		in.close();
+}
+
+public int getLineNumber(){
+	return line;
+}
+
+public int getColumnNumber(){
+	return (int) (offset + pos - lineStart) + 1;
+}
+
+/**
+ * Reads the next form, taking :eof, :readers and :default from opts as
+ * clojure.edn/read does.
+ */
+public Object read(IPersistentMap opts){
+	return read(!opts.containsKey(EdnReader.EOF), opts.valAt(EdnReader.EOF), opts);
+}
+
+public Object read(boolean eofIsError, Object eofValue, IPersistentMap opts){
+	sp = 0;
+	mark = -1;
+	try
+		{
+		for(; ;)
+			{
+			int ch = skipWhitespace();
+			if(ch == -1)
+				{
+				if(eofIsError)
+					throw Util.runtimeException("EOF while reading");
+				return eofValue;
+				}
+			Object o = readForm(ch, opts);
+			if(o != SKIP)
+				return o;
+			}
+		}
+	catch(Exception e)
+		{
+		Arrays.fill(stack, 0, sp, null);
+		throw new EdnReader.ReaderException(line, getColumnNumber(), e);
+		}
+}
+
+//Moves the token being read, or else the chars not yet read, to the front
+//of buf and reads more input after them. Returns false at the end of input.
+boolean fill(){
+	if(eof)
+		return false;
+	int keep = mark >= 0 ? mark : pos;
+	int kept = limit - keep;
+	if(keep > 0)
+		{
+		System.arraycopy(buf, keep, buf, 0, kept);
+		offset += keep;
+		pos -= keep;
+		if(mark >= 0)
+			mark = 0;
+		limit = kept;
+		}
+	//room for a surrogate pair
+	if(buf.length - limit < 2)
+		buf = Arrays.copyOf(buf, buf.length * 2);
+	int n;
+	try
+		{
+		n = readInput(buf, limit, buf.length - limit);
+		}
+	catch(IOException e)
+		{
+		throw Util.sneakyThrow(e);
+		}
+	if(n <= 0)
+		{
+		eof = true;
+		return false;
+		}
+	limit += n;
+	return true;
+}
+
+private int readInput(char[] cbuf, int off, int len) throws IOException{
+	if(in != null)
+		{
+		int n;
+		do
+			{
+			n = in.read(cbuf, off, len);
+			} while(n == 0);
+		return n;
+		}
+	if(!bytes.hasRemaining())
+		return -1;
+	CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+	decoder.decode(bytes, out, true);
+	if(!bytes.hasRemaining())
+		decoder.flush(out);
+	return out.position() - off;
+}
+
+private void newline(){
+	line++;
+	lineStart = offset + pos;
+}
+
+private int read1(){
+	if(pos < limit || fill())
+		return buf[pos++];
+	return -1;
+}
+
+private int peek(){
+	if(pos < limit || fill())
+		return buf[pos];
+	return -1;
+}
+
+static private boolean isWhitespace(int ch){
+	return ch < 128 ? (ch >= 0 && CHARS[ch] == WHITESPACE) : Character.isWhitespace(ch);
+}
+
+static private boolean isMacro(int ch){
+	return ch >= 0 && ch < 128 && (CHARS[ch] & MACRO) != 0;
+}
+
+//returns the next char that isn't whitespace, or -1
+private int skipWhitespace(){
+	for(; ;)
+		{
+		if(pos == limit && !fill())
+			return -1;
+		char ch = buf[pos++];
+		if(ch == '\n')
+			newline();
+		else if(!isWhitespace(ch))
+			return ch;
+		}
+}
+
+private Object readForm(int ch, IPersistentMap opts){
+	switch(ch)
+		{
+		case '"':
+			return readString();
+		case ';':
+			skipComment();
+			return SKIP;
+		case '^':
+			return readMeta(opts);
+		case '(':
+			{
+			Object[] a = pop(readDelimited(')', opts));
+			if(a.length == 0)
+				return PersistentList.EMPTY;
+			return PersistentList.create(Arrays.asList(a));
+			}
+		case '[':
+			return LazilyPersistentVector.createOwning(pop(readDelimited(']', opts)));
+		case '{':
+			{
+			Object[] a = pop(readDelimited('}', opts));
+			if((a.length & 1) == 1)
+				throw Util.runtimeException("Map literal must contain an even number of forms");
+			return RT.map(a);
+			}
+		case ')':
+		case ']':
+		case '}':
+			throw Util.runtimeException("Unmatched delimiter: " + (char) ch);
+		case '\\':
+			return readCharacter();
+		case '#':
+			return readDispatch(opts);
+		}
+	mark = pos - 1;
+	if(Character.isDigit(ch))
+		return readNumber();
+	if((ch == '+' || ch == '-') && Character.isDigit(peek()))
+		return readNumber();
+	if(EdnReader.nonConstituent(ch))
+		throw Util.runtimeException("Invalid leading character: " + (char) ch);
+	return readToken();
+}
+
+//reads the next form inside of another, where EOF is an error
+private Object readInner(IPersistentMap opts){
+	for(; ;)
+		{
+		int ch = skipWhitespace();
+		if(ch == -1)
+			throw Util.runtimeException("EOF while reading");
+		Object o = readForm(ch, opts);
+		if(o != SKIP)
+			return o;
+		}
+}
+
+//Advances pos to the end of the token starting at mark. Numbers end at
+//any macro char, other tokens only at terminating ones.
+private void scanToken(boolean number){
+	int end = number ? (WHITESPACE | MACRO) : (WHITESPACE | TERMINATING);
+	for(; ;)
+		{
+		if(pos == limit && !fill())
+			return;
+		char ch = buf[pos];
+		if(ch < 128)
+			{
+			if((CHARS[ch] & end) != 0)
+				return;
+			if(!number && EdnReader.nonConstituent(ch))
+				throw Util.runtimeException("Invalid constituent character: " + ch);
+			}
+		else if(Character.isWhitespace(ch))
+			return;
+		pos++;
+		}
+}
+
+private Object readNumber(){
+	scanToken(true);
+	int start = mark;
+	mark = -1;
+	Object n = parseNumber(buf, start, pos);
+	if(n != null)
+		return n;
+	String s = new String(buf, start, pos - start);
+	n = EdnReader.matchNumber(s);
+	if(n == null)
+		throw new NumberFormatException("Invalid number: " + s);
+	return n;
+}
+
+//Parses decimal longs that fit without overflow, and decimal doubles that
+//can be computed exactly from a long and a power of ten. Returns null for
+//anything else, which is left to EdnReader.
+static Object parseNumber(char[] b, int i, int end){
+	boolean negate = false;
+	if(b[i] == '+' || b[i] == '-')
+		negate = b[i++] == '-';
+	int start = i;
+	long m = 0;
+	for(; i < end && b[i] >= '0' && b[i] <= '9'; i++)
+		{
+		if(i - start == MAX_LONG_DIGITS)
+			return null;
+		m = m * 10 + (b[i] - '0');
+		}
+	int digits = i - start;
+	if(digits == 0)
+		return null;
+	if(i == end)
+		{
+		//leading zeros are octal
+		if(digits > 1 && b[start] == '0')
+			return null;
+		return Numbers.num(negate ? -m : m);
+		}
+	int exp = 0;
+	if(b[i] == '.')
+		{
+		for(i++; i < end && b[i] >= '0' && b[i] <= '9'; i++)
+			{
+			if(++digits > MAX_DOUBLE_DIGITS)
+				return null;
+			m = m * 10 + (b[i] - '0');
+			exp--;
+			}
+		}
+	if(i < end && (b[i] == 'e' || b[i] == 'E'))
+		{
+		boolean negexp = false;
+		if(++i < end && (b[i] == '+' || b[i] == '-'))
+			negexp = b[i++] == '-';
+		int estart = i;
+		int e = 0;
+		for(; i < end && b[i] >= '0' && b[i] <= '9' && i - estart < 3; i++)
+			e = e * 10 + (b[i] - '0');
+		if(i == estart)
+			return null;
+		exp += negexp ? -e : e;
+		}
+	if(i != end || digits > MAX_DOUBLE_DIGITS || exp < -22 || exp > 22)
+		return null;
+	double d = exp < 0 ? m / POWERS_OF_TEN[-exp] : m * POWERS_OF_TEN[exp];
+	return negate ? -d : d;
+}
+
+//symbols, keywords, nil, true, false and the like
+private Object readToken(){
+	scanToken(false);
+	int start = mark;
+	int len = pos - start;
+	mark = -1;
+	int h = 0;
+	for(int i = start; i < pos; i++)
+		h = 31 * h + buf[i];
+	int i = (h ^ (h >>> 16)) & (CACHE_SIZE - 1);
+	String t = cacheTokens[i];
+	if(t != null && t.length() == len)
+		{
+		int k = 0;
+		while(k < len && t.charAt(k) == buf[start + k])
+			k++;
+		if(k == len)
+			return cacheValues[i];
+		}
+	String s = new String(buf, start, len);
+	Object ret = EdnReader.interpretToken(s);
+	cacheTokens[i] = s;
+	cacheValues[i] = ret;
+	return ret;
+}
+
+private Object readCharacter(){
+	if(pos == limit && !fill())
+		throw Util.runtimeException("EOF while reading character");
+	mark = pos++;
+	if(buf[mark] == '\n')
+		newline();
+	scanToken(false);
+	int start = mark;
+	mark = -1;
+	if(pos - start == 1)
+		return Character.valueOf(buf[start]);
+	return EdnReader.CharacterReader.interpretCharacter(new String(buf, start, pos - start));
+}
+
+private Object readString(){
+	mark = pos;
+	for(; ;)
+		{
+		if(pos == limit && !fill())
+			throw Util.runtimeException("EOF while reading string");
+		char ch = buf[pos++];
+		if(ch == '"')
+			{
+			String s = new String(buf, mark, pos - 1 - mark);
+			mark = -1;
+			return s;
+			}
+		if(ch == '\\')
+			{
+			pos--;
+			return readEscapedString();
+			}
+		if(ch == '\n')
+			newline();
+		}
+}
+
+private Object readEscapedString(){
+	StringBuilder sb = new StringBuilder(pos - mark + 16);
+	sb.append(buf, mark, pos - mark);
+	mark = -1;
+	for(int ch = read1(); ch != '"'; ch = read1())
+		{
+		if(ch == -1)
+			throw Util.runtimeException("EOF while reading string");
+		if(ch == '\n')
+			newline();
+		if(ch == '\\')	//escape
+			{
+			ch = read1();
+			if(ch == -1)
+				throw Util.runtimeException("EOF while reading string");
+			switch(ch)
+				{
+				case 't':
+					ch = '\t';
+					break;
+				case 'r':
+					ch = '\r';
+					break;
+				case 'n':
+					ch = '\n';
+					break;
+				case '\\':
+					break;
+				case '"':
+					break;
+				case 'b':
+					ch = '\b';
+					break;
+				case 'f':
+					ch = '\f';
+					break;
+				case 'u':
+				{
+				ch = read1();
+				if(Character.digit(ch, 16) == -1)
+					throw Util.runtimeException("Invalid unicode escape: \\u" + (char) ch);
+				ch = readUnicodeChar(ch, 16, 4, true);
+				break;
+				}
+				default:
+				{
+				if(Character.isDigit(ch))
+					{
+					ch = readUnicodeChar(ch, 8, 3, false);
+					if(ch > 0377)
+						throw Util.runtimeException("Octal escape sequence must be in range [0, 377].");
+					}
+				else
+					throw Util.runtimeException("Unsupported escape character: \\" + (char) ch);
+				}
+				}
+			}
+		sb.append((char) ch);
+		}
+	return sb.toString();
+}
+
+private int readUnicodeChar(int initch, int base, int length, boolean exact){
+	int uc = Character.digit(initch, base);
+	if(uc == -1)
+		throw new IllegalArgumentException("Invalid digit: " + (char) initch);
+	int i = 1;
+	for(; i < length; ++i)
+		{
+		int ch = peek();
+		if(ch == -1 || isWhitespace(ch) || isMacro(ch))
+			break;
+		pos++;
+		int d = Character.digit(ch, base);
+		if(d == -1)
+			throw new IllegalArgumentException("Invalid digit: " + (char) ch);
+		uc = uc * base + d;
+		}
+	if(i != length && exact)
+		throw new IllegalArgumentException("Invalid character length: " + i + ", should be: " + length);
+	return uc;
+}
+
+private void skipComment(){
+	for(; ;)
+		{
+		if(pos == limit && !fill())
+			return;
+		char ch = buf[pos++];
+		if(ch == '\n')
+			{
+			newline();
+			return;
+			}
+		if(ch == '\r')
+			return;
+		}
+}
+
+//Reads the forms up to delim onto the stack, returning the index of the first
+private int readDelimited(char delim, IPersistentMap opts){
+	int start = sp;
+	int firstline = line;
+	for(; ;)
+		{
+		int ch = skipWhitespace();
+		if(ch == -1)
+			throw Util.runtimeException("EOF while reading, starting at line " + firstline);
+		if(ch == delim)
+			return start;
+		Object o = readForm(ch, opts);
+		if(o != SKIP)
+			{
+			if(sp == stack.length)
+				stack = Arrays.copyOf(stack, sp * 2);
+			stack[sp++] = o;
+			}
+		}
+}
+
+private Object[] pop(int start){
+	Object[] ret = Arrays.copyOfRange(stack, start, sp);
+	Arrays.fill(stack, start, sp, null);
+	sp = start;
+	return ret;
+}
+
+private Object readMeta(IPersistentMap opts){
+	IPersistentMap meta = EdnReader.MetaReader.metaMap(readInner(opts));
+	return EdnReader.MetaReader.withMeta(meta, readInner(opts), -1, -1);
+}
+
+private Object readDispatch(IPersistentMap opts){
+	int ch = read1();
+	if(ch == -1)
+		throw Util.runtimeException("EOF while reading character");
+	switch(ch)
+		{
+		case '#':
+			{
+			Object o = readInner(opts);
+			if(!(o instanceof Symbol))
+				throw Util.runtimeException("Invalid token: ##" + o);
+			IPersistentMap specials = EdnReader.SymbolicValueReader.specials;
+			if(!(specials.containsKey(o)))
+				throw Util.runtimeException("Unknown symbolic value: ##" + o);
+			return specials.valAt(o);
+			}
+		case '^':
+			return readMeta(opts);
+		case '{':
+			return PersistentHashSet.createWithCheck(pop(readDelimited('}', opts)));
+		case '<':
+			throw Util.runtimeException("Unreadable form");
+		case '_':
+			readInner(opts);
+			return SKIP;
+		case ':':
+			{
+			Object sym = readInner(opts);
+			if(!(sym instanceof Symbol) || ((Symbol) sym).getNamespace() != null)
+				throw new RuntimeException("Namespaced map must specify a valid namespace: " + sym);
+			if(skipWhitespace() != '{')
+				throw new RuntimeException("Namespaced map must specify a map");
+			Object[] kvs = pop(readDelimited('}', opts));
+			return EdnReader.NamespaceMapReader.namespacedMap(((Symbol) sym).getName(), Arrays.asList(kvs));
+			}
+		}
+	if(Character.isLetter(ch))
+		{
+		pos--;
+		Object tag = readInner(opts);
+		if(!(tag instanceof Symbol))
+			throw new RuntimeException("Reader tag must be a symbol");
+		return EdnReader.TaggedReader.readTagged((Symbol) tag, readInner(opts), opts);
+		}
+	throw Util.runtimeException(String.format("No dispatch macro for: %c", (char) ch));
+}
+}
@@ -84,8 +84,8 @@ static void unread(PushbackReader r, int ch) {
 }
 
 public static class ReaderException extends RuntimeException{
-	final int line;
-	final int column;
+	public final int line;
+	public final int column;
 
 	public ReaderException(int line, int column, Throwable cause){
 		super(cause);
@@ -262,7 +262,7 @@ static private int readUnicodeChar(PushbackReader r, int initch, int base, int l
 	return uc;
 }
 
-static private Object interpretToken(String s) {
+static Object interpretToken(String s) {
 	if(s.equals("nil"))
 		{
 		return null;
@@ -313,17 +313,15 @@ private static Object matchSymbol(String s){
 			{
 			return null;
 			}
-		boolean isKeyword = s.charAt(0) == ':';
-		Symbol sym = Symbol.intern(s.substring(isKeyword ? 1 : 0));
-		if(isKeyword)
-			return Keyword.intern(sym);
-		return sym;
+		if(s.charAt(0) == ':')
+			return Keyword.intern(s.substring(1));
+		return Symbol.intern(s);
 		}
 	return null;
 }
 
 
-private static Object matchNumber(String s){
+static Object matchNumber(String s){
 	Matcher m = intPat.matcher(s);
 	if(m.matches())
 		{
@@ -514,6 +512,10 @@ public static class NamespaceMapReader extends AFn{
 		if('{' != nextChar)
 			throw new RuntimeException("Namespaced map must specify a map");
 		List kvs = readDelimitedList('}', r, true, opts);
+		return namespacedMap(ns, kvs);
+	}
+
+	static Object namespacedMap(String ns, List kvs){
 		if((kvs.size() & 1) == 1)
 			throw Util.runtimeException("Namespaced map literal must contain an even number of forms");
 
@@ -577,15 +579,22 @@ public static class MetaReader extends AFn{
 			line = ((LineNumberingPushbackReader) r).getLineNumber();
 			column = ((LineNumberingPushbackReader) r).getColumnNumber()-1;
 			}
-		Object meta = read(r, true, null, true, opts);
+		IPersistentMap meta = metaMap(read(r, true, null, true, opts));
+		Object o = read(r, true, null, true, opts);
+		return withMeta(meta, o, line, column);
+	}
+
+	static IPersistentMap metaMap(Object meta){
 		if(meta instanceof Symbol || meta instanceof String)
-			meta = RT.map(RT.TAG_KEY, meta);
+			return RT.map(RT.TAG_KEY, meta);
 		else if (meta instanceof Keyword)
-			meta = RT.map(meta, RT.T);
+			return RT.map(meta, RT.T);
 		else if(!(meta instanceof IPersistentMap))
 			throw new IllegalArgumentException("Metadata must be Symbol,Keyword,String or Map");
+		return (IPersistentMap) meta;
+	}
 
-		Object o = read(r, true, null, true, opts);
+	static Object withMeta(IPersistentMap meta, Object o, int line, int column){
 		if(o instanceof IMeta)
 			{
 			if(line != -1 && o instanceof ISeq)
@@ -617,6 +626,10 @@ public static class CharacterReader extends AFn{
 		if(ch == -1)
 			throw Util.runtimeException("EOF while reading character");
 		String token = readToken(r, (char) ch, false);
+		return interpretCharacter(token);
+	}
+
+	static Object interpretCharacter(String token){
 		if(token.length() == 1)
 			return Character.valueOf(token.charAt(0));
 		else if(token.equals("newline"))
@@ -792,16 +805,15 @@ public static class TaggedReader extends AFn{
 		if (!(name instanceof Symbol))
 			throw new RuntimeException("Reader tag must be a symbol");
 		Symbol sym = (Symbol)name;
-		return readTagged(r, sym, (IPersistentMap) opts);
+		Object o = read(r, true, null, true, opts);
+		return readTagged(sym, o, (IPersistentMap) opts);
 	}
 
 	static Keyword READERS = Keyword.intern(null,"readers");
 	static Keyword DEFAULT = Keyword.intern(null,"default");
     static Object sentinel = new AFn() {};
 
-	private Object readTagged(PushbackReader reader, Symbol tag, IPersistentMap opts){
-		Object o = read(reader, true, null, true, opts);
-
+	static Object readTagged(Symbol tag, Object o, IPersistentMap opts){
 		ILookup readers = (ILookup)RT.get(opts, READERS);
         IFn dataReader = (IFn)RT.get(readers, tag, sentinel);
         if(dataReader == sentinel)
@@ -17,11 +17,12 @@ public class FnLoaderThunk extends RestFn{
 final Var v;
 final ClassLoader loader;
 final String fnClassName;
-IFn fn;
+volatile IFn fn;
 
 public FnLoaderThunk(Var v, String fnClassName){
 	this.v = v;
-	this.loader = (ClassLoader) RT.FN_LOADER_VAR.get();
+	ClassLoader l = (ClassLoader) RT.FN_LOADER_VAR.get();
+	this.loader = l != null ? l : RT.baseLoader();
 	this.fnClassName = fnClassName;
 	fn = null;
 }
@@ -57,7 +58,15 @@ private void load() {
 			{
 			throw Util.sneakyThrow(e);
 			}
-		v.root = fn;
+		synchronized(v)
+			{
+			//unless the var has been redefined since
+			if(v.root == this)
+				{
+				v.root = fn;
+				v.invalidateRootSwitchPoint();
+				}
+			}
 		}
 }
 
@@ -66,7 +75,8 @@ public int getRequiredArity(){
 }
 
 public IObj withMeta(IPersistentMap meta){
-	return this;
+	load();
+	return ((IObj) fn).withMeta(meta);
 }
 
 public IPersistentMap meta(){
@@ -14,51 +14,147 @@ package clojure.lang;
 
 import java.io.ObjectStreamException;
 import java.io.Serializable;
-import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
-import java.util.concurrent.ConcurrentHashMap;
 import java.lang.ref.ReferenceQueue;
-import java.lang.ref.SoftReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 public class Keyword implements IFn, Comparable, Named, Serializable, IHashEq {
 
-private static ConcurrentHashMap<Symbol, Reference<Keyword>> table = new ConcurrentHashMap();
+//Keywords are held weakly in a hash table keyed by the hash of their ns and
+//name, which lookups walk without locking, so interning a keyword that
+//exists allocates nothing, not even a Symbol. Misses, and the removal of
+//collected keywords, lock the table.
+static final class Ref extends WeakReference<Keyword>{
+	final int hash;
+
+	Ref(Keyword k, int hash){
+		super(k, rq);
+		this.hash = hash;
+	}
+}
+
+static final class Node{
+	final Ref ref;
+	final Node next;
+
+	Node(Ref ref, Node next){
+		this.ref = ref;
+		this.next = next;
+	}
+}
+
 static final ReferenceQueue rq = new ReferenceQueue();
+static final Object lock = new Object();
+private static volatile AtomicReferenceArray<Node> table = new AtomicReferenceArray<Node>(1024);
+//guarded by lock
+private static int count;
+
 public final Symbol sym;
 final int hasheq;
 transient String _str;
 
-public static Keyword intern(Symbol sym){
-	Keyword k = null;
-    for(;;)
+//same as Symbol.hashCode()
+static int hash(String ns, String name){
+	return Util.hashCombine(name.hashCode(), Util.hash(ns));
+}
+
+private static Keyword lookup(AtomicReferenceArray<Node> t, String ns, String name, int hash){
+	for(Node n = t.get(hash & (t.length() - 1)); n != null; n = n.next)
 		{
-        Reference<Keyword> existingRef = table.get(sym);
-        if(existingRef == null)
-            {
-            Util.clearCache(rq, table);
-            if(sym.meta() != null)
-                sym = (Symbol) sym.withMeta(null);
-            k = new Keyword(sym);
-            existingRef = table.putIfAbsent(sym, new WeakReference<Keyword>(k, rq));
-            }
-        if(existingRef == null)
-            break;
-        k = existingRef.get();
-        if(k != null)
-            break;
-        //entry died in the interim, do over
-        table.remove(sym, existingRef);
+		if(n.ref.hash == hash)
+			{
+			Keyword k = n.ref.get();
+			if(k != null && k.sym.name.equals(name) && Util.equals(k.sym.ns, ns))
+				return k;
+			}
 		}
-    return k;
+	return null;
+}
+
+private static Keyword intern(String ns, String name, int hash, Symbol sym){
+	Keyword k = lookup(table, ns, name, hash);
+	if(k != null)
+		return k;
+	synchronized(lock)
+		{
+		expunge();
+		AtomicReferenceArray<Node> t = table;
+		k = lookup(t, ns, name, hash);
+		if(k != null)
+			return k;
+		if(sym == null)
+			sym = Symbol.intern(ns, name);
+		else if(sym.meta() != null)
+			sym = (Symbol) sym.withMeta(null);
+		k = new Keyword(sym);
+		if(++count > t.length() - (t.length() >> 2))
+			t = table = grow(t);
+		int i = hash & (t.length() - 1);
+		t.set(i, new Node(new Ref(k, hash), t.get(i)));
+		return k;
+		}
+}
+
+//caller holds lock
+private static AtomicReferenceArray<Node> grow(AtomicReferenceArray<Node> t){
+	AtomicReferenceArray<Node> ret = new AtomicReferenceArray<Node>(t.length() * 2);
+	for(int i = 0; i < t.length(); i++)
+		{
+		for(Node n = t.get(i); n != null; n = n.next)
+			{
+			int j = n.ref.hash & (ret.length() - 1);
+			ret.set(j, new Node(n.ref, ret.get(j)));
+			}
+		}
+	return ret;
+}
+
+//caller holds lock
+private static void expunge(){
+	AtomicReferenceArray<Node> t = table;
+	for(Object r; (r = rq.poll()) != null; )
+		{
+		int i = ((Ref) r).hash & (t.length() - 1);
+		Node head = t.get(i);
+		boolean found = false;
+		for(Node n = head; n != null && !found; n = n.next)
+			found = (n.ref == r);
+		if(!found)
+			continue;
+		//copy the chain up to the dead ref, readers may be walking it
+		Node rest = null;
+		Node kept = null;
+		for(Node n = head; n != null; n = n.next)
+			{
+			if(n.ref == r)
+				{
+				rest = n.next;
+				break;
+				}
+			kept = new Node(n.ref, kept);
+			}
+		for(Node n = kept; n != null; n = n.next)
+			rest = new Node(n.ref, rest);
+		t.set(i, rest);
+		--count;
+		}
+}
+
+public static Keyword intern(Symbol sym){
+	return intern(sym.ns, sym.name, sym.hashCode(), sym);
 }
 
 public static Keyword intern(String ns, String name){
-	return intern(Symbol.intern(ns, name));
+	return intern(ns, name, hash(ns, name), null);
 }
 
 public static Keyword intern(String nsname){
-	return intern(Symbol.intern(nsname));
+	int i = nsname.indexOf('/');
+	if(i == -1 || nsname.equals("/"))
+		return intern(null, nsname);
+	else
+		return intern(nsname.substring(0, i), nsname.substring(i + 1));
 }
 
 private Keyword(Symbol sym){
@@ -67,19 +163,19 @@ private Keyword(Symbol sym){
 }
 
 public static Keyword find(Symbol sym){
-    Reference<Keyword> ref = table.get(sym);
-    if (ref != null)
-        return ref.get();
-    else
-        return null;
+	return lookup(table, sym.ns, sym.name, sym.hashCode());
 }
 
 public static Keyword find(String ns, String name){
-    return find(Symbol.intern(ns, name));
+	return lookup(table, ns, name, hash(ns, name));
 }
 
 public static Keyword find(String nsname){
-    return find(Symbol.intern(nsname));
+	int i = nsname.indexOf('/');
+	if(i == -1 || nsname.equals("/"))
+		return find(null, nsname);
+	else
+		return find(nsname.substring(0, i), nsname.substring(i + 1));
 }
 
 public final int hashCode(){
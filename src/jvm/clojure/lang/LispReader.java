@@ -454,11 +454,9 @@ private static Object matchSymbol(String s, Resolver resolver){
                     return null;
                 }
             }
-		boolean isKeyword = s.charAt(0) == ':';
-		Symbol sym = Symbol.intern(s.substring(isKeyword ? 1 : 0));
-		if(isKeyword)
-			return Keyword.intern(sym);
-		return sym;
+		if(s.charAt(0) == ':')
+			return Keyword.intern(s.substring(1));
+		return Symbol.intern(s);
 		}
 	return null;
 }
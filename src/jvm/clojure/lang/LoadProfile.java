@@ -0,0 +1,203 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Time spent loading each lib, off unless the JVM is started with
+ * clojure.load.profile=true, in which case the report is printed to stderr
+ * at exit.
+ *
+ * <p>Loads are keyed by resource path without extension, e.g. clojure/set.
+ * Their time is split into reading forms, analysis (including
+ * macroexpansion), bytecode generation, class definition, running AOT __init
+ * classes, and eval, the rest of the time taken by the load itself. Time
+ * spent in a lib loaded while loading another is only counted against the
+ * inner lib, and each phase only counts the time not spent in a phase
+ * nested in it, so a fn compiled during analysis of its enclosing form
+ * counts as emit.</p>
+ */
+public final class LoadProfile{
+
+public static final boolean ENABLED = Boolean.getBoolean("clojure.load.profile");
+
+static final int READ = 0;
+static final int ANALYZE = 1;
+static final int EMIT = 2;
+static final int DEFINE = 3;
+static final int INIT = 4;
+static final int EVAL = 5;
+
+static final String[] PHASES = {"read", "analyze", "emit", "define", "init", "eval"};
+
+static final class Entry{
+	final String name;
+	final AtomicLongArray nanos = new AtomicLongArray(PHASES.length + 1);
+
+	Entry(String name){
+		this.name = name;
+	}
+
+	long total(){
+		long t = 0;
+		for(int i = 0; i < PHASES.length; i++)
+			t += nanos.get(i);
+		return t;
+	}
+
+	long loads(){
+		return nanos.get(PHASES.length);
+	}
+}
+
+static final class Section{
+	//null for phases outside of any load, e.g. at the repl
+	final Entry entry;
+	final int phase;
+	final Section parent;
+	final long start = System.nanoTime();
+	long nested;
+
+	Section(Entry entry, int phase, Section parent){
+		this.entry = entry;
+		this.phase = phase;
+		this.parent = parent;
+	}
+}
+
+static final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+static final ThreadLocal<Section> current = new ThreadLocal<Section>();
+
+static
+	{
+	if(ENABLED)
+		Runtime.getRuntime().addShutdownHook(new Thread("clojure-load-profile"){
+			public void run(){
+				printReport(System.err);
+			}
+		});
+	}
+
+private LoadProfile(){
+}
+
+static String key(String path){
+	if(path.endsWith(".clj"))
+		return path.substring(0, path.length() - 4);
+	if(path.endsWith(".cljc"))
+		return path.substring(0, path.length() - 5);
+	return path;
+}
+
+static void beginLoad(String path){
+	String name = key(path);
+	Entry e = entries.get(name);
+	if(e == null)
+		{
+		Entry created = new Entry(name);
+		e = entries.putIfAbsent(name, created);
+		if(e == null)
+			e = created;
+		}
+	e.nanos.incrementAndGet(PHASES.length);
+	current.set(new Section(e, EVAL, current.get()));
+}
+
+static void endLoad(){
+	exit();
+}
+
+static void enter(int phase){
+	Section s = current.get();
+	current.set(new Section(s == null ? null : s.entry, phase, s));
+}
+
+static void exit(){
+	Section s = current.get();
+	long elapsed = System.nanoTime() - s.start;
+	if(s.entry != null)
+		s.entry.nanos.addAndGet(s.phase, elapsed - s.nested);
+	if(s.parent != null)
+		s.parent.nested += elapsed;
+	current.set(s.parent);
+}
+
+static ArrayList<Entry> sortedEntries(){
+	ArrayList<Entry> ret = new ArrayList<Entry>(entries.values());
+	Collections.sort(ret, new Comparator<Entry>(){
+		public int compare(Entry x, Entry y){
+			return Long.compare(y.total(), x.total());
+		}
+	});
+	return ret;
+}
+
+/**
+ * Returns a map from lib path to a map of the nanoseconds spent in each
+ * phase, along with :total and :loads.
+ */
+static public IPersistentMap snapshot(){
+	ITransientMap ret = PersistentHashMap.EMPTY.asTransient();
+	for(Entry e : entries.values())
+		{
+		ITransientMap m = PersistentArrayMap.EMPTY.asTransient();
+		for(int i = 0; i < PHASES.length; i++)
+			m = m.assoc(Keyword.intern(PHASES[i]), e.nanos.get(i));
+		m = m.assoc(Keyword.intern("total"), e.total());
+		m = m.assoc(Keyword.intern("loads"), e.loads());
+		ret = ret.assoc(e.name, m.persistent());
+		}
+	return ret.persistent();
+}
+
+static public void reset(){
+	entries.clear();
+}
+
+/**
+ * Prints a table of the time in milliseconds spent loading each lib,
+ * slowest first.
+ */
+static public void printReport(PrintStream out){
+	ArrayList<Entry> sorted = sortedEntries();
+	long[] sums = new long[PHASES.length];
+	StringBuilder sb = new StringBuilder();
+	sb.append(String.format("%10s", "total"));
+	for(String p : PHASES)
+		sb.append(String.format("%10s", p));
+	sb.append(String.format("  loads  lib%n"));
+	for(Entry e : sorted)
+		{
+		sb.append(String.format("%10.1f", e.total() / 1e6));
+		for(int i = 0; i < PHASES.length; i++)
+			{
+			sums[i] += e.nanos.get(i);
+			sb.append(String.format("%10.1f", e.nanos.get(i) / 1e6));
+			}
+		sb.append(String.format("  %5d  %s%n", e.loads(), e.name));
+		}
+	long total = 0;
+	for(long s : sums)
+		total += s;
+	sb.append(String.format("%10.1f", total / 1e6));
+	for(long s : sums)
+		sb.append(String.format("%10.1f", s / 1e6));
+	sb.append(String.format("  %5s  %s%n", "", "(all)"));
+	out.print(sb);
+	out.flush();
+}
+}
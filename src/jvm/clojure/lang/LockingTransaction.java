@@ -27,6 +27,9 @@ public static final int LOCK_WAIT_MSECS = 100;
 public static final long BARGE_WAIT_NANOS = 10 * 1000000;
 //public static int COMMUTE_RETRY_LIMIT = 10;
 
+//-Dclojure.stm.engine=tl2 selects VersionedTransaction for every transaction in the process
+static final boolean VERSIONED = "tl2".equals(System.getProperty("clojure.stm.engine"));
+
 static final int RUNNING = 0;
 static final int COMMITTING = 1;
 static final int RETRY = 2;
@@ -71,7 +74,7 @@ static class CFn{
 }
 //total order on transactions
 //transactions will consume a point for init, for each retry, and on commit if writing
-final private static AtomicLong lastPoint = new AtomicLong();
+final static AtomicLong lastPoint = new AtomicLong();
 
 void getReadPoint(){
 	readPoint = lastPoint.incrementAndGet();
@@ -112,6 +115,9 @@ final HashSet<Ref> ensures = new HashSet<Ref>();   //all hold readLock
 
 
 void tryWriteLock(Ref ref){
+	if(ref.lock.writeLock().tryLock())
+		return;
+	long start = STMStats.enabled ? System.nanoTime() : 0;
 	try
 		{
 		if(!ref.lock.writeLock().tryLock(LOCK_WAIT_MSECS, TimeUnit.MILLISECONDS))
@@ -121,6 +127,11 @@ void tryWriteLock(Ref ref){
 		{
 		throw retryex;
 		}
+	finally
+		{
+		if(start != 0)
+			STMStats.recordLockWait(System.nanoTime() - start);
+		}
 }
 
 //returns the most recent val
@@ -161,6 +172,7 @@ Object lock(Ref ref){
 private Object blockAndBail(Info refinfo){
 //stop prior to blocking
 	stop(RETRY);
+	long start = STMStats.enabled ? System.nanoTime() : 0;
 	try
 		{
 		refinfo.latch.await(LOCK_WAIT_MSECS, TimeUnit.MILLISECONDS);
@@ -169,6 +181,8 @@ private Object blockAndBail(Info refinfo){
 		{
 		//ignore
 		}
+	if(start != 0)
+		STMStats.recordLockWait(System.nanoTime() - start);
 	throw retryex;
 }
 
@@ -197,7 +211,11 @@ private boolean barge(Info refinfo){
 		{
         barged = refinfo.status.compareAndSet(RUNNING, KILLED);
         if(barged)
+            {
             refinfo.latch.countDown();
+            if(STMStats.enabled)
+                STMStats.recordBarge();
+            }
 		}
 	return barged;
 }
@@ -224,7 +242,7 @@ static public Object runInTransaction(Callable fn) throws Exception{
 	LockingTransaction t = transaction.get();
 	Object ret;
 	if(t == null) {
-		transaction.set(t = new LockingTransaction());
+		transaction.set(t = VERSIONED ? new VersionedTransaction() : new LockingTransaction());
 		try {
 			ret = t.run(fn);
 		} finally {
@@ -259,7 +277,8 @@ Object run(Callable fn) throws Exception{
 	ArrayList<Ref> locked = new ArrayList<Ref>();
 	ArrayList<Notify> notify = new ArrayList<Notify>();
 
-	for(int i = 0; !done && i < RETRY_LIMIT; i++)
+	int i = 0;
+	for(; !done && i < RETRY_LIMIT; i++)
 		{
 		try
 			{
@@ -299,6 +318,8 @@ Object run(Callable fn) throws Exception{
 						{
 						vals.put(ref, f.fn.applyTo(RT.cons(vals.get(ref), f.args)));
 						}
+					if(STMStats.enabled)
+						STMStats.recordCommutes(e.getValue().size());
 					}
 				for(Ref ref : sets)
 					{
@@ -321,24 +342,7 @@ Object run(Callable fn) throws Exception{
 					Ref ref = e.getKey();
 					Object oldval = ref.tvals == null ? null : ref.tvals.val;
 					Object newval = e.getValue();
-					int hcount = ref.histCount();
-
-					if(ref.tvals == null)
-						{
-						ref.tvals = new Ref.TVal(newval, commitPoint);
-						}
-					else if((ref.faults.get() > 0 && hcount < ref.maxHistory)
-							|| hcount < ref.minHistory)
-						{
-						ref.tvals = new Ref.TVal(newval, commitPoint, ref.tvals);
-						ref.faults.set(0);
-						}
-					else
-						{
-						ref.tvals = ref.tvals.next;
-						ref.tvals.val = newval;
-						ref.tvals.point = commitPoint;
-						}
+					writeVal(ref, newval, commitPoint);
 					if(ref.getWatches().count() > 0)
 						notify.add(new Notify(ref, oldval, newval));
 					}
@@ -351,6 +355,13 @@ Object run(Callable fn) throws Exception{
 			{
 			//eat this so we retry rather than fall out
 			}
+		catch(Throwable e)
+			{
+			//the transaction ends here, after i retries
+			if(STMStats.enabled)
+				STMStats.recordTransaction(i, false);
+			throw e;
+			}
 		finally
 			{
 			for(int k = locked.size() - 1; k >= 0; --k)
@@ -374,7 +385,7 @@ Object run(Callable fn) throws Exception{
 						}
 					for(Agent.Action action : actions)
 						{
-						Agent.dispatchAction(action);
+						Agent.dispatchCommitted(action);
 						}
 					}
 				}
@@ -385,11 +396,37 @@ Object run(Callable fn) throws Exception{
 				}
 			}
 		}
+	if(STMStats.enabled)
+		STMStats.recordTransaction(i - 1, !done);
 	if(!done)
 		throw Util.runtimeException("Transaction failed after reaching retry limit");
 	return ret;
 }
 
+//caller must have exclusive access to ref
+static void writeVal(Ref ref, Object newval, long commitPoint){
+	int hcount = ref.histCount();
+
+	if(ref.tvals == null)
+		{
+		ref.tvals = new Ref.TVal(newval, commitPoint);
+		}
+	else if((ref.faults.get() > 0 && hcount < ref.maxHistory)
+			|| hcount < ref.minHistory)
+		{
+		ref.tvals = new Ref.TVal(newval, commitPoint, ref.tvals);
+		ref.faults.set(0);
+		if(STMStats.enabled)
+			STMStats.recordGrowth();
+		}
+	else
+		{
+		ref.tvals = ref.tvals.next;
+		ref.tvals.val = newval;
+		ref.tvals.point = commitPoint;
+		}
+}
+
 public void enqueue(Agent.Action action){
 	actions.add(action);
 }
@@ -417,6 +454,8 @@ Object doGet(Ref ref){
 		}
 	//no version of val precedes the read point
 	ref.faults.incrementAndGet();
+	if(STMStats.enabled)
+		STMStats.recordFault();
 	throw retryex;
 
 }
@@ -13,6 +13,7 @@ package clojure.lang;
 import java.io.Serializable;
 
 import java.util.Iterator;
+import java.util.concurrent.Callable;
 import java.util.NoSuchElementException;
 
 /**
@@ -241,6 +242,49 @@ public Object reduce(IFn f, Object val) {
     return acc;
 }
 
+public Object fold(long n, final IFn combinef, final IFn reducef,
+                   IFn fjinvoke, final IFn fjtask, final IFn fjfork, final IFn fjjoin) {
+    final long count;
+    try {
+        count = rangeCount(start, end, step);
+    } catch(ArithmeticException e) {
+        // pathological range, see count()
+        return reduce(reducef, combinef.invoke());
+    }
+    final long leaf = Math.max(n, 1);
+    Callable top = new Callable(){
+        public Object call() throws Exception {
+            return foldRange(start, step, count, leaf, combinef, reducef, fjtask, fjfork, fjjoin);
+        }
+    };
+    return fjinvoke.invoke(top);
+}
+
+// splits the index space, element k being start + k * step
+static Object foldRange(long start, final long step, long count, final long n,
+                        final IFn combinef, final IFn reducef,
+                        final IFn fjtask, final IFn fjfork, final IFn fjjoin) {
+    if(count <= n) {
+        Object acc = combinef.invoke();
+        long i = start;
+        for(long k = 0; k < count; k++, i += step) {
+            acc = reducef.invoke(acc, i);
+            if(RT.isReduced(acc)) return ((IDeref)acc).deref();
+        }
+        return acc;
+    }
+    final long half = count / 2;
+    final long rightStart = start + half * step;
+    final long rightCount = count - half;
+    Object forked = fjfork.invoke(fjtask.invoke(new Callable(){
+        public Object call() throws Exception {
+            return foldRange(rightStart, step, rightCount, n, combinef, reducef, fjtask, fjfork, fjjoin);
+        }
+    }));
+    return combinef.invoke(foldRange(start, step, half, n, combinef, reducef, fjtask, fjfork, fjjoin),
+                           fjjoin.invoke(forked));
+}
+
 public Iterator iterator() {
     return new LongRangeIterator();
 }
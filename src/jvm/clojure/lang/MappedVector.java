@@ -0,0 +1,320 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A persistent vector whose elements are fixed width values read from
+ * ByteBuffers, normally memory mapped files, so the bulk of the data lives
+ * outside the GC heap. Elements are primitives (:byte :short :int :long
+ * :float :double, read as Longs and Doubles) or records of recordSize bytes
+ * decoded by (decode buffer offset), which must use absolute gets.
+ *
+ * <p>The buffers are never written. assocN within the mapped range is kept in
+ * a persistent map of overrides, and cons/assocN past it in a PersistentVector
+ * tail.</p>
+ */
+public class MappedVector extends APersistentVector implements IObj, IReduce, IKVReduce{
+
+static final int BYTE = 0;
+static final int SHORT = 1;
+static final int INT = 2;
+static final int LONG = 3;
+static final int FLOAT = 4;
+static final int DOUBLE = 5;
+static final int RECORD = 6;
+
+static final int[] WIDTHS = {1, 2, 4, 8, 4, 8};
+static final String[] TYPES = {"byte", "short", "int", "long", "float", "double"};
+
+//largest segment we map at once, rounded down to a whole number of elements
+static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+final ByteBuffer[] segments;
+final int segmentElems;
+final int type;
+final int width;
+final IFn decode;
+final int baseCnt;
+final IPersistentMap overrides;
+final PersistentVector tail;
+final IPersistentMap _meta;
+
+MappedVector(IPersistentMap meta, ByteBuffer[] segments, int segmentElems, int type, int width, IFn decode,
+             int baseCnt, IPersistentMap overrides, PersistentVector tail){
+	this._meta = meta;
+	this.segments = segments;
+	this.segmentElems = segmentElems;
+	this.type = type;
+	this.width = width;
+	this.decode = decode;
+	this.baseCnt = baseCnt;
+	this.overrides = overrides;
+	this.tail = tail;
+}
+
+static int typeCode(Object type){
+	String name = (type instanceof Named) ? ((Named) type).getName() : String.valueOf(type);
+	for(int i = 0; i < TYPES.length; i++)
+		if(TYPES[i].equals(name))
+			return i;
+	throw new IllegalArgumentException("Unsupported element type: " + type);
+}
+
+static public MappedVector open(Path path, Object type) throws IOException{
+	return open(path, type, ByteOrder.BIG_ENDIAN);
+}
+
+static public MappedVector open(Path path, Object type, ByteOrder order) throws IOException{
+	int t = typeCode(type);
+	return create(mapSegments(path, WIDTHS[t], order), t, WIDTHS[t], null);
+}
+
+static public MappedVector open(Path path, int recordSize, IFn decode) throws IOException{
+	return create(mapSegments(path, recordSize, ByteOrder.BIG_ENDIAN), RECORD, recordSize, decode);
+}
+
+/**
+ * Wraps already mapped (or heap) buffers. Each buffer must hold a whole
+ * number of elements, all but the last the same number, and the last no
+ * more than that.
+ */
+static public MappedVector create(ByteBuffer[] segments, Object type){
+	int t = typeCode(type);
+	return create(segments, t, WIDTHS[t], null);
+}
+
+static public MappedVector create(ByteBuffer[] segments, int recordSize, IFn decode){
+	return create(segments, RECORD, recordSize, decode);
+}
+
+static MappedVector create(ByteBuffer[] segments, int type, int width, IFn decode){
+	if(width <= 0)
+		throw new IllegalArgumentException("Record size must be positive: " + width);
+	ByteBuffer[] segs = new ByteBuffer[segments.length];
+	long cnt = 0;
+	int segmentElems = segments.length > 0 ? segments[0].remaining() / width : 0;
+	for(int i = 0; i < segments.length; i++)
+		{
+		ByteBuffer b = segments[i].slice().asReadOnlyBuffer().order(segments[i].order());
+		int elems = b.remaining() / width;
+		if(b.remaining() % width != 0 || elems > segmentElems
+		   || (i < segments.length - 1 && elems != segmentElems))
+			throw new IllegalArgumentException("Buffers must hold whole numbers of elements, the same in all but the last, which may hold fewer");
+		segs[i] = b;
+		cnt += elems;
+		}
+	if(cnt > Integer.MAX_VALUE)
+		throw new IllegalArgumentException("Too many elements: " + cnt);
+	return new MappedVector(null, segs, Math.max(segmentElems, 1), type, width, decode, (int) cnt,
+	                        PersistentHashMap.EMPTY, PersistentVector.EMPTY);
+}
+
+static ByteBuffer[] mapSegments(Path path, int width, ByteOrder order) throws IOException{
+	FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+	try
+		{
+		long size = ch.size() - ch.size() % width;
+		long segBytes = (MAX_SEGMENT_BYTES / width) * width;
+		int n = (int) ((size + segBytes - 1) / segBytes);
+		ByteBuffer[] ret = new ByteBuffer[n];
+		for(int i = 0; i < n; i++)
+			{
+			long pos = i * segBytes;
+			ret[i] = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(segBytes, size - pos)).order(order);
+			}
+		return ret;
+		}
+	finally
+		{
+		//mappings stay valid after the channel is closed
+		ch.close();
+		}
+}
+
+Object read(int i){
+	ByteBuffer b = segments[i / segmentElems];
+	int off = (i % segmentElems) * width;
+	switch(type)
+		{
+		case BYTE: return (long) b.get(off);
+		case SHORT: return (long) b.getShort(off);
+		case INT: return (long) b.getInt(off);
+		case LONG: return b.getLong(off);
+		case FLOAT: return (double) b.getFloat(off);
+		case DOUBLE: return b.getDouble(off);
+		default: return decode.invoke(b, off);
+		}
+}
+
+Object coerce(Object val){
+	switch(type)
+		{
+		case BYTE: return (long) RT.byteCast(val);
+		case SHORT: return (long) RT.shortCast(val);
+		case INT: return (long) RT.intCast(val);
+		case LONG: return RT.longCast(val);
+		case FLOAT: return (double) RT.floatCast(val);
+		case DOUBLE: return RT.doubleCast(val);
+		default: return val;
+		}
+}
+
+public Object nth(int i){
+	if(i >= baseCnt)
+		{
+		if(i < count())
+			return tail.nth(i - baseCnt);
+		}
+	else if(i >= 0)
+		{
+		if(overrides.count() > 0)
+			{
+			IMapEntry e = overrides.entryAt(i);
+			if(e != null)
+				return e.val();
+			}
+		return read(i);
+		}
+	throw new IndexOutOfBoundsException();
+}
+
+public int count(){
+	return baseCnt + tail.count();
+}
+
+public MappedVector cons(Object val){
+	return new MappedVector(meta(), segments, segmentElems, type, width, decode, baseCnt, overrides,
+	                        tail.cons(coerce(val)));
+}
+
+public MappedVector assocN(int i, Object val){
+	if(i >= 0 && i < baseCnt)
+		return new MappedVector(meta(), segments, segmentElems, type, width, decode, baseCnt,
+		                        overrides.assoc(i, coerce(val)), tail);
+	if(i >= baseCnt && i <= count())
+		return new MappedVector(meta(), segments, segmentElems, type, width, decode, baseCnt, overrides,
+		                        tail.assocN(i - baseCnt, coerce(val)));
+	throw new IndexOutOfBoundsException();
+}
+
+public MappedVector pop(){
+	if(tail.count() > 0)
+		return new MappedVector(meta(), segments, segmentElems, type, width, decode, baseCnt, overrides,
+		                        tail.pop());
+	if(baseCnt == 0)
+		throw new IllegalStateException("Can't pop empty vector");
+	return new MappedVector(meta(), segments, segmentElems, type, width, decode, baseCnt - 1,
+	                        overrides.without(baseCnt - 1), tail);
+}
+
+public IPersistentCollection empty(){
+	return PersistentVector.EMPTY.withMeta(meta());
+}
+
+public MappedVector withMeta(IPersistentMap meta){
+	if(meta() == meta)
+		return this;
+	return new MappedVector(meta, segments, segmentElems, type, width, decode, baseCnt, overrides, tail);
+}
+
+public IPersistentMap meta(){
+	return _meta;
+}
+
+public Object reduce(IFn f){
+	int cnt = count();
+	if(cnt == 0)
+		return f.invoke();
+	Object init = nth(0);
+	for(int i = 1; i < cnt; i++)
+		{
+		init = f.invoke(init, nth(i));
+		if(RT.isReduced(init))
+			return ((IDeref)init).deref();
+		}
+	return init;
+}
+
+public Object reduce(IFn f, Object init){
+	if(overrides.count() > 0)
+		{
+		for(int i = 0; i < baseCnt; i++)
+			{
+			init = f.invoke(init, nth(i));
+			if(RT.isReduced(init))
+				return ((IDeref)init).deref();
+			}
+		}
+	else
+		{
+		for(int s = 0; s * segmentElems < baseCnt; s++)
+			{
+			init = reduceSegment(f, init, s, Math.min(segmentElems, baseCnt - s * segmentElems));
+			if(RT.isReduced(init))
+				return ((IDeref)init).deref();
+			}
+		}
+	return tail.reduce(f, init);
+}
+
+private Object reduceSegment(IFn f, Object init, int s, int n){
+	ByteBuffer b = segments[s];
+	if(type == LONG && f instanceof IFn.OLO)
+		{
+		IFn.OLO pf = (IFn.OLO) f;
+		for(int j = 0; j < n; j++)
+			{
+			init = pf.invokePrim(init, b.getLong(j * 8));
+			if(RT.isReduced(init))
+				return init;
+			}
+		}
+	else if(type == DOUBLE && f instanceof IFn.ODO)
+		{
+		IFn.ODO pf = (IFn.ODO) f;
+		for(int j = 0; j < n; j++)
+			{
+			init = pf.invokePrim(init, b.getDouble(j * 8));
+			if(RT.isReduced(init))
+				return init;
+			}
+		}
+	else
+		{
+		int base = segmentElems * s;
+		for(int j = 0; j < n; j++)
+			{
+			init = f.invoke(init, read(base + j));
+			if(RT.isReduced(init))
+				return init;
+			}
+		}
+	return init;
+}
+
+public Object kvreduce(IFn f, Object init){
+	int cnt = count();
+	for(int i = 0; i < cnt; i++)
+		{
+		init = f.invoke(init, i, nth(i));
+		if(RT.isReduced(init))
+			return ((IDeref)init).deref();
+		}
+	return init;
+}
+}
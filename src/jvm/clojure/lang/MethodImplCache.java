@@ -12,6 +12,8 @@
 
 package clojure.lang;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Map;
 
 public final class MethodImplCache{
@@ -31,10 +33,11 @@ public final Symbol sym;
 public final Keyword methodk;
 public final int shift;
 public final int mask;
-public final Object[] table;    //[class, entry. class, entry ...]
-public final Map map;
+public final Object[] table;    //[class, entry. class, entry ...], open addressed, probed linearly from ((hash >> shift) & mask) << 1
+public final Map map;           //always null, kept for code compiled against the old map-backed cache
 
-Entry mre = null;
+//stands in the table for the nil receiver's null class, which would otherwise read as an empty slot
+private static final Object NIL_KEY = new Object();
 
 public MethodImplCache(Symbol sym,IPersistentMap protocol, Keyword methodk){
 	this(sym, protocol, methodk, 0, 0, RT.EMPTY_ARRAY);
@@ -51,45 +54,74 @@ public MethodImplCache(Symbol sym, IPersistentMap protocol, Keyword methodk, int
 }
 
 public MethodImplCache(Symbol sym, IPersistentMap protocol, Keyword methodk, Map map){
-    this.sym = sym;
-    this.protocol = protocol;
-    this.methodk = methodk;
-    this.shift = 0;
-    this.mask = 0;
-    this.table = null;
-    this.map = map;
+    this(sym, protocol, methodk, buildTable(map.values()));
 }
 
-public IFn fnFor(Class c){
-    return (IFn) implFor(c);
+private MethodImplCache(Symbol sym, IPersistentMap protocol, Keyword methodk, Object[] table){
+    this(sym, protocol, methodk, 0, (table.length >> 1) - 1, table);
 }
 
-public Object implFor(Class c){
-	Entry last = mre;
-	if(last != null && last.c == c)
-		return last.fn;
-    return findImplFor(c);
+//capacity is a power of 2 at least twice the number of entries, so probes stay short
+static Object[] buildTable(Collection<Entry> entries){
+    int cap = 4;
+    while(cap < 2 * entries.size())
+        cap <<= 1;
+    Object[] t = new Object[2 * cap];
+    for(Entry e : entries)
+        {
+        int i = (Util.hash(e.c) & (cap - 1)) << 1;
+        while(t[i] != null)
+            i = (i + 2) & (t.length - 1);
+        t[i] = keyFor(e.c);
+        t[i + 1] = e;
+        }
+    return t;
 }
 
-Object findImplFor(Class c){
-    if (map != null)
+/**
+ * Returns a cache that also maps c to fn, replacing any entry for c. This
+ * one is unchanged, so callers can publish the result without locking.
+ */
+public MethodImplCache assoc(Class c, Object fn){
+    Object k = keyFor(c);
+    ArrayList<Entry> entries = new ArrayList<Entry>();
+    for(int i = 0; i < table.length; i += 2)
         {
-        Entry e = (Entry) map.get(c);
-        mre = e;
-        return  e != null ? e.fn : null;
+        if(table[i] != null && table[i] != k && table[i + 1] != null)
+            entries.add((Entry) table[i + 1]);
         }
-    else
+    entries.add(new Entry(c, fn));
+    return new MethodImplCache(sym, protocol, methodk, buildTable(entries));
+}
+
+private static Object keyFor(Class c){
+    return c == null ? NIL_KEY : c;
+}
+
+public IFn fnFor(Class c){
+    return (IFn) implFor(c);
+}
+
+//no allocation and no writes, so any number of receiver classes can share the cache
+public Object implFor(Class c){
+    Object[] t = table;
+    int len = t.length;
+    if(len == 0)
+        return null;
+    Object key = keyFor(c);
+    int idx = ((Util.hash(c) >> shift) & mask) << 1;
+    for(int probes = 0; probes < len; probes += 2)
         {
-        int idx = ((Util.hash(c) >> shift) & mask) << 1;
-        if(idx < table.length && table[idx] == c)
+        Object k = t[idx];
+        if(k == key)
             {
-            Entry e = ((Entry) table[idx + 1]);
-            mre = e;
-            return  e != null ? e.fn : null;
+            Entry e = (Entry) t[idx + 1];
+            return e != null ? e.fn : null;
             }
-        return null;
+        if(k == null)
+            return null;
+        idx = (idx + 2) & (len - 1);
         }
+    return null;
 }
-
-
 }
@@ -13,141 +13,140 @@
 package clojure.lang;
 
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 public class MultiFn extends AFn{
 final public IFn dispatchFn;
 final public Object defaultDispatchVal;
 final public IRef hierarchy;
 final String name;
-final ReentrantReadWriteLock rw;
-volatile IPersistentMap methodTable;
-volatile IPersistentMap preferTable;
-volatile IPersistentMap methodCache;
-volatile Object cachedHierarchy;
+volatile State state;
+
+static final AtomicReferenceFieldUpdater<MultiFn, State> STATE =
+		AtomicReferenceFieldUpdater.newUpdater(MultiFn.class, State.class, "state");
 
 static final Var assoc = RT.var("clojure.core", "assoc");
 static final Var dissoc = RT.var("clojure.core", "dissoc");
 static final Var isa = RT.var("clojure.core", "isa?");
 static final Var parents = RT.var("clojure.core", "parents");
 
+//Everything dispatch depends on, replaced as a whole by CAS. methodCache maps
+//dispatch values to the methods found for them against the tables and
+//cachedHierarchy here, so a hit never locks and a miss is resolved once.
+static final class State{
+	final IPersistentMap methodTable;
+	final IPersistentMap preferTable;
+	final IPersistentMap methodCache;
+	final Object cachedHierarchy;
+
+	State(IPersistentMap methodTable, IPersistentMap preferTable, IPersistentMap methodCache, Object cachedHierarchy){
+		this.methodTable = methodTable;
+		this.preferTable = preferTable;
+		this.methodCache = methodCache;
+		this.cachedHierarchy = cachedHierarchy;
+	}
+
+	State reset(IPersistentMap methodTable, IPersistentMap preferTable, Object hierarchy){
+		return new State(methodTable, preferTable, methodTable, hierarchy);
+	}
+}
+
 public MultiFn(String name, IFn dispatchFn, Object defaultDispatchVal, IRef hierarchy) {
-	this.rw = new ReentrantReadWriteLock();
 	this.name = name;
 	this.dispatchFn = dispatchFn;
 	this.defaultDispatchVal = defaultDispatchVal;
-	this.methodTable = PersistentHashMap.EMPTY;
-	this.methodCache = getMethodTable();
-	this.preferTable = PersistentHashMap.EMPTY;
     this.hierarchy = hierarchy;
-	cachedHierarchy = null;
+	this.state = new State(PersistentHashMap.EMPTY, PersistentHashMap.EMPTY, PersistentHashMap.EMPTY, null);
 }
 
 public MultiFn reset(){
-	rw.writeLock().lock();
-	try{
-		methodTable = methodCache = preferTable = PersistentHashMap.EMPTY;
-		cachedHierarchy = null;
-		return this;
-	}
-	finally {
-		rw.writeLock().unlock();
-	}
+	state = new State(PersistentHashMap.EMPTY, PersistentHashMap.EMPTY, PersistentHashMap.EMPTY, null);
+	return this;
 }
 
 public MultiFn addMethod(Object dispatchVal, IFn method) {
-	rw.writeLock().lock();
-	try{
-		methodTable = getMethodTable().assoc(dispatchVal, method);
-		resetCache();
-		return this;
-	}
-	finally {
-		rw.writeLock().unlock();
-	}
+	for(; ;)
+		{
+		State s = state;
+		if(STATE.compareAndSet(this, s, s.reset(s.methodTable.assoc(dispatchVal, method), s.preferTable,
+		                                         hierarchy.deref())))
+			return this;
+		}
 }
 
 public MultiFn removeMethod(Object dispatchVal) {
-	rw.writeLock().lock();
-	try
+	for(; ;)
 		{
-		methodTable = getMethodTable().without(dispatchVal);
-		resetCache();
-		return this;
-		}
-	finally
-		{
-		rw.writeLock().unlock();
+		State s = state;
+		if(STATE.compareAndSet(this, s, s.reset(s.methodTable.without(dispatchVal), s.preferTable,
+		                                         hierarchy.deref())))
+			return this;
 		}
 }
 
 public MultiFn preferMethod(Object dispatchValX, Object dispatchValY) {
-	rw.writeLock().lock();
-	try
+	for(; ;)
 		{
-		if(prefers(dispatchValY, dispatchValX))
+		State s = state;
+		IPersistentMap pt = s.preferTable;
+		if(prefers(pt, dispatchValY, dispatchValX))
 			throw new IllegalStateException(
 					String.format("Preference conflict in multimethod '%s': %s is already preferred to %s",
 					              name, dispatchValY, dispatchValX));
-		preferTable = getPreferTable().assoc(dispatchValX, RT.conj((IPersistentCollection) RT.get(getPreferTable(),
-		                                                                                     dispatchValX,
-		                                                                                     PersistentHashSet.EMPTY),
-		                                                      dispatchValY));
-		resetCache();
-		return this;
-		}
-	finally
-		{
-		rw.writeLock().unlock();
+		pt = pt.assoc(dispatchValX, RT.conj((IPersistentCollection) RT.get(pt, dispatchValX, PersistentHashSet.EMPTY),
+		                                    dispatchValY));
+		if(STATE.compareAndSet(this, s, s.reset(s.methodTable, pt, hierarchy.deref())))
+			return this;
 		}
 }
 
-private boolean prefers(Object x, Object y) {
-	IPersistentSet xprefs = (IPersistentSet) getPreferTable().valAt(x);
+private static boolean prefers(IPersistentMap preferTable, Object x, Object y) {
+	IPersistentSet xprefs = (IPersistentSet) preferTable.valAt(x);
 	if(xprefs != null && xprefs.contains(y))
 		return true;
 	for(ISeq ps = RT.seq(parents.invoke(y)); ps != null; ps = ps.next())
 		{
-		if(prefers(x, ps.first()))
+		if(prefers(preferTable, x, ps.first()))
 			return true;
 		}
 	for(ISeq ps = RT.seq(parents.invoke(x)); ps != null; ps = ps.next())
 		{
-		if(prefers(ps.first(), y))
+		if(prefers(preferTable, ps.first(), y))
 			return true;
 		}
 	return false;
 }
 
-private boolean isA(Object x, Object y) {
-    return RT.booleanCast(isa.invoke(hierarchy.deref(), x, y));
+private static boolean isA(Object h, Object x, Object y) {
+    return RT.booleanCast(isa.invoke(h, x, y));
 }
 
-private boolean dominates(Object x, Object y) {
-	return prefers(x, y) || isA(x, y);
+private static boolean dominates(State s, Object x, Object y) {
+	return prefers(s.preferTable, x, y) || isA(s.cachedHierarchy, x, y);
 }
 
-private IPersistentMap resetCache() {
-	rw.writeLock().lock();
-	try
-		{
-		methodCache = getMethodTable();
-		cachedHierarchy = hierarchy.deref();
-		return methodCache;
-		}
-	finally
+//the current state, after dropping the cache if the hierarchy has changed under it
+private State currentState(){
+	for(; ;)
 		{
-		rw.writeLock().unlock();
+		State s = state;
+		Object h = hierarchy.deref();
+		if(s.cachedHierarchy == h)
+			return s;
+		State fresh = s.reset(s.methodTable, s.preferTable, h);
+		if(STATE.compareAndSet(this, s, fresh))
+			return fresh;
 		}
 }
 
  public IFn getMethod(Object dispatchVal) {
-	if(cachedHierarchy != hierarchy.deref())
-		resetCache();
-	IFn targetFn = (IFn) methodCache.valAt(dispatchVal);
+	State s = state;
+	if(s.cachedHierarchy != hierarchy.deref())
+		s = currentState();
+	IFn targetFn = (IFn) s.methodCache.valAt(dispatchVal);
 	if(targetFn != null)
 		return targetFn;
-	return findAndCacheBestMethod(dispatchVal);
+	return findAndCacheBestMethod(s, dispatchVal);
 }
 
 private IFn getFn(Object dispatchVal) {
@@ -158,66 +157,42 @@ private IFn getFn(Object dispatchVal) {
 	return targetFn;
 }
 
-private IFn findAndCacheBestMethod(Object dispatchVal) {
-	rw.readLock().lock();
-	Object bestValue;
-	IPersistentMap mt = methodTable;
-	IPersistentMap pt = preferTable;
-	Object ch = cachedHierarchy;
-	try
+private Object findBestMethod(State s, Object dispatchVal) {
+	Map.Entry bestEntry = null;
+	for(Object o : s.methodTable)
 		{
-		Map.Entry bestEntry = null;
-		for(Object o : getMethodTable())
-			{
-			Map.Entry e = (Map.Entry) o;
-			if(isA(dispatchVal, e.getKey()))
-				{
-				if(bestEntry == null || dominates(e.getKey(), bestEntry.getKey()))
-					bestEntry = e;
-				if(!dominates(bestEntry.getKey(), e.getKey()))
-					throw new IllegalArgumentException(
-							String.format(
-									"Multiple methods in multimethod '%s' match dispatch value: %s -> %s and %s, and neither is preferred",
-									name, dispatchVal, e.getKey(), bestEntry.getKey()));
-				}
-			}
-		if(bestEntry == null)
+		Map.Entry e = (Map.Entry) o;
+		if(isA(s.cachedHierarchy, dispatchVal, e.getKey()))
 			{
-			bestValue = methodTable.valAt(defaultDispatchVal);
-		        if(bestValue == null)
-				return null;
+			if(bestEntry == null || dominates(s, e.getKey(), bestEntry.getKey()))
+				bestEntry = e;
+			if(!dominates(s, bestEntry.getKey(), e.getKey()))
+				throw new IllegalArgumentException(
+						String.format(
+								"Multiple methods in multimethod '%s' match dispatch value: %s -> %s and %s, and neither is preferred",
+								name, dispatchVal, e.getKey(), bestEntry.getKey()));
 			}
-		else
-			bestValue = bestEntry.getValue();
-		}
-	finally
-		{
-		rw.readLock().unlock();
 		}
+	if(bestEntry == null)
+		return s.methodTable.valAt(defaultDispatchVal);
+	return bestEntry.getValue();
+}
 
-
-	//ensure basis has stayed stable throughout, else redo
-	rw.writeLock().lock();
-	try
+private IFn findAndCacheBestMethod(State s, Object dispatchVal) {
+	Object bestValue = findBestMethod(s, dispatchVal);
+	if(bestValue == null)
+		return null;
+	//place in cache, unless the basis has changed in the meantime, then redo against the new one
+	for(; ;)
 		{
-		if( mt == methodTable &&
-		    pt == preferTable &&
-		    ch == cachedHierarchy &&
-			cachedHierarchy == hierarchy.deref())
-			{
-			//place in cache
-			methodCache = methodCache.assoc(dispatchVal, bestValue);
+		if(STATE.compareAndSet(this, s, new State(s.methodTable, s.preferTable,
+		                                          s.methodCache.assoc(dispatchVal, bestValue), s.cachedHierarchy)))
 			return (IFn) bestValue;
-			}
-		else
-			{
-			resetCache();
-			return findAndCacheBestMethod(dispatchVal);
-			}
-		}
-	finally
-		{
-		rw.writeLock().unlock();
+		State now = currentState();
+		if(now.methodTable != s.methodTable || now.preferTable != s.preferTable
+		   || now.cachedHierarchy != s.cachedHierarchy)
+			return findAndCacheBestMethod(now, dispatchVal);
+		s = now;
 		}
 }
 
@@ -577,10 +552,10 @@ public Object invoke(Object arg1, Object arg2, Object arg3, Object arg4, Object
 }
 
     public IPersistentMap getMethodTable() {
-        return methodTable;
+        return state.methodTable;
     }
 
     public IPersistentMap getPreferTable() {
-        return preferTable;
+        return state.preferTable;
     }
 }
@@ -123,6 +123,18 @@ public static int hashUnordered(Iterable xs){
 	return mixCollHash(hash, n);
 }
 
+public static int hashOrdered(Object[] xs, int start, int end){
+	int hash = 1;
+	for(int i = start; i < end; i++)
+		hash = 31 * hash + Util.hasheq(xs[i]);
+	return mixCollHash(hash, end - start);
+}
+
+// the hash of the vector [key val], which is the hash of a map entry
+public static int hashEntry(Object key, Object val){
+	return mixCollHash(31 * (31 + Util.hasheq(key)) + Util.hasheq(val), 2);
+}
+
 private static int mixK1(int k1){
 	k1 *= C1;
 	k1 = Integer.rotateLeft(k1, 15);
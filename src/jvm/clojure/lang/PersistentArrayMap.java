@@ -15,6 +15,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
 
 /**
  * <p>Simple implementation of persistent map on an array</p>
@@ -163,6 +164,18 @@ public boolean containsKey(Object key){
 	return indexOf(key) >= 0;
 }
 
+public int hasheq(){
+	int cached = this._hasheq;
+	if(cached == 0)
+		{
+		int hash = 0;
+		for(int i = 0; i < array.length; i += 2)
+			hash += Murmur3.hashEntry(array[i], array[i + 1]);
+		this._hasheq = cached = Murmur3.mixCollHash(hash, array.length / 2);
+		}
+	return cached;
+}
+
 public IMapEntry entryAt(Object key){
 	int i = indexOf(key);
 	if(i >= 0)
@@ -381,6 +394,41 @@ public Object kvreduce(IFn f, Object init){
     return init;
 }
 
+public Object fold(long n, final IFn combinef, final IFn reducef,
+                   IFn fjinvoke, final IFn fjtask, final IFn fjfork, final IFn fjjoin){
+	final long leaf = Math.max(n, 1);
+	Callable top = new Callable(){
+		public Object call() throws Exception{
+			return foldEntries(array, 0, array.length / 2, leaf, combinef, reducef, fjtask, fjfork, fjjoin);
+		}
+	};
+	return fjinvoke.invoke(top);
+}
+
+static Object foldEntries(final Object[] array, int from, final int to, final long n,
+                          final IFn combinef, final IFn reducef,
+                          final IFn fjtask, final IFn fjfork, final IFn fjjoin){
+	if(to - from <= n)
+		{
+		Object ret = combinef.invoke();
+		for(int i = from; i < to; i++)
+			{
+			ret = reducef.invoke(ret, array[2 * i], array[2 * i + 1]);
+			if(RT.isReduced(ret))
+				return ((IDeref)ret).deref();
+			}
+		return ret;
+		}
+	final int mid = (from + to) >>> 1;
+	Object forked = fjfork.invoke(fjtask.invoke(new Callable(){
+		public Object call() throws Exception{
+			return foldEntries(array, mid, to, n, combinef, reducef, fjtask, fjfork, fjjoin);
+		}
+	}));
+	return combinef.invoke(foldEntries(array, from, mid, n, combinef, reducef, fjtask, fjfork, fjjoin),
+	                       fjjoin.invoke(forked));
+}
+
 public ITransientMap asTransient(){
 	return new TransientArrayMap(array);
 }
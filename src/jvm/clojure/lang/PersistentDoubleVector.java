@@ -0,0 +1,273 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A persistent vector of primitive doubles. Same 32-way trie as PersistentVector,
+ * but leaves are double[] so elements are stored unboxed. nth/seq/iterator box on
+ * the way out, nthDouble and reduce with an IFn.ODO do not.
+ */
+public class PersistentDoubleVector extends APrimitiveVector<double[], PersistentDoubleVector>{
+
+public final static PersistentDoubleVector EMPTY = new PersistentDoubleVector(0, 5, EMPTY_NODE, new double[0]);
+
+static public PersistentDoubleVector create(IReduceInit items) {
+    TransientVector ret = EMPTY.asTransient();
+    items.reduce(TRANSIENT_VECTOR_CONJ, ret);
+    return ret.persistent();
+}
+
+static public PersistentDoubleVector create(ISeq items){
+    TransientVector ret = EMPTY.asTransient();
+    for(; items != null; items = items.next())
+        ret = ret.conj(items.first());
+    return ret.persistent();
+}
+
+static public PersistentDoubleVector create(Iterable items){
+    Iterator iter = items.iterator();
+    TransientVector ret = EMPTY.asTransient();
+    while(iter.hasNext())
+        ret = ret.conj(iter.next());
+    return ret.persistent();
+}
+
+static public PersistentDoubleVector create(double... items){
+    if(items.length <= 32)
+        return new PersistentDoubleVector(items.length, 5, EMPTY_NODE, items.clone());
+    TransientVector ret = EMPTY.asTransient();
+    for(double item : items)
+        ret = ret.conjDouble(item);
+    return ret.persistent();
+}
+
+PersistentDoubleVector(int cnt, int shift, Node root, double[] tail){
+	super(null, cnt, shift, root, tail);
+}
+
+PersistentDoubleVector(IPersistentMap meta, int cnt, int shift, Node root, double[] tail){
+	super(meta, cnt, shift, root, tail);
+}
+
+int leafLength(double[] leaf){
+	return leaf.length;
+}
+
+double[] copyOf(double[] leaf, int n){
+	return Arrays.copyOf(leaf, n);
+}
+
+Object boxed(double[] leaf, int i){
+	return leaf[i];
+}
+
+IChunk chunk(double[] leaf, int off, int end){
+	return new DoubleChunk(leaf, off, end);
+}
+
+PersistentDoubleVector create(IPersistentMap meta, int cnt, int shift, Node root, double[] tail){
+	return new PersistentDoubleVector(meta, cnt, shift, root, tail);
+}
+
+public TransientVector asTransient(){
+	return new TransientVector(this);
+}
+
+public double nthDouble(int i){
+	return arrayFor(i)[i & 0x01f];
+}
+
+public Object nth(int i){
+	return arrayFor(i)[i & 0x01f];
+}
+
+public PersistentDoubleVector assocN(int i, Object val){
+	return assocN(i, RT.doubleCast(val));
+}
+
+public PersistentDoubleVector assocN(int i, double val){
+	if(i >= 0 && i < cnt)
+		{
+		double[] leaf = arrayFor(i).clone();
+		leaf[i & 0x01f] = val;
+		return withLeaf(i, leaf);
+		}
+	if(i == cnt)
+		return cons(val);
+	throw new IndexOutOfBoundsException();
+}
+
+public PersistentDoubleVector cons(Object val){
+	return cons(RT.doubleCast(val));
+}
+
+public PersistentDoubleVector cons(double val){
+	double[] newTail = (cnt - tailoff() < 32) ? Arrays.copyOf(tail, tail.length + 1) : new double[1];
+	newTail[newTail.length - 1] = val;
+	return conjTail(newTail);
+}
+
+public Object reduce(IFn f){
+    if(cnt == 0)
+        return f.invoke();
+    Object init = arrayFor(0)[0];
+    if(cnt == 1)
+        return init;
+    return reduceFrom(f, init, 1);
+}
+
+public Object reduce(IFn f, Object init){
+    return reduceFrom(f, init, 0);
+}
+
+private Object reduceFrom(IFn f, Object init, int start){
+    int step = 0;
+    for(int i=start - (start & 0x01f);i<cnt;i+=step){
+        double[] array = arrayFor(i);
+        int j = (i < start) ? (start & 0x01f) : 0;
+        if(f instanceof IFn.ODO)
+            {
+            IFn.ODO pf = (IFn.ODO) f;
+            for(;j<array.length;++j){
+                init = pf.invokePrim(init,array[j]);
+                if(RT.isReduced(init))
+                    return ((IDeref)init).deref();
+                }
+            }
+        else
+            {
+            for(;j<array.length;++j){
+                init = f.invoke(init,array[j]);
+                if(RT.isReduced(init))
+                    return ((IDeref)init).deref();
+                }
+            }
+        step = array.length;
+    }
+    return init;
+}
+
+static public final class DoubleChunk implements IChunk, Serializable{
+
+	final double[] array;
+	final int off;
+	final int end;
+
+	public DoubleChunk(double[] array, int off, int end){
+		this.array = array;
+		this.off = off;
+		this.end = end;
+	}
+
+	public double nthDouble(int i){
+		return array[off + i];
+	}
+
+	public Object nth(int i){
+		return array[off + i];
+	}
+
+	public Object nth(int i, Object notFound){
+		if(i >= 0 && i < count())
+			return nth(i);
+		return notFound;
+	}
+
+	public int count(){
+		return end - off;
+	}
+
+	public IChunk dropFirst(){
+		if(off==end)
+			throw new IllegalStateException("dropFirst of empty chunk");
+		return new DoubleChunk(array, off + 1, end);
+	}
+
+	public Object reduce(IFn f, Object start) {
+		Object ret = start;
+		if(f instanceof IFn.ODO)
+			{
+			IFn.ODO pf = (IFn.ODO) f;
+			for(int x = off; x < end; x++)
+				{
+				ret = pf.invokePrim(ret, array[x]);
+				if(RT.isReduced(ret))
+					return ret;
+				}
+			}
+		else
+			{
+			for(int x = off; x < end; x++)
+				{
+				ret = f.invoke(ret, array[x]);
+				if(RT.isReduced(ret))
+					return ret;
+				}
+			}
+		return ret;
+	}
+}
+
+public PersistentDoubleVector empty(){
+	return EMPTY.withMeta(meta());
+}
+
+static final class TransientVector extends Transient<double[], PersistentDoubleVector>{
+
+	TransientVector(PersistentDoubleVector v){
+		super(v, EMPTY);
+	}
+
+	public TransientVector conj(Object val){
+		return conjDouble(RT.doubleCast(val));
+	}
+
+	public TransientVector conjDouble(double val){
+		ensureEditable();
+		//room in tail?
+		if(cnt - tailoff() < 32)
+			{
+			tail[cnt & 0x01f] = val;
+			++cnt;
+			return this;
+			}
+		double[] newTail = new double[32];
+		newTail[0] = val;
+		conjTail(newTail);
+		return this;
+	}
+
+	public double nthDouble(int i){
+		ensureEditable();
+		return arrayFor(i)[i & 0x01f];
+	}
+
+	public Object nth(int i){
+		return nthDouble(i);
+	}
+
+	public TransientVector assocN(int i, Object val){
+		return assocN(i, RT.doubleCast(val));
+	}
+
+	public TransientVector assocN(int i, double val){
+		ensureEditable();
+		if(i == cnt)
+			return conjDouble(val);
+		editableArrayFor(i)[i & 0x01f] = val;
+		return this;
+	}
+}
+}
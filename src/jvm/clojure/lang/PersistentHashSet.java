@@ -109,6 +109,20 @@ public PersistentHashSet withMeta(IPersistentMap meta){
 	return new PersistentHashSet(meta, impl);
 }
 
+public Object fold(long n, IFn combinef, final IFn reducef,
+                   IFn fjinvoke, IFn fjtask, IFn fjfork, IFn fjjoin){
+	IFn keyf = new AFn(){
+		public Object invoke(Object ret, Object key, Object val){
+			return reducef.invoke(ret, key);
+		}
+	};
+	if(impl instanceof PersistentHashMap)
+		return ((PersistentHashMap) impl).fold(n, combinef, keyf, fjinvoke, fjtask, fjfork, fjjoin);
+	if(impl instanceof PersistentArrayMap)
+		return ((PersistentArrayMap) impl).fold(n, combinef, keyf, fjinvoke, fjtask, fjfork, fjjoin);
+	return ((IKVReduce) impl).kvreduce(keyf, combinef.invoke());
+}
+
 public ITransientCollection asTransient() {
     return new TransientHashSet(((IEditableMap) impl).asTransient());
 }
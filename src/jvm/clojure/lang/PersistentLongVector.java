@@ -0,0 +1,273 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A persistent vector of primitive longs. Same 32-way trie as PersistentVector,
+ * but leaves are long[] so elements are stored unboxed. nth/seq/iterator box on
+ * the way out, nthLong and reduce with an IFn.OLO do not.
+ */
+public class PersistentLongVector extends APrimitiveVector<long[], PersistentLongVector>{
+
+public final static PersistentLongVector EMPTY = new PersistentLongVector(0, 5, EMPTY_NODE, new long[0]);
+
+static public PersistentLongVector create(IReduceInit items) {
+    TransientVector ret = EMPTY.asTransient();
+    items.reduce(TRANSIENT_VECTOR_CONJ, ret);
+    return ret.persistent();
+}
+
+static public PersistentLongVector create(ISeq items){
+    TransientVector ret = EMPTY.asTransient();
+    for(; items != null; items = items.next())
+        ret = ret.conj(items.first());
+    return ret.persistent();
+}
+
+static public PersistentLongVector create(Iterable items){
+    Iterator iter = items.iterator();
+    TransientVector ret = EMPTY.asTransient();
+    while(iter.hasNext())
+        ret = ret.conj(iter.next());
+    return ret.persistent();
+}
+
+static public PersistentLongVector create(long... items){
+    if(items.length <= 32)
+        return new PersistentLongVector(items.length, 5, EMPTY_NODE, items.clone());
+    TransientVector ret = EMPTY.asTransient();
+    for(long item : items)
+        ret = ret.conjLong(item);
+    return ret.persistent();
+}
+
+PersistentLongVector(int cnt, int shift, Node root, long[] tail){
+	super(null, cnt, shift, root, tail);
+}
+
+PersistentLongVector(IPersistentMap meta, int cnt, int shift, Node root, long[] tail){
+	super(meta, cnt, shift, root, tail);
+}
+
+int leafLength(long[] leaf){
+	return leaf.length;
+}
+
+long[] copyOf(long[] leaf, int n){
+	return Arrays.copyOf(leaf, n);
+}
+
+Object boxed(long[] leaf, int i){
+	return leaf[i];
+}
+
+IChunk chunk(long[] leaf, int off, int end){
+	return new LongChunk(leaf, off, end);
+}
+
+PersistentLongVector create(IPersistentMap meta, int cnt, int shift, Node root, long[] tail){
+	return new PersistentLongVector(meta, cnt, shift, root, tail);
+}
+
+public TransientVector asTransient(){
+	return new TransientVector(this);
+}
+
+public long nthLong(int i){
+	return arrayFor(i)[i & 0x01f];
+}
+
+public Object nth(int i){
+	return arrayFor(i)[i & 0x01f];
+}
+
+public PersistentLongVector assocN(int i, Object val){
+	return assocN(i, RT.longCast(val));
+}
+
+public PersistentLongVector assocN(int i, long val){
+	if(i >= 0 && i < cnt)
+		{
+		long[] leaf = arrayFor(i).clone();
+		leaf[i & 0x01f] = val;
+		return withLeaf(i, leaf);
+		}
+	if(i == cnt)
+		return cons(val);
+	throw new IndexOutOfBoundsException();
+}
+
+public PersistentLongVector cons(Object val){
+	return cons(RT.longCast(val));
+}
+
+public PersistentLongVector cons(long val){
+	long[] newTail = (cnt - tailoff() < 32) ? Arrays.copyOf(tail, tail.length + 1) : new long[1];
+	newTail[newTail.length - 1] = val;
+	return conjTail(newTail);
+}
+
+public Object reduce(IFn f){
+    if(cnt == 0)
+        return f.invoke();
+    Object init = arrayFor(0)[0];
+    if(cnt == 1)
+        return init;
+    return reduceFrom(f, init, 1);
+}
+
+public Object reduce(IFn f, Object init){
+    return reduceFrom(f, init, 0);
+}
+
+private Object reduceFrom(IFn f, Object init, int start){
+    int step = 0;
+    for(int i=start - (start & 0x01f);i<cnt;i+=step){
+        long[] array = arrayFor(i);
+        int j = (i < start) ? (start & 0x01f) : 0;
+        if(f instanceof IFn.OLO)
+            {
+            IFn.OLO pf = (IFn.OLO) f;
+            for(;j<array.length;++j){
+                init = pf.invokePrim(init,array[j]);
+                if(RT.isReduced(init))
+                    return ((IDeref)init).deref();
+                }
+            }
+        else
+            {
+            for(;j<array.length;++j){
+                init = f.invoke(init,array[j]);
+                if(RT.isReduced(init))
+                    return ((IDeref)init).deref();
+                }
+            }
+        step = array.length;
+    }
+    return init;
+}
+
+static public final class LongChunk implements IChunk, Serializable{
+
+	final long[] array;
+	final int off;
+	final int end;
+
+	public LongChunk(long[] array, int off, int end){
+		this.array = array;
+		this.off = off;
+		this.end = end;
+	}
+
+	public long nthLong(int i){
+		return array[off + i];
+	}
+
+	public Object nth(int i){
+		return array[off + i];
+	}
+
+	public Object nth(int i, Object notFound){
+		if(i >= 0 && i < count())
+			return nth(i);
+		return notFound;
+	}
+
+	public int count(){
+		return end - off;
+	}
+
+	public IChunk dropFirst(){
+		if(off==end)
+			throw new IllegalStateException("dropFirst of empty chunk");
+		return new LongChunk(array, off + 1, end);
+	}
+
+	public Object reduce(IFn f, Object start) {
+		Object ret = start;
+		if(f instanceof IFn.OLO)
+			{
+			IFn.OLO pf = (IFn.OLO) f;
+			for(int x = off; x < end; x++)
+				{
+				ret = pf.invokePrim(ret, array[x]);
+				if(RT.isReduced(ret))
+					return ret;
+				}
+			}
+		else
+			{
+			for(int x = off; x < end; x++)
+				{
+				ret = f.invoke(ret, array[x]);
+				if(RT.isReduced(ret))
+					return ret;
+				}
+			}
+		return ret;
+	}
+}
+
+public PersistentLongVector empty(){
+	return EMPTY.withMeta(meta());
+}
+
+static final class TransientVector extends Transient<long[], PersistentLongVector>{
+
+	TransientVector(PersistentLongVector v){
+		super(v, EMPTY);
+	}
+
+	public TransientVector conj(Object val){
+		return conjLong(RT.longCast(val));
+	}
+
+	public TransientVector conjLong(long val){
+		ensureEditable();
+		//room in tail?
+		if(cnt - tailoff() < 32)
+			{
+			tail[cnt & 0x01f] = val;
+			++cnt;
+			return this;
+			}
+		long[] newTail = new long[32];
+		newTail[0] = val;
+		conjTail(newTail);
+		return this;
+	}
+
+	public long nthLong(int i){
+		ensureEditable();
+		return arrayFor(i)[i & 0x01f];
+	}
+
+	public Object nth(int i){
+		return nthLong(i);
+	}
+
+	public TransientVector assocN(int i, Object val){
+		return assocN(i, RT.longCast(val));
+	}
+
+	public TransientVector assocN(int i, long val){
+		ensureEditable();
+		if(i == cnt)
+			return conjLong(val);
+		editableArrayFor(i)[i & 0x01f] = val;
+		return this;
+	}
+}
+}
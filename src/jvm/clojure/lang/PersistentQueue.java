@@ -22,7 +22,7 @@ import java.util.NoSuchElementException;
  * so no reversing or suspensions required for persistent use
  */
 
-public class PersistentQueue extends Obj implements IPersistentList, Collection, Counted, IHashEq{
+public class PersistentQueue extends Obj implements IPersistentList, Collection, Counted, IHashEq, IEditableCollection, IReduce{
 
 final public static PersistentQueue EMPTY = new PersistentQueue(null, 0, null, null);
 
@@ -143,7 +143,90 @@ public PersistentQueue withMeta(IPersistentMap meta){
 	return new PersistentQueue(meta, cnt, f, r);
 }
 
-static class Seq extends ASeq{
+public ITransientCollection asTransient(){
+	return new TransientQueue(this);
+}
+
+//reduces s a chunk at a time where it can, leaving a reduced value wrapped
+static Object reduceSeq(ISeq s, IFn f, Object init){
+	while(s != null)
+		{
+		if(s instanceof IChunkedSeq)
+			{
+			IChunkedSeq cs = (IChunkedSeq) s;
+			init = cs.chunkedFirst().reduce(f, init);
+			s = cs.chunkedNext();
+			}
+		else
+			{
+			init = f.invoke(init, s.first());
+			s = s.next();
+			}
+		if(RT.isReduced(init))
+			return init;
+		}
+	return init;
+}
+
+public Object reduce(IFn f){
+	if(this.f == null)
+		return f.invoke();
+	return reduceRear(f, reduceSeq(this.f.next(), f, this.f.first()));
+}
+
+public Object reduce(IFn f, Object init){
+	return reduceRear(f, reduceSeq(this.f, f, init));
+}
+
+private Object reduceRear(IFn f, Object ret){
+	if(RT.isReduced(ret))
+		return ((IDeref) ret).deref();
+	if(r != null)
+		return r.reduce(f, ret);
+	return ret;
+}
+
+static final class TransientQueue implements ITransientCollection, Counted{
+	volatile int cnt;
+	final ISeq f;
+	volatile ITransientCollection r;
+
+	TransientQueue(PersistentQueue q){
+		this.cnt = q.cnt;
+		this.f = q.f;
+		this.r = (q.r != null ? q.r : PersistentVector.EMPTY).asTransient();
+	}
+
+	void ensureEditable(){
+		if(r == null)
+			throw new IllegalAccessError("Transient used after persistent! call");
+	}
+
+	public int count(){
+		ensureEditable();
+		return cnt;
+	}
+
+	public TransientQueue conj(Object val){
+		ensureEditable();
+		r = r.conj(val);
+		++cnt;
+		return this;
+	}
+
+	public PersistentQueue persistent(){
+		ensureEditable();
+		PersistentVector rv = (PersistentVector) r.persistent();
+		r = null;
+		if(f == null)
+			return rv.count() == 0 ? EMPTY : new PersistentQueue(null, cnt, RT.seq(rv), null);
+		return new PersistentQueue(null, cnt, f, rv.count() == 0 ? null : rv);
+	}
+}
+
+//chunked where the front is, a front from cons onto an empty queue is a
+//chunk of one
+static class Seq extends ASeq implements IChunkedSeq{
 	final ISeq f;
 	final ISeq rseq;
 
@@ -175,6 +258,32 @@ static class Seq extends ASeq{
 		return new Seq(f1, r1);
 	}
 
+	public IChunk chunkedFirst(){
+		if(f instanceof IChunkedSeq)
+			return ((IChunkedSeq) f).chunkedFirst();
+		return new ArrayChunk(new Object[]{f.first()});
+	}
+
+	public ISeq chunkedNext(){
+		ISeq f1 = f instanceof IChunkedSeq ? ((IChunkedSeq) f).chunkedNext() : f.next();
+		ISeq r1 = rseq;
+		if(f1 == null)
+			{
+			if(rseq == null)
+				return null;
+			f1 = rseq;
+			r1 = null;
+			}
+		return new Seq(f1, r1);
+	}
+
+	public ISeq chunkedMore(){
+		ISeq s = chunkedNext();
+		if(s == null)
+			return PersistentList.EMPTY;
+		return s;
+	}
+
 	public int count(){
 		return RT.count(f) + RT.count(rseq);
 	}
@@ -0,0 +1,520 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A small map of keyword keys split into a Shape, the keys in order, shared
+ * by all the maps with those keys, and an array of their vals.
+ *
+ * <p>Shapes are interned weakly, and each remembers the shapes reached by
+ * assoc'ing a new key onto it. Lookup scans the keys of the shape, which unlike those
+ * of an array map are not interleaved with vals, for the index of the val.
+ * A map that gets a key that is not a keyword, or more keys than an array
+ * map holds, becomes an array map or hash map as an array map would.</p>
+ */
+public class PersistentShapeMap extends APersistentMap implements IObj, IEditableMap, IMapIterable, IKVReduce{
+
+//the most keys an array map holds
+static final int MAX_KEYS = PersistentArrayMap.HASHTABLE_THRESHOLD / 2;
+
+final Shape shape;
+final Object[] vals;
+final IPersistentMap _meta;
+
+public static final class Shape implements Serializable{
+	static final int MAX_TRANSITIONS = 16;
+	static final Object[] NO_TRANSITIONS = {};
+	//of emptied transients
+	static final Shape EMPTY = new Shape(new Object[0]);
+
+	//Shapes are interned weakly, as keywords are, so a shape no map uses any
+	//more goes away, and its keywords with it
+	static final class Ref extends WeakReference<Shape>{
+		final int hash;
+
+		Ref(Shape s, ReferenceQueue<Shape> q){
+			super(s, q);
+			this.hash = s.hash;
+		}
+
+		public int hashCode(){
+			return hash;
+		}
+
+		//cleared refs only equal themselves
+		public boolean equals(Object o){
+			if(this == o)
+				return true;
+			if(!(o instanceof Ref))
+				return false;
+			Shape s = get();
+			return s != null && s.equals(((Ref) o).get());
+		}
+	}
+
+	static final ReferenceQueue<Shape> rq = new ReferenceQueue<Shape>();
+	static final ConcurrentHashMap<Ref, Ref> table = new ConcurrentHashMap<Ref, Ref>();
+
+	final Object[] keys;
+	final int hash;
+	//refs to the shapes made by appending a key, which don't keep them alive
+	transient volatile Object[] transitions;
+
+	private Shape(Object[] keys){
+		this.keys = keys;
+		this.hash = Arrays.hashCode(keys);
+		this.transitions = NO_TRANSITIONS;
+	}
+
+	/**
+	 * Returns the shape of the maps with keys, distinct keywords, in order.
+	 * The array is captured, so do not modify it later.
+	 */
+	static public Shape intern(Object[] keys){
+		if(keys.length > MAX_KEYS)
+			throw new IllegalArgumentException("A shape has at most " + MAX_KEYS + " keys");
+		for(int k = 0; k < keys.length; k++)
+			{
+			if(!(keys[k] instanceof Keyword))
+				throw new IllegalArgumentException("Shape keys must be keywords: " + keys[k]);
+			for(int j = 0; j < k; j++)
+				if(keys[j] == keys[k])
+					throw new IllegalArgumentException("Duplicate key: " + keys[k]);
+			}
+		return internUnchecked(keys);
+	}
+
+	static Shape internUnchecked(Object[] keys){
+		Shape s = new Shape(keys);
+		Ref r = table.get(new Ref(s, null));
+		Shape ret = r == null ? null : r.get();
+		if(ret != null)
+			return ret;
+		expunge();
+		Ref mine = new Ref(s, rq);
+		r = table.putIfAbsent(mine, mine);
+		ret = r == null ? null : r.get();
+		return ret != null ? ret : s;
+	}
+
+	private static void expunge(){
+		for(Object r; (r = rq.poll()) != null; )
+			table.remove(r);
+	}
+
+	public int count(){
+		return keys.length;
+	}
+
+	public IPersistentVector keys(){
+		return LazilyPersistentVector.createOwning(keys.clone());
+	}
+
+	//keys is dense and shared, so scanning it beats hashing at this size
+	public int indexOf(Object key){
+		if(key instanceof Keyword)
+			{
+			Object[] keys = this.keys;
+			for(int i = 0; i < keys.length; i++)
+				if(keys[i] == key)
+					return i;
+			}
+		return -1;
+	}
+
+	//the shape with key appended, or null if key can't be added
+	Shape assoc(Object key){
+		if(!(key instanceof Keyword) || keys.length >= MAX_KEYS)
+			return null;
+		Object[] t = transitions;
+		int live = 0;
+		for(int i = 0; i < t.length; i++)
+			{
+			Shape s = ((Ref) t[i]).get();
+			if(s != null)
+				{
+				if(s.keys[keys.length] == key)
+					return s;
+				live++;
+				}
+			}
+		Object[] newKeys = Arrays.copyOf(keys, keys.length + 1);
+		newKeys[keys.length] = key;
+		Shape ret = internUnchecked(newKeys);
+		if(live < MAX_TRANSITIONS)
+			{
+			//drops the refs that were cleared
+			Object[] newT = new Object[live + 1];
+			int j = 0;
+			for(int i = 0; i < t.length && j < live; i++)
+				if(((Ref) t[i]).get() != null)
+					newT[j++] = t[i];
+			newT[j++] = new Ref(ret, null);
+			//a transition lost to a racing assoc is made again next time
+			transitions = j == newT.length ? newT : Arrays.copyOf(newT, j);
+			}
+		return ret;
+	}
+
+	//the shape without the key at index i
+	Shape without(int i){
+		Object[] newKeys = new Object[keys.length - 1];
+		System.arraycopy(keys, 0, newKeys, 0, i);
+		System.arraycopy(keys, i + 1, newKeys, i, newKeys.length - i);
+		return internUnchecked(newKeys);
+	}
+
+	public boolean equals(Object o){
+		return this == o || (o instanceof Shape && Arrays.equals(keys, ((Shape) o).keys));
+	}
+
+	public int hashCode(){
+		return hash;
+	}
+
+	private Object readResolve() throws ObjectStreamException{
+		return internUnchecked(keys);
+	}
+}
+
+/**
+ * Returns a map of the keys of shape to vals, which is captured, so do not
+ * modify it later.
+ */
+static public PersistentShapeMap create(Shape shape, Object[] vals){
+	if(vals.length != shape.keys.length)
+		throw new IllegalArgumentException("Expected " + shape.keys.length + " vals, got " + vals.length);
+	return new PersistentShapeMap(null, shape, vals);
+}
+
+/**
+ * Returns m as a shape map when it is not empty and has no more keys than
+ * an array map, all keywords, else returns m.
+ */
+static public IPersistentMap create(IPersistentMap m){
+	if(m instanceof PersistentShapeMap)
+		return m;
+	int n = m.count();
+	if(n == 0 || n > MAX_KEYS)
+		return m;
+	Object[] keys = new Object[n];
+	Object[] vals = new Object[n];
+	int k = 0;
+	for(ISeq s = m.seq(); s != null; s = s.next(), k++)
+		{
+		IMapEntry e = (IMapEntry) s.first();
+		if(!(e.key() instanceof Keyword))
+			return m;
+		keys[k] = e.key();
+		vals[k] = e.val();
+		}
+	IPersistentMap meta = m instanceof IMeta ? ((IMeta) m).meta() : null;
+	return new PersistentShapeMap(meta, Shape.internUnchecked(keys), vals);
+}
+
+PersistentShapeMap(IPersistentMap meta, Shape shape, Object[] vals){
+	this._meta = meta;
+	this.shape = shape;
+	this.vals = vals;
+}
+
+public Shape shape(){
+	return shape;
+}
+
+public PersistentShapeMap withMeta(IPersistentMap meta){
+	if(meta() == meta)
+		return this;
+	return new PersistentShapeMap(meta, shape, vals);
+}
+
+public IPersistentMap meta(){
+	return _meta;
+}
+
+public int count(){
+	return vals.length;
+}
+
+public boolean containsKey(Object key){
+	return shape.indexOf(key) >= 0;
+}
+
+public int hasheq(){
+	int cached = this._hasheq;
+	if(cached == 0)
+		{
+		Object[] keys = shape.keys;
+		int hash = 0;
+		for(int i = 0; i < vals.length; i++)
+			hash += Murmur3.hashEntry(keys[i], vals[i]);
+		this._hasheq = cached = Murmur3.mixCollHash(hash, vals.length);
+		}
+	return cached;
+}
+
+public IMapEntry entryAt(Object key){
+	int i = shape.indexOf(key);
+	if(i >= 0)
+		return (IMapEntry) MapEntry.create(shape.keys[i], vals[i]);
+	return null;
+}
+
+final public Object valAt(Object key, Object notFound){
+	int i = shape.indexOf(key);
+	if(i >= 0)
+		return vals[i];
+	return notFound;
+}
+
+public Object valAt(Object key){
+	return valAt(key, null);
+}
+
+PersistentArrayMap toArrayMap(){
+	Object[] array = new Object[2 * vals.length];
+	for(int i = 0; i < vals.length; i++)
+		{
+		array[2 * i] = shape.keys[i];
+		array[2 * i + 1] = vals[i];
+		}
+	return new PersistentArrayMap(meta(), array);
+}
+
+public IPersistentMap assoc(Object key, Object val){
+	int i = shape.indexOf(key);
+	if(i >= 0)
+		{
+		if(vals[i] == val)
+			return this;
+		Object[] newVals = vals.clone();
+		newVals[i] = val;
+		return new PersistentShapeMap(meta(), shape, newVals);
+		}
+	Shape s = shape.assoc(key);
+	if(s == null)
+		return toArrayMap().assoc(key, val);
+	Object[] newVals = Arrays.copyOf(vals, vals.length + 1);
+	newVals[vals.length] = val;
+	return new PersistentShapeMap(meta(), s, newVals);
+}
+
+public IPersistentMap assocEx(Object key, Object val){
+	if(containsKey(key))
+		throw Util.runtimeException("Key already present");
+	return assoc(key, val);
+}
+
+public IPersistentMap without(Object key){
+	int i = shape.indexOf(key);
+	if(i < 0)
+		return this;
+	if(vals.length == 1)
+		return empty();
+	Object[] newVals = new Object[vals.length - 1];
+	System.arraycopy(vals, 0, newVals, 0, i);
+	System.arraycopy(vals, i + 1, newVals, i, newVals.length - i);
+	return new PersistentShapeMap(meta(), shape.without(i), newVals);
+}
+
+public IPersistentMap empty(){
+	return (IPersistentMap) PersistentArrayMap.EMPTY.withMeta(meta());
+}
+
+public ITransientMap asTransient(){
+	return new TransientShapeMap(shape, vals);
+}
+
+public Object kvreduce(IFn f, Object init){
+	Object[] keys = shape.keys;
+	for(int i = 0; i < vals.length; i++)
+		{
+		init = f.invoke(init, keys[i], vals[i]);
+		if(RT.isReduced(init))
+			return ((IDeref) init).deref();
+		}
+	return init;
+}
+
+public Iterator iterator(){
+	return new Iter(shape.keys, vals, APersistentMap.MAKE_ENTRY);
+}
+
+public Iterator keyIterator(){
+	return new Iter(shape.keys, vals, APersistentMap.MAKE_KEY);
+}
+
+public Iterator valIterator(){
+	return new Iter(shape.keys, vals, APersistentMap.MAKE_VAL);
+}
+
+public ISeq seq(){
+	if(vals.length > 0)
+		return new Seq(shape.keys, vals, 0);
+	return null;
+}
+
+static class Seq extends ASeq implements Counted{
+	final Object[] keys;
+	final Object[] vals;
+	final int i;
+
+	Seq(Object[] keys, Object[] vals, int i){
+		this.keys = keys;
+		this.vals = vals;
+		this.i = i;
+	}
+
+	Seq(IPersistentMap meta, Object[] keys, Object[] vals, int i){
+		super(meta);
+		this.keys = keys;
+		this.vals = vals;
+		this.i = i;
+	}
+
+	public Object first(){
+		return MapEntry.create(keys[i], vals[i]);
+	}
+
+	public ISeq next(){
+		if(i + 1 < vals.length)
+			return new Seq(keys, vals, i + 1);
+		return null;
+	}
+
+	public int count(){
+		return vals.length - i;
+	}
+
+	public Obj withMeta(IPersistentMap meta){
+		if(meta() == meta)
+			return this;
+		return new Seq(meta, keys, vals, i);
+	}
+}
+
+static class Iter implements Iterator{
+	final Object[] keys;
+	final Object[] vals;
+	final IFn f;
+	int i = 0;
+
+	Iter(Object[] keys, Object[] vals, IFn f){
+		this.keys = keys;
+		this.vals = vals;
+		this.f = f;
+	}
+
+	public boolean hasNext(){
+		return i < vals.length;
+	}
+
+	public Object next(){
+		if(i >= vals.length)
+			throw new NoSuchElementException();
+		Object ret = f.invoke(keys[i], vals[i]);
+		++i;
+		return ret;
+	}
+
+	public void remove(){
+		throw new UnsupportedOperationException();
+	}
+}
+
+static final class TransientShapeMap extends ATransientMap{
+	volatile Shape shape;
+	final Object[] vals;
+	volatile Thread owner;
+
+	TransientShapeMap(Shape shape, Object[] vals){
+		this.owner = Thread.currentThread();
+		this.shape = shape;
+		this.vals = Arrays.copyOf(vals, MAX_KEYS);
+	}
+
+	ITransientMap doAssoc(Object key, Object val){
+		int i = shape.indexOf(key);
+		if(i >= 0)
+			{
+			vals[i] = val;
+			return this;
+			}
+		Shape s = shape.assoc(key);
+		if(s == null)
+			{
+			Object[] array = new Object[2 * shape.keys.length];
+			for(int k = 0; k < shape.keys.length; k++)
+				{
+				array[2 * k] = shape.keys[k];
+				array[2 * k + 1] = vals[k];
+				}
+			owner = null;
+			return new PersistentArrayMap(array).asTransient().assoc(key, val);
+			}
+		vals[shape.keys.length] = val;
+		shape = s;
+		return this;
+	}
+
+	ITransientMap doWithout(Object key){
+		int i = shape.indexOf(key);
+		if(i >= 0)
+			{
+			int n = shape.keys.length;
+			System.arraycopy(vals, i + 1, vals, i, n - i - 1);
+			vals[n - 1] = null;
+			shape = n == 1 ? Shape.EMPTY : shape.without(i);
+			}
+		return this;
+	}
+
+	Object doValAt(Object key, Object notFound){
+		int i = shape.indexOf(key);
+		if(i >= 0)
+			return vals[i];
+		return notFound;
+	}
+
+	IMapEntry doEntryAt(Object key){
+		int i = shape.indexOf(key);
+		if(i >= 0)
+			return (IMapEntry) MapEntry.create(shape.keys[i], vals[i]);
+		return null;
+	}
+
+	int doCount(){
+		return shape.keys.length;
+	}
+
+	IPersistentMap doPersistent(){
+		ensureEditable();
+		owner = null;
+		if(shape.keys.length == 0)
+			return PersistentArrayMap.EMPTY;
+		return new PersistentShapeMap(null, shape, Arrays.copyOf(vals, shape.keys.length));
+	}
+
+	void ensureEditable(){
+		if(owner == null)
+			throw new IllegalAccessError("Transient used after persistent! call");
+	}
+}
+}
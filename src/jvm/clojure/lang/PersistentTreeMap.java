@@ -13,6 +13,8 @@
 package clojure.lang;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Persistent Red Black Tree
@@ -23,7 +25,7 @@ import java.util.*;
  * <p>See Okasaki, Kahrs, Larsen et al</p>
  */
 
-public class PersistentTreeMap extends APersistentMap implements IObj, Reversible, Sorted, IKVReduce{
+public class PersistentTreeMap extends APersistentMap implements IObj, Reversible, Sorted, IKVReduce, IEditableCollection{
 
 public final Comparator comp;
 public final Node tree;
@@ -33,13 +35,13 @@ final IPersistentMap _meta;
 final static public PersistentTreeMap EMPTY = new PersistentTreeMap();
 
 static public IPersistentMap create(Map other){
-	IPersistentMap ret = EMPTY;
+	ITransientMap ret = EMPTY.asTransient();
 	for(Object o : other.entrySet())
 		{
 		Map.Entry e = (Entry) o;
 		ret = ret.assoc(e.getKey(), e.getValue());
 		}
-	return ret;
+	return ret.persistent();
 }
 
 public PersistentTreeMap(){
@@ -72,25 +74,78 @@ PersistentTreeMap(IPersistentMap meta, Comparator comp, Node tree, int _count){
 }
 
 static public PersistentTreeMap create(ISeq items){
-	IPersistentMap ret = EMPTY;
+	ITransientMap ret = EMPTY.asTransient();
 	for(; items != null; items = items.next().next())
 		{
 		if(items.next() == null)
 			throw new IllegalArgumentException(String.format("No value supplied for key: %s", items.first()));
 		ret = ret.assoc(items.first(), RT.second(items));
 		}
-	return (PersistentTreeMap) ret;
+	return (PersistentTreeMap) ret.persistent();
 }
 
 static public PersistentTreeMap create(Comparator comp, ISeq items){
-	IPersistentMap ret = new PersistentTreeMap(comp);
+	ITransientMap ret = new PersistentTreeMap(comp).asTransient();
 	for(; items != null; items = items.next().next())
 		{
 		if(items.next() == null)
 			throw new IllegalArgumentException(String.format("No value supplied for key: %s", items.first()));
 		ret = ret.assoc(items.first(), RT.second(items));
 		}
-	return (PersistentTreeMap) ret;
+	return (PersistentTreeMap) ret.persistent();
+}
+
+/**
+ * Builds a map in O(n) from alternating keys and vals whose keys are already
+ * in strictly ascending order per comp.
+ */
+static public PersistentTreeMap createSorted(Comparator comp, ISeq items){
+	int n = RT.count(items);
+	if(n % 2 != 0)
+		throw new IllegalArgumentException(String.format("No value supplied for key: %s", RT.nth(items, n - 1)));
+	Object[] keys = new Object[n / 2];
+	Object[] vals = new Object[n / 2];
+	for(int i = 0; items != null; items = items.next().next(), i++)
+		{
+		keys[i] = items.first();
+		vals[i] = RT.second(items);
+		if(i > 0 && comp.compare(keys[i - 1], keys[i]) >= 0)
+			throw new IllegalArgumentException(String.format("Keys not in ascending order at: %s", keys[i]));
+		}
+	if(comp == RT.DEFAULT_COMPARATOR)
+		for(Object key : keys)
+			checkComparable(key);
+	return new PersistentTreeMap(comp, buildSorted(keys, vals, keys.length), keys.length, null);
+}
+
+static void checkComparable(Object key){
+	if(!(key == null || (key instanceof Number) || (key instanceof Comparable)))
+		throw new ClassCastException("Default comparator requires nil, Number, or Comparable: " + key);
+}
+
+static Node buildSorted(Object[] keys, Object[] vals, int n){
+	if(n == 0)
+		return null;
+	int redLevel = 0;
+	for(int m = n - 1; m >= 0; m = m / 2 - 1)
+		redLevel++;
+	return buildSorted(keys, vals, 0, n - 1, 0, redLevel).blacken();
+}
+
+//perfectly balanced except for the deepest, partially filled level, which is red
+static Node buildSorted(Object[] keys, Object[] vals, int lo, int hi, int level, int redLevel){
+	if(hi < lo)
+		return null;
+	int mid = (lo + hi) >>> 1;
+	Node left = buildSorted(keys, vals, lo, mid - 1, level + 1, redLevel);
+	Node right = buildSorted(keys, vals, mid + 1, hi, level + 1, redLevel);
+	if(level == redLevel)
+		return red(keys[mid], vals[mid], left, right);
+	return black(keys[mid], vals[mid], left, right);
+}
+
+public TransientTreeMap asTransient(){
+	return new TransientTreeMap(this);
 }
 
 public boolean containsKey(Object key){
@@ -233,6 +288,122 @@ public Object kvreduce(IFn f, Object init){
 }
 
 
+public Object fold(long n, IFn combinef, IFn reducef,
+                   IFn fjinvoke, IFn fjtask, IFn fjfork, IFn fjjoin){
+	return fold(null, null, true, n, combinef, reducef, fjinvoke, fjtask, fjfork, fjjoin);
+}
+
+/**
+ * Folds the entries whose keys satisfy lowerOk and upperOk (null for
+ * unbounded), calling reducef with (acc, key, val). lowerOk must be false
+ * then true, and upperOk true then false, as keys ascend.
+ */
+public Object fold(IFn lowerOk, IFn upperOk, boolean ascending, long n, IFn combinef, IFn reducef,
+                   IFn fjinvoke, IFn fjtask, IFn fjfork, IFn fjjoin){
+	return fold(tree, _count, lowerOk, upperOk, ascending, true, n, combinef, reducef,
+	            fjinvoke, fjtask, fjfork, fjjoin);
+}
+
+public Object kvreduce(IFn lowerOk, IFn upperOk, boolean ascending, IFn f, Object init){
+	init = reduceRange(tree, lowerOk, upperOk, ascending, KEY_VALS, f, init);
+	if(RT.isReduced(init))
+		init = ((IDeref)init).deref();
+	return init;
+}
+
+/**
+ * Like kvreduce over the same range, but calls f with (acc, entry).
+ */
+public Object reduce(IFn lowerOk, IFn upperOk, boolean ascending, IFn f, Object init){
+	init = reduceRange(tree, lowerOk, upperOk, ascending, ENTRIES, f, init);
+	if(RT.isReduced(init))
+		init = ((IDeref)init).deref();
+	return init;
+}
+
+static Object fold(final Node tree, final long count, final IFn lowerOk, final IFn upperOk,
+                   final boolean ascending, final boolean kv, final long n, final IFn combinef, final IFn reducef,
+                   IFn fjinvoke, final IFn fjtask, final IFn fjfork, final IFn fjjoin){
+	Callable top = new Callable(){
+		public Object call() throws Exception{
+			return foldNode(tree, count, lowerOk, upperOk, ascending, kv, n, combinef, reducef,
+			                fjtask, fjfork, fjjoin);
+		}
+	};
+	return fjinvoke.invoke(top);
+}
+
+//subtree sizes aren't tracked, so estimate them by halving per level
+static Object foldNode(Node t, long est, IFn lowerOk, IFn upperOk,
+                       final boolean ascending, final boolean kv, final long n, final IFn combinef, final IFn reducef,
+                       final IFn fjtask, final IFn fjfork, final IFn fjjoin){
+	while(t != null && est > n)
+		{
+		boolean lo = lowerOk == null || RT.booleanCast(lowerOk.invoke(t.key));
+		boolean hi = upperOk == null || RT.booleanCast(upperOk.invoke(t.key));
+		if(lo && hi)
+			{
+			final long half = est / 2;
+			final Node first = ascending ? t.left() : t.right();
+			final Node second = ascending ? t.right() : t.left();
+			//everything right of an in-bounds key passes lowerOk, left of it passes upperOk
+			final IFn firstLower = ascending ? lowerOk : null;
+			final IFn firstUpper = ascending ? null : upperOk;
+			final IFn secondLower = ascending ? null : lowerOk;
+			final IFn secondUpper = ascending ? upperOk : null;
+			Object forked = fjfork.invoke(fjtask.invoke(new Callable(){
+				public Object call() throws Exception{
+					return foldNode(second, half, secondLower, secondUpper, ascending, kv, n,
+					                combinef, reducef, fjtask, fjfork, fjjoin);
+				}
+			}));
+			Object ret = foldNode(first, half, firstLower, firstUpper, ascending, kv, n,
+			                      combinef, reducef, fjtask, fjfork, fjjoin);
+			Object mid = kv ? reducef.invoke(combinef.invoke(), t.key, t.val())
+			                : reducef.invoke(combinef.invoke(), t.key);
+			if(RT.isReduced(mid))
+				mid = ((IDeref)mid).deref();
+			return combinef.invoke(combinef.invoke(ret, mid), fjjoin.invoke(forked));
+			}
+		t = lo ? t.left() : t.right();
+		est = est / 2;
+		}
+	Object ret = reduceRange(t, lowerOk, upperOk, ascending, kv ? KEY_VALS : KEYS, reducef, combinef.invoke());
+	if(RT.isReduced(ret))
+		ret = ((IDeref)ret).deref();
+	return ret;
+}
+
+//what reduceRange calls f with, besides the accumulator
+static final int KEYS = 0;
+static final int ENTRIES = 1;
+static final int KEY_VALS = 2;
+
+static Object reduceRange(Node t, IFn lowerOk, IFn upperOk, boolean ascending, int kind, IFn f, Object init){
+	if(t == null)
+		return init;
+	boolean lo = lowerOk == null || RT.booleanCast(lowerOk.invoke(t.key));
+	boolean hi = upperOk == null || RT.booleanCast(upperOk.invoke(t.key));
+	if(ascending ? lo : hi)
+		{
+		init = ascending ? reduceRange(t.left(), lowerOk, hi ? null : upperOk, true, kind, f, init)
+		                 : reduceRange(t.right(), lo ? null : lowerOk, upperOk, false, kind, f, init);
+		if(RT.isReduced(init))
+			return init;
+		}
+	if(lo && hi)
+		{
+		init = kind == KEY_VALS ? f.invoke(init, t.key, t.val())
+		                        : f.invoke(init, kind == ENTRIES ? t : t.key);
+		if(RT.isReduced(init))
+			return init;
+		}
+	if(ascending ? hi : lo)
+		init = ascending ? reduceRange(t.right(), lo ? null : lowerOk, upperOk, true, kind, f, init)
+		                 : reduceRange(t.left(), lowerOk, hi ? null : upperOk, false, kind, f, init);
+	return init;
+}
+
 public NodeIterator reverseIterator(){
 	return new NodeIterator(tree, false);
 }
@@ -334,8 +505,8 @@ public int doCompare(Object k1, Object k2){
 Node add(Node t, Object key, Object val, Box found){
 	if(t == null)
 		{
-		if(comp == RT.DEFAULT_COMPARATOR && !( key == null || (key instanceof Number) || (key instanceof Comparable)))
-			throw new ClassCastException("Default comparator requires nil, Number, or Comparable: " + key);
+		if(comp == RT.DEFAULT_COMPARATOR)
+			checkComparable(key);
 		if(val == null)
 			return new Red(key);
 		return new RedVal(key, val);
@@ -792,6 +963,140 @@ static class RedBranchVal extends RedBranch{
 }
 
 
+/**
+ * Red black nodes are immutable, so rather than path copying per edit the
+ * transient buffers edits in a mutable sorted map and folds them into the
+ * tree on persistent!. Large batches are merged with the existing entries
+ * and rebuilt bottom-up in O(n); small batches are applied one at a time.
+ */
+static final class TransientTreeMap extends ATransientMap {
+	static final Object NIL = new Object();
+	static final Object REMOVED = new Object();
+
+	final AtomicReference<Thread> edit;
+	final PersistentTreeMap base;
+	final TreeMap pending;
+	volatile int count;
+
+	TransientTreeMap(PersistentTreeMap m) {
+		this.edit = new AtomicReference<Thread>(Thread.currentThread());
+		this.base = m;
+		this.pending = new TreeMap(m.comp);
+		this.count = m._count;
+	}
+
+	ITransientMap doAssoc(Object key, Object val) {
+		if(base.comp == RT.DEFAULT_COMPARATOR)
+			checkComparable(key);
+		Object prev = pending.put(key, val == null ? NIL : val);
+		if(prev == REMOVED || (prev == null && base.entryAt(key) == null))
+			count++;
+		return this;
+	}
+
+	ITransientMap doWithout(Object key) {
+		Object prev = pending.get(key);
+		if(prev == REMOVED)
+			return this;
+		if(base.entryAt(key) != null)
+			{
+			pending.put(key, REMOVED);
+			count--;
+			}
+		else if(prev != null)
+			{
+			pending.remove(key);
+			count--;
+			}
+		return this;
+	}
+
+	Object doValAt(Object key, Object notFound) {
+		Object v = pending.get(key);
+		if(v == null)
+			return base.valAt(key, notFound);
+		if(v == REMOVED)
+			return notFound;
+		return v == NIL ? null : v;
+	}
+
+	IMapEntry doEntryAt(Object key) {
+		Object v = pending.get(key);
+		if(v == null)
+			return base.entryAt(key);
+		if(v == REMOVED)
+			return null;
+		return MapEntry.create(key, v == NIL ? null : v);
+	}
+
+	int doCount() {
+		return count;
+	}
+
+	IPersistentMap doPersistent() {
+		edit.set(null);
+		if(pending.isEmpty())
+			return base.withMeta(null);
+		if(count == 0)
+			return new PersistentTreeMap(null, base.comp);
+		if(pending.size() * (long) (32 - Integer.numberOfLeadingZeros(base._count)) < base._count)
+			return applyPending();
+		return rebuild();
+	}
+
+	private IPersistentMap applyPending() {
+		IPersistentMap ret = base.withMeta(null);
+		for(Object o : pending.entrySet())
+			{
+			Map.Entry e = (Map.Entry) o;
+			Object v = e.getValue();
+			if(v == REMOVED)
+				ret = ret.without(e.getKey());
+			else
+				ret = ret.assoc(e.getKey(), v == NIL ? null : v);
+			}
+		return ret;
+	}
+
+	private IPersistentMap rebuild() {
+		Object[] keys = new Object[count];
+		Object[] vals = new Object[count];
+		Comparator comp = base.comp;
+		Iterator olds = base.iterator();
+		Iterator news = pending.entrySet().iterator();
+		Node o = olds.hasNext() ? (Node) olds.next() : null;
+		Map.Entry e = news.hasNext() ? (Map.Entry) news.next() : null;
+		int i = 0;
+		while(o != null || e != null)
+			{
+			int c = o == null ? 1 : e == null ? -1 : comp.compare(o.key, e.getKey());
+			if(c < 0)
+				{
+				keys[i] = o.key;
+				vals[i++] = o.val();
+				}
+			else
+				{
+				Object v = e.getValue();
+				if(v != REMOVED)
+					{
+					keys[i] = c == 0 ? o.key : e.getKey();
+					vals[i++] = v == NIL ? null : v;
+					}
+				e = news.hasNext() ? (Map.Entry) news.next() : null;
+				}
+			if(c <= 0)
+				o = olds.hasNext() ? (Node) olds.next() : null;
+			}
+		return new PersistentTreeMap(comp, buildSorted(keys, vals, i), i, null);
+	}
+
+	void ensureEditable(){
+		if(edit.get() == null)
+			throw new IllegalAccessError("Transient used after persistent! call");
+	}
+}
+
 static public class Seq extends ASeq{
 	final ISeq stack;
 	final boolean asc;
@@ -14,27 +14,27 @@ package clojure.lang;
 
 import java.util.Comparator;
 
-public class PersistentTreeSet extends APersistentSet implements IObj, Reversible, Sorted{
+public class PersistentTreeSet extends APersistentSet implements IObj, Reversible, Sorted, IEditableCollection{
 static public final PersistentTreeSet EMPTY = new PersistentTreeSet(null, PersistentTreeMap.EMPTY);
 final IPersistentMap _meta;
 
 
 static public PersistentTreeSet create(ISeq items){
-	PersistentTreeSet ret = EMPTY;
+	ITransientSet ret = EMPTY.asTransient();
 	for(; items != null; items = items.next())
 		{
-		ret = (PersistentTreeSet) ret.cons(items.first());
+		ret = (ITransientSet) ret.conj(items.first());
 		}
-	return ret;
+	return (PersistentTreeSet) ret.persistent();
 }
 
 static public PersistentTreeSet create(Comparator comp, ISeq items){
-	PersistentTreeSet ret = new PersistentTreeSet(null, new PersistentTreeMap(null, comp));
+	ITransientSet ret = new PersistentTreeSet(null, new PersistentTreeMap(null, comp)).asTransient();
 	for(; items != null; items = items.next())
 		{
-		ret = (PersistentTreeSet) ret.cons(items.first());
+		ret = (ITransientSet) ret.conj(items.first());
 		}
-	return ret;
+	return (PersistentTreeSet) ret.persistent();
 }
 
 PersistentTreeSet(IPersistentMap meta, IPersistentMap impl){
@@ -105,4 +105,38 @@ public ISeq seqFrom(Object key, boolean ascending){
 public IPersistentMap meta(){
 	return _meta;
 }
+
+public Object fold(long n, IFn combinef, IFn reducef,
+                   IFn fjinvoke, IFn fjtask, IFn fjfork, IFn fjjoin){
+	return fold(null, null, true, n, combinef, reducef, fjinvoke, fjtask, fjfork, fjjoin);
+}
+
+public Object fold(IFn lowerOk, IFn upperOk, boolean ascending, long n, IFn combinef, IFn reducef,
+                   IFn fjinvoke, IFn fjtask, IFn fjfork, IFn fjjoin){
+	PersistentTreeMap m = (PersistentTreeMap) impl;
+	return PersistentTreeMap.fold(m.tree, m._count, lowerOk, upperOk, ascending, false, n, combinef, reducef,
+	                              fjinvoke, fjtask, fjfork, fjjoin);
+}
+
+public Object reduce(IFn lowerOk, IFn upperOk, boolean ascending, IFn f, Object init){
+	PersistentTreeMap m = (PersistentTreeMap) impl;
+	init = PersistentTreeMap.reduceRange(m.tree, lowerOk, upperOk, ascending, PersistentTreeMap.KEYS, f, init);
+	if(RT.isReduced(init))
+		init = ((IDeref)init).deref();
+	return init;
+}
+
+public TransientTreeSet asTransient(){
+	return new TransientTreeSet(((PersistentTreeMap) impl).asTransient());
+}
+
+static final class TransientTreeSet extends ATransientSet {
+	TransientTreeSet(ITransientMap impl) {
+		super(impl);
+	}
+
+	public IPersistentCollection persistent() {
+		return new PersistentTreeSet(null, impl.persistent());
+	}
+}
 }
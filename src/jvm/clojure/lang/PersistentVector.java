@@ -173,6 +173,22 @@ public Object nth(int i, Object notFound){
 	return notFound;
 }
 
+public int hasheq(){
+	int hash = this._hasheq;
+	if(hash == 0)
+		{
+		hash = 1;
+		for(int i = 0; i < cnt; i += 32)
+			{
+			Object[] array = arrayFor(i);
+			for(int j = 0; j < array.length; j++)
+				hash = 31 * hash + Util.hasheq(array[j]);
+			}
+		this._hasheq = hash = Murmur3.mixCollHash(hash, cnt);
+		}
+	return hash;
+}
+
 public PersistentVector assocN(int i, Object val){
 	if(i >= 0 && i < cnt)
 		{
@@ -0,0 +1,957 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import clojure.lang.PersistentVector.Node;
+
+/**
+ * A relaxed radix balanced tree vector (Bagwell and Rompf, "RRB-Trees:
+ * Efficient Immutable Vectors", with the concatenation of L'orange,
+ * "Improving RRB-Tree Performance through Transience"), supporting slice,
+ * concatenation and insertion in O(log n) along with everything a
+ * PersistentVector does.
+ *
+ * <p>The tree is that of PersistentVector, with the same Nodes, so a
+ * PersistentVector is converted in O(1). Nodes that are not dense are
+ * relaxed, their array has a 33rd slot holding the cumulative sizes of
+ * their children, which indexing scans from the child the radix would
+ * pick. A regular node's children are all full but the last. Leaves hold
+ * exactly their elements, as does the tail.</p>
+ */
+public class RRBVector extends APersistentVector implements IObj, IEditableCollection, IReduce, IKVReduce{
+
+//the number of nodes more than optimal concatenation leaves before rebalancing
+static final int EXTRAS = 2;
+
+final int cnt;
+final int shift;
+final Node root;
+final Object[] tail;
+final IPersistentMap _meta;
+
+public final static RRBVector EMPTY = new RRBVector(null, 0, 5, PersistentVector.EMPTY_NODE, new Object[0]);
+
+RRBVector(IPersistentMap meta, int cnt, int shift, Node root, Object[] tail){
+	this._meta = meta;
+	this.cnt = cnt;
+	this.shift = shift;
+	this.root = root;
+	this.tail = tail;
+}
+
+/**
+ * Returns coll as an RRBVector, sharing the tree of a PersistentVector.
+ */
+static public RRBVector create(Object coll){
+	if(coll instanceof RRBVector)
+		return (RRBVector) coll;
+	if(coll instanceof PersistentVector)
+		{
+		PersistentVector v = (PersistentVector) coll;
+		return new RRBVector(null, v.cnt, v.shift, v.root, v.tail);
+		}
+	TransientRRBVector ret = EMPTY.asTransient();
+	if(coll instanceof IReduceInit)
+		return ((TransientRRBVector) ((IReduceInit) coll).reduce(TRANSIENT_CONJ, ret)).persistent();
+	for(ISeq s = RT.seq(coll); s != null; s = s.next())
+		ret = ret.conj(s.first());
+	return ret.persistent();
+}
+
+private static final IFn TRANSIENT_CONJ = new AFn() {
+	public Object invoke(Object coll, Object val) {
+		return ((ITransientVector)coll).conj(val);
+	}
+	public Object invoke(Object coll) {
+		return coll;
+	}
+};
+
+public TransientRRBVector asTransient(){
+	return new TransientRRBVector(this);
+}
+
+final int tailoff(){
+	return cnt - tail.length;
+}
+
+static boolean isRelaxed(Node node){
+	return node.array.length > 32;
+}
+
+static int[] sizes(Node node){
+	return (int[]) node.array[32];
+}
+
+static int childCount(Node node){
+	if(isRelaxed(node))
+		return sizes(node).length;
+	Object[] array = node.array;
+	int n = 32;
+	while(n > 0 && array[n - 1] == null)
+		--n;
+	return n;
+}
+
+//the number of elements under node, a leaf at level 0
+static int treeSize(Node node, int level){
+	if(level == 0)
+		return node.array.length;
+	int n = childCount(node);
+	if(n == 0)
+		return 0;
+	if(isRelaxed(node))
+		return sizes(node)[n - 1];
+	return ((n - 1) << level) + treeSize((Node) node.array[n - 1], level - 5);
+}
+
+//the number of children of node, or elements of a leaf
+static int slotCount(Node node, int level){
+	return level == 0 ? node.array.length : childCount(node);
+}
+
+//the index of the child of node holding its element i
+static int subIndex(Node node, int level, int i){
+	if(isRelaxed(node))
+		{
+		int[] sizes = sizes(node);
+		int idx = i >>> level;
+		while(sizes[idx] <= i)
+			++idx;
+		return idx;
+		}
+	return (i >>> level) & 0x01f;
+}
+
+//the number of elements of node before its child idx
+static int sizeBefore(Node node, int level, int idx){
+	if(idx == 0)
+		return 0;
+	if(isRelaxed(node))
+		return sizes(node)[idx - 1];
+	return idx << level;
+}
+
+static Object lookup(Node node, int level, int i){
+	for(; level > 0; level -= 5)
+		{
+		if(isRelaxed(node))
+			{
+			int[] sizes = sizes(node);
+			int idx = i >>> level;
+			while(sizes[idx] <= i)
+				++idx;
+			if(idx > 0)
+				i -= sizes[idx - 1];
+			node = (Node) node.array[idx];
+			}
+		else
+			{
+			node = (Node) node.array[(i >>> level) & 0x01f];
+			i &= (1 << level) - 1;
+			}
+		}
+	return node.array[i];
+}
+
+//the leaf holding element i, with i's index in it left in offset[0] unless offset is null
+static Object[] leafFor(Node node, int level, int i, int[] offset){
+	for(; level > 0; level -= 5)
+		{
+		int idx = subIndex(node, level, i);
+		i -= sizeBefore(node, level, idx);
+		node = (Node) node.array[idx];
+		}
+	if(offset != null)
+		offset[0] = i;
+	return node.array;
+}
+
+static Node lastLeaf(Node node, int level){
+	for(; level > 0; level -= 5)
+		node = (Node) node.array[childCount(node) - 1];
+	return node;
+}
+
+static Node editable(AtomicReference<Thread> edit, Node node){
+	if(edit.get() != null && node.edit == edit)
+		return node;
+	Object[] array = node.array.clone();
+	if(array.length > 32)
+		array[32] = sizes(node).clone();
+	return new Node(edit, array);
+}
+
+//a node at level over the first n children, relaxed unless all but the last are full
+static Node makeNode(AtomicReference<Thread> edit, int level, Object[] children, int n){
+	int[] sizes = new int[n];
+	boolean regular = true;
+	int total = 0;
+	for(int k = 0; k < n; k++)
+		{
+		int size = treeSize((Node) children[k], level - 5);
+		if(k < n - 1 && size != 1 << level)
+			regular = false;
+		total += size;
+		sizes[k] = total;
+		}
+	Object[] array = new Object[regular ? 32 : 33];
+	System.arraycopy(children, 0, array, 0, n);
+	if(!regular)
+		array[32] = sizes;
+	return new Node(edit, array);
+}
+
+static Node newPath(AtomicReference<Thread> edit, int level, Node node){
+	if(level == 0)
+		return node;
+	Node ret = new Node(edit);
+	ret.array[0] = newPath(edit, level - 5, node);
+	return ret;
+}
+
+//node with leaf appended to its right edge, or null if it is full
+static Node pushLeaf(AtomicReference<Thread> edit, int level, Node node, Node leaf){
+	int n = childCount(node);
+	if(level > 5 && n > 0)
+		{
+		Node child = pushLeaf(edit, level - 5, (Node) node.array[n - 1], leaf);
+		if(child != null)
+			{
+			Node ret = editable(edit, node);
+			ret.array[n - 1] = child;
+			if(isRelaxed(ret))
+				sizes(ret)[n - 1] += leaf.array.length;
+			return ret;
+			}
+		}
+	if(n == 32)
+		return null;
+	Node child = newPath(edit, level - 5, leaf);
+	if(isRelaxed(node))
+		{
+		Node ret = editable(edit, node);
+		int[] sizes = Arrays.copyOf(sizes(ret), n + 1);
+		sizes[n] = (n == 0 ? 0 : sizes[n - 1]) + leaf.array.length;
+		ret.array[n] = child;
+		ret.array[32] = sizes;
+		return ret;
+		}
+	if(n > 0 && treeSize((Node) node.array[n - 1], level - 5) != 1 << level)
+		{
+		//the last child is partial, so the radix no longer finds those after it
+		Object[] children = Arrays.copyOf(node.array, n + 1);
+		children[n] = child;
+		return makeNode(edit, level, children, n + 1);
+		}
+	Node ret = editable(edit, node);
+	ret.array[n] = child;
+	return ret;
+}
+
+//a root at shift + 5 over root and a path to leaf, for when root is full
+static Node growRoot(AtomicReference<Thread> edit, int shift, Node root, Node leaf){
+	return makeNode(edit, shift + 5, new Object[]{root, newPath(edit, shift, leaf)}, 2);
+}
+
+//node without its rightmost leaf of leafLen elements, or null if that leaves it empty
+static Node popLeaf(AtomicReference<Thread> edit, int level, Node node, int leafLen){
+	int n = childCount(node);
+	Node child = level > 5 ? popLeaf(edit, level - 5, (Node) node.array[n - 1], leafLen) : null;
+	if(child == null && n == 1)
+		return null;
+	Node ret = editable(edit, node);
+	if(child != null)
+		{
+		ret.array[n - 1] = child;
+		if(isRelaxed(ret))
+			sizes(ret)[n - 1] -= leafLen;
+		}
+	else
+		{
+		ret.array[n - 1] = null;
+		if(isRelaxed(ret))
+			ret.array[32] = Arrays.copyOf(sizes(ret), n - 1);
+		}
+	return ret;
+}
+
+static Node doAssoc(AtomicReference<Thread> edit, int level, Node node, int i, Object val){
+	Node ret = editable(edit, node);
+	if(level == 0)
+		ret.array[i] = val;
+	else
+		{
+		int idx = subIndex(node, level, i);
+		ret.array[idx] = doAssoc(edit, level - 5, (Node) node.array[idx], i - sizeBefore(node, level, idx), val);
+		}
+	return ret;
+}
+
+//the first end elements of node
+static Node sliceRight(int level, Node node, int end){
+	if(level == 0)
+		return end == node.array.length ? node : new Node(PersistentVector.NOEDIT, Arrays.copyOf(node.array, end));
+	int idx = subIndex(node, level, end - 1);
+	Node child = (Node) node.array[idx];
+	Node newchild = sliceRight(level - 5, child, end - sizeBefore(node, level, idx));
+	if(newchild == child && idx == childCount(node) - 1)
+		return node;
+	Object[] array = new Object[node.array.length];
+	System.arraycopy(node.array, 0, array, 0, idx);
+	array[idx] = newchild;
+	if(isRelaxed(node))
+		{
+		int[] sizes = Arrays.copyOf(sizes(node), idx + 1);
+		sizes[idx] = end;
+		array[32] = sizes;
+		}
+	return new Node(PersistentVector.NOEDIT, array);
+}
+
+//the elements of node from start on, always relaxed
+static Node sliceLeft(int level, Node node, int start){
+	if(start == 0)
+		return node;
+	if(level == 0)
+		return new Node(PersistentVector.NOEDIT, Arrays.copyOfRange(node.array, start, node.array.length));
+	int idx = subIndex(node, level, start);
+	int n = childCount(node);
+	Object[] array = new Object[33];
+	int[] sizes = new int[n - idx];
+	array[0] = sliceLeft(level - 5, (Node) node.array[idx], start - sizeBefore(node, level, idx));
+	System.arraycopy(node.array, idx + 1, array, 1, n - idx - 1);
+	for(int k = idx; k < n; k++)
+		sizes[k - idx] = sizeBefore(node, level, k) + treeSize((Node) node.array[k], level - 5) - start;
+	array[32] = sizes;
+	return new Node(PersistentVector.NOEDIT, array);
+}
+
+//merges the right edge of left with the left edge of right, returning a
+//node one level above the higher of them holding one or two children
+static Node concatSubTree(Node left, int leftLevel, Node right, int rightLevel){
+	if(leftLevel > rightLevel)
+		{
+		Node mid = concatSubTree((Node) left.array[childCount(left) - 1], leftLevel - 5, right, rightLevel);
+		return rebalance(left, mid, null, leftLevel);
+		}
+	if(leftLevel < rightLevel)
+		{
+		Node mid = concatSubTree(left, leftLevel, (Node) right.array[0], rightLevel - 5);
+		return rebalance(null, mid, right, rightLevel);
+		}
+	if(leftLevel == 0)
+		return makeNode(PersistentVector.NOEDIT, 5, new Object[]{left, right}, 2);
+	Node mid = concatSubTree((Node) left.array[childCount(left) - 1], leftLevel - 5,
+	                         (Node) right.array[0], rightLevel - 5);
+	return rebalance(left, mid, right, leftLevel);
+}
+
+//the children of left but its last, of mid, and of right but its first,
+//redistributed when there are too many of them, in one or two nodes at
+//level, under a node at level + 5
+static Node rebalance(Node left, Node mid, Node right, int level){
+	int ln = left == null ? 0 : childCount(left) - 1;
+	int mn = childCount(mid);
+	int rn = right == null ? 0 : childCount(right) - 1;
+	Object[] all = new Object[ln + mn + rn];
+	if(ln > 0)
+		System.arraycopy(left.array, 0, all, 0, ln);
+	System.arraycopy(mid.array, 0, all, ln, mn);
+	if(rn > 0)
+		System.arraycopy(right.array, 1, all, ln + mn, rn);
+
+	Object[] nodes = executePlan(all, concatPlan(all, level - 5), level - 5);
+	Node first = makeNode(PersistentVector.NOEDIT, level, nodes, Math.min(nodes.length, 32));
+	if(nodes.length <= 32)
+		return makeNode(PersistentVector.NOEDIT, level + 5, new Object[]{first}, 1);
+	Node second = makeNode(PersistentVector.NOEDIT, level, Arrays.copyOfRange(nodes, 32, nodes.length),
+	                       nodes.length - 32);
+	return makeNode(PersistentVector.NOEDIT, level + 5, new Object[]{first, second}, 2);
+}
+
+//the number of slots each of the nodes should have, merging the short ones
+//into those after them until there are at most EXTRAS more than needed
+static int[] concatPlan(Object[] nodes, int level){
+	int[] plan = new int[nodes.length];
+	int total = 0;
+	for(int k = 0; k < nodes.length; k++)
+		{
+		plan[k] = slotCount((Node) nodes[k], level);
+		total += plan[k];
+		}
+	int optimal = (total + 31) / 32;
+	int len = nodes.length;
+	int i = 0;
+	while(len > optimal + EXTRAS)
+		{
+		while(plan[i] == 32)
+			++i;
+		int remaining = plan[i];
+		do
+			{
+			int size = Math.min(remaining + plan[i + 1], 32);
+			remaining += plan[i + 1] - size;
+			plan[i] = size;
+			++i;
+			} while(remaining > 0);
+		System.arraycopy(plan, i + 1, plan, i, len - i - 1);
+		--len;
+		--i;
+		}
+	return len == plan.length ? plan : Arrays.copyOf(plan, len);
+}
+
+//nodes at level with the slots of nodes, sized by plan
+static Object[] executePlan(Object[] nodes, int[] plan, int level){
+	Object[] ret = new Object[plan.length];
+	int src = 0;
+	int offset = 0;
+	for(int k = 0; k < plan.length; k++)
+		{
+		Node node = (Node) nodes[src];
+		if(offset == 0 && slotCount(node, level) == plan[k])
+			{
+			ret[k] = node;
+			++src;
+			continue;
+			}
+		Object[] slots = new Object[plan[k]];
+		int filled = 0;
+		while(filled < plan[k])
+			{
+			node = (Node) nodes[src];
+			int n = slotCount(node, level);
+			int c = Math.min(plan[k] - filled, n - offset);
+			System.arraycopy(node.array, offset, slots, filled, c);
+			filled += c;
+			offset += c;
+			if(offset == n)
+				{
+				++src;
+				offset = 0;
+				}
+			}
+		ret[k] = level == 0 ? new Node(PersistentVector.NOEDIT, slots)
+		                    : makeNode(PersistentVector.NOEDIT, level, slots, plan[k]);
+		}
+	return ret;
+}
+
+static Node collapse(Node root, int[] shift){
+	while(shift[0] > 5 && childCount(root) == 1)
+		{
+		root = (Node) root.array[0];
+		shift[0] -= 5;
+		}
+	return root;
+}
+
+Object[] arrayFor(int i){
+	if(i >= tailoff())
+		return tail;
+	return leafFor(root, shift, i, null);
+}
+
+public Object nth(int i){
+	if(i >= 0 && i < cnt)
+		{
+		int tailoff = tailoff();
+		if(i >= tailoff)
+			return tail[i - tailoff];
+		return lookup(root, shift, i);
+		}
+	throw new IndexOutOfBoundsException();
+}
+
+public Object nth(int i, Object notFound){
+	if(i >= 0 && i < cnt)
+		return nth(i);
+	return notFound;
+}
+
+public RRBVector assocN(int i, Object val){
+	if(i >= 0 && i < cnt)
+		{
+		int tailoff = tailoff();
+		if(i >= tailoff)
+			{
+			Object[] newTail = tail.clone();
+			newTail[i - tailoff] = val;
+			return new RRBVector(meta(), cnt, shift, root, newTail);
+			}
+		return new RRBVector(meta(), cnt, shift, doAssoc(PersistentVector.NOEDIT, shift, root, i, val), tail);
+		}
+	if(i == cnt)
+		return cons(val);
+	throw new IndexOutOfBoundsException();
+}
+
+public int count(){
+	return cnt;
+}
+
+public RRBVector withMeta(IPersistentMap meta){
+	if(meta() == meta)
+		return this;
+	return new RRBVector(meta, cnt, shift, root, tail);
+}
+
+public IPersistentMap meta(){
+	return _meta;
+}
+
+public RRBVector cons(Object val){
+	if(tail.length < 32)
+		{
+		Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+		newTail[tail.length] = val;
+		return new RRBVector(meta(), cnt + 1, shift, root, newTail);
+		}
+	Node leaf = new Node(PersistentVector.NOEDIT, tail);
+	Node newroot = pushLeaf(PersistentVector.NOEDIT, shift, root, leaf);
+	int newshift = shift;
+	if(newroot == null)
+		{
+		newroot = growRoot(PersistentVector.NOEDIT, shift, root, leaf);
+		newshift += 5;
+		}
+	return new RRBVector(meta(), cnt + 1, newshift, newroot, new Object[]{val});
+}
+
+public RRBVector pop(){
+	if(cnt == 0)
+		throw new IllegalStateException("Can't pop empty vector");
+	if(cnt == 1)
+		return EMPTY.withMeta(meta());
+	if(tail.length > 1)
+		return new RRBVector(meta(), cnt - 1, shift, root, Arrays.copyOf(tail, tail.length - 1));
+	Object[] newtail = lastLeaf(root, shift).array;
+	Node newroot = popLeaf(PersistentVector.NOEDIT, shift, root, newtail.length);
+	int[] newshift = {shift};
+	if(newroot == null)
+		{
+		newroot = PersistentVector.EMPTY_NODE;
+		newshift[0] = 5;
+		}
+	newroot = collapse(newroot, newshift);
+	return new RRBVector(meta(), cnt - 1, newshift[0], newroot, newtail);
+}
+
+public IPersistentCollection empty(){
+	return EMPTY.withMeta(meta());
+}
+
+/**
+ * Returns the elements from start (inclusive) to end (exclusive), in
+ * O(log n) and without holding on to the others.
+ */
+public RRBVector slice(int start, int end){
+	if(end < start || start < 0 || end > cnt)
+		throw new IndexOutOfBoundsException();
+	if(start == end)
+		return EMPTY;
+	if(start == 0 && end == cnt)
+		return withMeta(null);
+	int tailoff = tailoff();
+	if(start >= tailoff)
+		return new RRBVector(null, end - start, 5, PersistentVector.EMPTY_NODE,
+		                     Arrays.copyOfRange(tail, start - tailoff, end - tailoff));
+	Node newroot = sliceLeft(shift, sliceRight(shift, root, Math.min(end, tailoff)), start);
+	int[] newshift = {shift};
+	Object[] newtail;
+	if(end > tailoff)
+		newtail = Arrays.copyOf(tail, end - tailoff);
+	else
+		{
+		newtail = lastLeaf(newroot, shift).array;
+		newroot = popLeaf(PersistentVector.NOEDIT, shift, newroot, newtail.length);
+		if(newroot == null)
+			{
+			newroot = PersistentVector.EMPTY_NODE;
+			newshift[0] = 5;
+			}
+		}
+	newroot = collapse(newroot, newshift);
+	return new RRBVector(null, end - start, newshift[0], newroot, newtail);
+}
+
+/**
+ * Returns the elements of this followed by those of v, in O(log n) when v
+ * is an RRBVector or a PersistentVector.
+ */
+public RRBVector catvec(IPersistentVector v){
+	RRBVector other = create(v);
+	if(other.cnt == 0)
+		return this;
+	if(cnt == 0)
+		return other.withMeta(meta());
+	if(other.tailoff() == 0)
+		{
+		TransientRRBVector ret = asTransient();
+		for(Object x : other.tail)
+			ret.conj(x);
+		return ret.persistent().withMeta(meta());
+		}
+	//the tail goes into the tree, the tail of other is the new tail
+	Node leaf = new Node(PersistentVector.NOEDIT, tail);
+	Node left = pushLeaf(PersistentVector.NOEDIT, shift, root, leaf);
+	int leftShift = shift;
+	if(left == null)
+		{
+		left = growRoot(PersistentVector.NOEDIT, shift, root, leaf);
+		leftShift += 5;
+		}
+	int[] newshift = {Math.max(leftShift, other.shift) + 5};
+	Node newroot = collapse(concatSubTree(left, leftShift, other.root, other.shift), newshift);
+	return new RRBVector(meta(), cnt + other.cnt, newshift[0], newroot, other.tail);
+}
+
+/**
+ * Returns this with val inserted before index i, in O(log n).
+ */
+public RRBVector insertAt(int i, Object val){
+	if(i < 0 || i > cnt)
+		throw new IndexOutOfBoundsException();
+	if(i == cnt)
+		return cons(val);
+	return slice(0, i).cons(val).catvec(slice(i, cnt)).withMeta(meta());
+}
+
+public ISeq seq(){
+	if(cnt == 0)
+		return null;
+	return new ChunkedSeq(this, arrayFor(0), 0, 0);
+}
+
+@Override
+Iterator rangedIterator(final int start, final int end){
+	final int[] offset = new int[1];
+	final Object[] first = start < end ? leafAt(start, offset) : null;
+	return new Iterator(){
+		int i = start;
+		Object[] array = first;
+		int j = offset[0];
+
+		public boolean hasNext(){
+			return i < end;
+		}
+
+		public Object next(){
+			if(i < end)
+				{
+				if(j == array.length)
+					{
+					array = arrayFor(i);
+					j = 0;
+					}
+				++i;
+				return array[j++];
+				}
+			throw new NoSuchElementException();
+		}
+
+		public void remove(){
+			throw new UnsupportedOperationException();
+		}
+	};
+}
+
+private Object[] leafAt(int i, int[] offset){
+	int tailoff = tailoff();
+	if(i >= tailoff)
+		{
+		offset[0] = i - tailoff;
+		return tail;
+		}
+	return leafFor(root, shift, i, offset);
+}
+
+public Iterator iterator(){
+	return rangedIterator(0, cnt);
+}
+
+public Object reduce(IFn f){
+	if(cnt == 0)
+		return f.invoke();
+	Object init = nth(0);
+	int step = 0;
+	for(int i = 0; i < cnt; i += step)
+		{
+		Object[] array = arrayFor(i);
+		for(int j = (i == 0) ? 1 : 0; j < array.length; ++j)
+			{
+			init = f.invoke(init, array[j]);
+			if(RT.isReduced(init))
+				return ((IDeref) init).deref();
+			}
+		step = array.length;
+		}
+	return init;
+}
+
+public Object reduce(IFn f, Object init){
+	int step = 0;
+	for(int i = 0; i < cnt; i += step)
+		{
+		Object[] array = arrayFor(i);
+		for(int j = 0; j < array.length; ++j)
+			{
+			init = f.invoke(init, array[j]);
+			if(RT.isReduced(init))
+				return ((IDeref) init).deref();
+			}
+		step = array.length;
+		}
+	return init;
+}
+
+public Object kvreduce(IFn f, Object init){
+	int step = 0;
+	for(int i = 0; i < cnt; i += step)
+		{
+		Object[] array = arrayFor(i);
+		for(int j = 0; j < array.length; ++j)
+			{
+			init = f.invoke(init, j + i, array[j]);
+			if(RT.isReduced(init))
+				return ((IDeref) init).deref();
+			}
+		step = array.length;
+		}
+	return init;
+}
+
+static public final class ChunkedSeq extends ASeq implements IChunkedSeq, Counted{
+
+	final RRBVector vec;
+	final Object[] node;
+	final int i;
+	final int offset;
+
+	ChunkedSeq(RRBVector vec, Object[] node, int i, int offset){
+		this.vec = vec;
+		this.node = node;
+		this.i = i;
+		this.offset = offset;
+	}
+
+	ChunkedSeq(IPersistentMap meta, RRBVector vec, Object[] node, int i, int offset){
+		super(meta);
+		this.vec = vec;
+		this.node = node;
+		this.i = i;
+		this.offset = offset;
+	}
+
+	public IChunk chunkedFirst(){
+		return new ArrayChunk(node, offset);
+	}
+
+	public ISeq chunkedNext(){
+		int next = i + node.length;
+		if(next < vec.cnt)
+			return new ChunkedSeq(vec, vec.arrayFor(next), next, 0);
+		return null;
+	}
+
+	public ISeq chunkedMore(){
+		ISeq s = chunkedNext();
+		if(s == null)
+			return PersistentList.EMPTY;
+		return s;
+	}
+
+	public Obj withMeta(IPersistentMap meta){
+		if(meta == this._meta)
+			return this;
+		return new ChunkedSeq(meta, vec, node, i, offset);
+	}
+
+	public Object first(){
+		return node[offset];
+	}
+
+	public ISeq next(){
+		if(offset + 1 < node.length)
+			return new ChunkedSeq(vec, node, i, offset + 1);
+		return chunkedNext();
+	}
+
+	public int count(){
+		return vec.cnt - (i + offset);
+	}
+}
+
+static public final class TransientRRBVector extends AFn implements ITransientVector, ITransientAssociative2, Counted{
+	final AtomicReference<Thread> edit;
+	volatile int cnt;
+	volatile int shift;
+	volatile Node root;
+	volatile Object[] tail;
+	volatile int tailLen;
+
+	TransientRRBVector(RRBVector v){
+		this.edit = new AtomicReference<Thread>(Thread.currentThread());
+		this.cnt = v.cnt;
+		this.shift = v.shift;
+		this.root = v.root;
+		this.tail = Arrays.copyOf(v.tail, 32);
+		this.tailLen = v.tail.length;
+	}
+
+	void ensureEditable(){
+		if(edit.get() == null)
+			throw new IllegalAccessError("Transient used after persistent! call");
+	}
+
+	public int count(){
+		ensureEditable();
+		return cnt;
+	}
+
+	public RRBVector persistent(){
+		ensureEditable();
+		edit.set(null);
+		return new RRBVector(null, cnt, shift, root, Arrays.copyOf(tail, tailLen));
+	}
+
+	public TransientRRBVector conj(Object val){
+		ensureEditable();
+		if(tailLen < 32)
+			{
+			tail[tailLen++] = val;
+			++cnt;
+			return this;
+			}
+		Node leaf = new Node(edit, tail);
+		Node newroot = pushLeaf(edit, shift, root, leaf);
+		if(newroot == null)
+			{
+			newroot = growRoot(edit, shift, root, leaf);
+			shift += 5;
+			}
+		root = newroot;
+		tail = new Object[32];
+		tail[0] = val;
+		tailLen = 1;
+		++cnt;
+		return this;
+	}
+
+	public Object valAt(Object key){
+		//note - relies on ensureEditable in 2-arg valAt
+		return valAt(key, null);
+	}
+
+	public Object valAt(Object key, Object notFound){
+		ensureEditable();
+		if(Util.isInteger(key))
+			{
+			int i = ((Number) key).intValue();
+			if(i >= 0 && i < cnt)
+				return nth(i);
+			}
+		return notFound;
+	}
+
+	private static final Object NOT_FOUND = new Object();
+	public final boolean containsKey(Object key){
+		return valAt(key, NOT_FOUND) != NOT_FOUND;
+	}
+
+	public final IMapEntry entryAt(Object key){
+		Object v = valAt(key, NOT_FOUND);
+		if(v != NOT_FOUND)
+			return MapEntry.create(key, v);
+		return null;
+	}
+
+	public Object invoke(Object arg1){
+		//note - relies on ensureEditable in nth
+		if(Util.isInteger(arg1))
+			return nth(((Number) arg1).intValue());
+		throw new IllegalArgumentException("Key must be integer");
+	}
+
+	public Object nth(int i){
+		ensureEditable();
+		if(i >= 0 && i < cnt)
+			{
+			int tailoff = cnt - tailLen;
+			if(i >= tailoff)
+				return tail[i - tailoff];
+			return lookup(root, shift, i);
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public Object nth(int i, Object notFound){
+		if(i >= 0 && i < count())
+			return nth(i);
+		return notFound;
+	}
+
+	public TransientRRBVector assocN(int i, Object val){
+		ensureEditable();
+		if(i >= 0 && i < cnt)
+			{
+			int tailoff = cnt - tailLen;
+			if(i >= tailoff)
+				tail[i - tailoff] = val;
+			else
+				root = doAssoc(edit, shift, root, i, val);
+			return this;
+			}
+		if(i == cnt)
+			return conj(val);
+		throw new IndexOutOfBoundsException();
+	}
+
+	public TransientRRBVector assoc(Object key, Object val){
+		//note - relies on ensureEditable in assocN
+		if(Util.isInteger(key))
+			return assocN(((Number) key).intValue(), val);
+		throw new IllegalArgumentException("Key must be integer");
+	}
+
+	public TransientRRBVector pop(){
+		ensureEditable();
+		if(cnt == 0)
+			throw new IllegalStateException("Can't pop empty vector");
+		if(tailLen > 1 || cnt == 1)
+			{
+			tail[--tailLen] = null;
+			--cnt;
+			return this;
+			}
+		Object[] leaf = lastLeaf(root, shift).array;
+		Node newroot = popLeaf(edit, shift, root, leaf.length);
+		int[] newshift = {shift};
+		if(newroot == null)
+			{
+			newroot = PersistentVector.EMPTY_NODE;
+			newshift[0] = 5;
+			}
+		root = collapse(newroot, newshift);
+		shift = newshift[0];
+		tail = Arrays.copyOf(leaf, 32);
+		tailLen = leaf.length;
+		--cnt;
+		return this;
+	}
+}
+}
@@ -304,7 +304,8 @@ static public void addURL(Object url) throws MalformedURLException{
 public static boolean checkSpecAsserts = Boolean.getBoolean("clojure.spec.check-asserts");
 public static boolean instrumentMacros = ! Boolean.getBoolean("clojure.spec.skip-macros");
 
-static IPersistentSet loadedPaths = set();
+//paths loaded, added to by threads loading namespaces in parallel
+static final Set<String> loadedPaths = java.util.concurrent.ConcurrentHashMap.newKeySet();
 
 static volatile boolean CHECK_SPECS = false;
 
@@ -460,7 +461,7 @@ static public void load(String scriptbase, boolean failIfNotFound) throws IOExce
             String className = scriptbase.replace('/', '.') + LOADER_SUFFIX;
             loaded = (classForNameNonLoadingSafe(className) != null);
             if (loaded && !loadedPaths.contains(scriptbase))
-                loadClassForName(className);
+                loadInitClass(scriptbase, className);
 		}
 		finally {
 			Var.popThreadBindings();
@@ -477,7 +478,26 @@ static public void load(String scriptbase, boolean failIfNotFound) throws IOExce
 		throw new FileNotFoundException(String.format("Could not locate %s, %s or %s on classpath.%s", classfile, cljfile, cljcfile,
 			scriptbase.contains("_") ? " Please check that namespaces with dashes use underscores in the Clojure file name." : ""));
     if(loaded)
-        loadedPaths = (IPersistentSet) loadedPaths.cons(scriptbase);
+        loadedPaths.add(scriptbase);
+}
+
+static void loadInitClass(String scriptbase, String className){
+	if(!LoadProfile.ENABLED)
+		{
+		loadClassForName(className);
+		return;
+		}
+	LoadProfile.beginLoad(scriptbase);
+	LoadProfile.enter(LoadProfile.INIT);
+	try
+		{
+		loadClassForName(className);
+		}
+	finally
+		{
+		LoadProfile.exit();
+		LoadProfile.endLoad();
+		}
 }
 
 static public void init() {
@@ -1631,6 +1651,8 @@ static public IPersistentVector vector(Object... init){
 static public IPersistentVector subvec(IPersistentVector v, int start, int end){
 	if(end < start || start < 0 || end > v.count())
 		throw new IndexOutOfBoundsException();
+	if(v instanceof RRBVector)
+		return ((RRBVector) v).slice(start, end);
 	if(start == end)
 		return PersistentVector.EMPTY;
 	return new APersistentVector.SubVector(null, v, start, end);
@@ -12,6 +12,7 @@ package clojure.lang;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Implements generic numeric (potentially infinite) range.
@@ -188,6 +189,46 @@ public Object reduce(IFn f, Object val) {
     return acc;
 }
 
+public Object fold(long n, final IFn combinef, final IFn reducef,
+                   IFn fjinvoke, final IFn fjtask, final IFn fjfork, final IFn fjjoin) {
+    // start + k * step only matches stepping k times when the arithmetic is exact
+    if(isFloat(start) || isFloat(step))
+        return reduce(reducef, combinef.invoke());
+    final long leaf = Math.max(n, 1);
+    Callable top = new Callable(){
+        public Object call() throws Exception {
+            return foldRange(Range.this, leaf, combinef, reducef, fjtask, fjfork, fjjoin);
+        }
+    };
+    return fjinvoke.invoke(top);
+}
+
+private static boolean isFloat(Object x) {
+    return x instanceof Double || x instanceof Float;
+}
+
+static Object foldRange(Range r, final long n, final IFn combinef, final IFn reducef,
+                        final IFn fjtask, final IFn fjfork, final IFn fjjoin) {
+    // about the count, which is all splitting needs; saturates for huge ranges
+    long count = (long) Numbers.quotient(Numbers.minusP(r.end, r.start), r.step).doubleValue();
+    if(count <= n)
+        return r.reduce(reducef, combinef.invoke());
+    Object mid = Numbers.addP(r.start, Numbers.multiplyP(count / 2, r.step));
+    final Range right = new Range(mid, r.end, r.step, r.boundsCheck);
+    Object forked = fjfork.invoke(fjtask.invoke(new Callable(){
+        public Object call() throws Exception {
+            return foldRange(right, n, combinef, reducef, fjtask, fjfork, fjjoin);
+        }
+    }));
+    Range left = new Range(r.start, mid, r.step, r.boundsCheck(mid));
+    return combinef.invoke(foldRange(left, n, combinef, reducef, fjtask, fjfork, fjjoin),
+                           fjjoin.invoke(forked));
+}
+
+private BoundsCheck boundsCheck(Object end) {
+    return Numbers.isPos(step) ? positiveStep(end) : negativeStep(end);
+}
+
 public Iterator iterator() {
     return new RangeIterator();
 }
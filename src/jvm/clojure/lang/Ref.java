@@ -14,6 +14,7 @@ package clojure.lang;
 
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Ref extends ARef implements IFn, Comparable<Ref>, IRef{
@@ -72,6 +73,8 @@ TVal tvals;
 final AtomicInteger faults;
 final ReentrantReadWriteLock lock;
 LockingTransaction.Info tinfo;
+//versioned lock used by VersionedTransaction: commit point << 1, low bit set while committing
+volatile long stamp;
 //IFn validator;
 final long id;
 
@@ -79,6 +82,7 @@ volatile int minHistory = 0;
 volatile int maxHistory = 10;
 
 static final AtomicLong ids = new AtomicLong();
+static final AtomicLongFieldUpdater<Ref> STAMP = AtomicLongFieldUpdater.newUpdater(Ref.class, "stamp");
 
 public Ref(Object initVal) {
 	this(initVal, null);
@@ -217,6 +221,11 @@ public int getHistoryCount(){
 		}	
 }
 
+//read faults not yet answered by growing the history
+public int getFaults(){
+	return faults.get();
+}
+
 int histCount(){
 	if(tvals == null)
 		return 0;
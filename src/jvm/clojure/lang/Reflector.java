@@ -20,6 +20,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class Reflector{
@@ -93,13 +94,84 @@ private static Method toAccessibleSuperMethod(Method m, Object target) {
 	return null;
 }
 
+//Method resolution depends only on the receiver class, the name and the classes
+//of the args (null for nil), so the method found is cached on that key
+static final class MethodKey{
+	final String name;
+	final Class[] argTypes;
+	final int hash;
+
+	MethodKey(String name, Object[] args){
+		this.name = name;
+		this.argTypes = new Class[args.length];
+		int h = name.hashCode();
+		for(int i = 0; i < args.length; i++)
+			{
+			Class argType = args[i] == null ? null : args[i].getClass();
+			argTypes[i] = argType;
+			h = 31 * h + (argType == null ? 0 : argType.hashCode());
+			}
+		this.hash = h;
+	}
+
+	public int hashCode(){
+		return hash;
+	}
+
+	public boolean equals(Object o){
+		if(!(o instanceof MethodKey))
+			return false;
+		MethodKey k = (MethodKey) o;
+		return hash == k.hash && name.equals(k.name) && Arrays.equals(argTypes, k.argTypes);
+	}
+}
+
+//a class's cache stops taking new name/arg type combinations once it holds this many
+static final int METHOD_CACHE_LIMIT = 256;
+
+static final class MethodCache extends ClassValue<ConcurrentHashMap<MethodKey, Method>>{
+	protected ConcurrentHashMap<MethodKey, Method> computeValue(Class c){
+		return new ConcurrentHashMap<MethodKey, Method>();
+	}
+}
+
+static final MethodCache instanceMethods = new MethodCache();
+static final MethodCache staticMethods = new MethodCache();
+
+private static void cacheMethod(Class c, ConcurrentHashMap<MethodKey, Method> cache, MethodKey key, Method m){
+	//the cache lives as long as c, so it must not be the only thing keeping
+	//an arg's class from a DynamicClassLoader from being unloaded
+	for(Class argType : key.argTypes)
+		if(argType != null && argType.getClassLoader() instanceof DynamicClassLoader
+		   && !loadsWith(argType.getClassLoader(), c.getClassLoader()))
+			return;
+	if(cache.size() < METHOD_CACHE_LIMIT)
+		cache.putIfAbsent(key, m);
+}
+
+//whether loader is the loader of c, or one of its ancestors
+private static boolean loadsWith(ClassLoader loader, ClassLoader cLoader){
+	for(ClassLoader l = cLoader; l != null; l = l.getParent())
+		if(l == loader)
+			return true;
+	return false;
+}
+
 public static Object invokeInstanceMethod(Object target, String methodName, Object[] args) {
 	Class c = target.getClass();
-	List methods = getMethods(c, args.length, methodName, false).stream()
-					.map(method -> toAccessibleSuperMethod(method, target))
-					.filter(method -> (method != null))
-					.collect(Collectors.toList());
-	return invokeMatchingMethod(methodName, methods, target, args);
+	ConcurrentHashMap<MethodKey, Method> cache = instanceMethods.get(c);
+	MethodKey key = new MethodKey(methodName, args);
+	Method m = cache.get(key);
+	if(m == null)
+		{
+		List methods = getMethods(c, args.length, methodName, false).stream()
+						.map(method -> toAccessibleSuperMethod(method, target))
+						.filter(method -> (method != null))
+						.collect(Collectors.toList());
+		m = matchingMethod(methodName, methods, target, args);
+		cacheMethod(c, cache, key, m);
+		}
+	return invokeMethod(m, target, args);
 }
 
 private static Throwable getCauseOrElse(Exception e) {
@@ -120,8 +192,12 @@ private static String noMethodReport(String methodName, Object target, Object[]
 }
 static Object invokeMatchingMethod(String methodName, List methods, Object target, Object[] args)
 		{
+	return invokeMethod(matchingMethod(methodName, methods, target, args), target, args);
+}
+
+//returns the accessible method of methods to call for args, or throws
+static Method matchingMethod(String methodName, List methods, Object target, Object[] args){
 	Method m = null;
-	Object[] boxedArgs = null;
 	if(methods.isEmpty())
 		{
 		throw new IllegalArgumentException(noMethodReport(methodName,target,args));
@@ -129,7 +205,6 @@ static Object invokeMatchingMethod(String methodName, List methods, Object targe
 	else if(methods.size() == 1)
 		{
 		m = (Method) methods.get(0);
-		boxedArgs = boxArgs(m.getParameterTypes(), args);
 		}
 	else //overloaded w/same arity
 		{
@@ -144,7 +219,6 @@ static Object invokeMatchingMethod(String methodName, List methods, Object targe
 				if(foundm == null || Compiler.subsumes(params, foundm.getParameterTypes()))
 					{
 					foundm = m;
-					boxedArgs = boxArgs(params, args);
 					}
 				}
 			}
@@ -162,6 +236,11 @@ static Object invokeMatchingMethod(String methodName, List methods, Object targe
 			throw new IllegalArgumentException("Can't call public method of non-public class: " +
 			                                    oldm.toString());
 		}
+	return m;
+}
+
+static Object invokeMethod(Method m, Object target, Object[] args){
+	Object[] boxedArgs = boxArgs(m.getParameterTypes(), args);
 	try
 		{
 		return prepRet(m.getReturnType(), m.invoke(target, boxedArgs));
@@ -170,7 +249,6 @@ static Object invokeMatchingMethod(String methodName, List methods, Object targe
 		{
 		throw Util.sneakyThrow(getCauseOrElse(e));
 		}
-
 }
 
 // DEPRECATED - replaced by getAsMethodOfAccessibleBase()
@@ -328,8 +406,16 @@ public static Object invokeStaticMethod(String className, String methodName, Obj
 public static Object invokeStaticMethod(Class c, String methodName, Object[] args) {
 	if(methodName.equals("new"))
 		return invokeConstructor(c, args);
-	List methods = getMethods(c, args.length, methodName, true);
-	return invokeMatchingMethod(methodName, methods, null, args);
+	ConcurrentHashMap<MethodKey, Method> cache = staticMethods.get(c);
+	MethodKey key = new MethodKey(methodName, args);
+	Method m = cache.get(key);
+	if(m == null)
+		{
+		List methods = getMethods(c, args.length, methodName, true);
+		m = matchingMethod(methodName, methods, null, args);
+		cacheMethod(c, cache, key, m);
+		}
+	return invokeMethod(m, null, args);
 }
 
 public static Object getStaticField(String className, String fieldName) {
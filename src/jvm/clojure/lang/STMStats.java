@@ -0,0 +1,175 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * Process wide counters for the STM, off unless clojure.stm.stats=true or
+ * enabled at runtime. When started enabled they are also published as the
+ * MBean clojure.lang:type=STMStats. Per ref history size and faults are
+ * available from the Ref itself.
+ */
+public class STMStats implements STMStatsMBean{
+
+public static final String OBJECT_NAME = "clojure.lang:type=STMStats";
+
+static volatile boolean enabled;
+
+static final LongAdder transactions = new LongAdder();
+static final LongAdder retries = new LongAdder();
+static final AtomicLong maxRetries = new AtomicLong();
+static final LongAdder retryLimitFailures = new LongAdder();
+static final LongAdder barges = new LongAdder();
+static final LongAdder lockWaitNanos = new LongAdder();
+static final LongAdder commuteReexecutions = new LongAdder();
+static final LongAdder historyFaults = new LongAdder();
+static final LongAdder historyGrowths = new LongAdder();
+
+static final STMStats INSTANCE = new STMStats();
+
+static
+	{
+	if(Boolean.getBoolean("clojure.stm.stats"))
+		{
+		enabled = true;
+		register();
+		}
+	}
+
+static public boolean isEnabled(){
+	return enabled;
+}
+
+static public void setEnabled(boolean on){
+	enabled = on;
+}
+
+static public void register(){
+	try
+		{
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if(!ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+			ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, name);
+		}
+	catch(Exception e)
+		{
+		throw Util.sneakyThrow(e);
+		}
+}
+
+//called once per transaction, committed or not, with the number of retries it took
+static void recordTransaction(int nretries, boolean reachedRetryLimit){
+	transactions.increment();
+	if(nretries > 0)
+		{
+		retries.add(nretries);
+		long max;
+		while(nretries > (max = maxRetries.get()) && !maxRetries.compareAndSet(max, nretries))
+			;
+		}
+	if(reachedRetryLimit)
+		retryLimitFailures.increment();
+}
+
+static void recordBarge(){
+	barges.increment();
+}
+
+static void recordLockWait(long nanos){
+	lockWaitNanos.add(nanos);
+}
+
+static void recordCommutes(int n){
+	commuteReexecutions.add(n);
+}
+
+static void recordFault(){
+	historyFaults.increment();
+}
+
+static void recordGrowth(){
+	historyGrowths.increment();
+}
+
+static public IPersistentMap snapshot(){
+	return RT.map(
+			Keyword.intern("enabled"), enabled,
+			Keyword.intern("transactions"), transactions.sum(),
+			Keyword.intern("retries"), retries.sum(),
+			Keyword.intern("max-retries"), maxRetries.get(),
+			Keyword.intern("retry-limit-failures"), retryLimitFailures.sum(),
+			Keyword.intern("barges"), barges.sum(),
+			Keyword.intern("lock-wait-nanos"), lockWaitNanos.sum(),
+			Keyword.intern("commute-reexecutions"), commuteReexecutions.sum(),
+			Keyword.intern("history-faults"), historyFaults.sum(),
+			Keyword.intern("history-growths"), historyGrowths.sum());
+}
+
+static public void reset(){
+	transactions.reset();
+	retries.reset();
+	maxRetries.set(0);
+	retryLimitFailures.reset();
+	barges.reset();
+	lockWaitNanos.reset();
+	commuteReexecutions.reset();
+	historyFaults.reset();
+	historyGrowths.reset();
+}
+
+public boolean getEnabled(){
+	return enabled;
+}
+
+public long getTransactions(){
+	return transactions.sum();
+}
+
+public long getRetries(){
+	return retries.sum();
+}
+
+public long getMaxRetries(){
+	return maxRetries.get();
+}
+
+public long getRetryLimitFailures(){
+	return retryLimitFailures.sum();
+}
+
+public long getBarges(){
+	return barges.sum();
+}
+
+public long getLockWaitNanos(){
+	return lockWaitNanos.sum();
+}
+
+public long getCommuteReexecutions(){
+	return commuteReexecutions.sum();
+}
+
+public long getHistoryFaults(){
+	return historyFaults.sum();
+}
+
+public long getHistoryGrowths(){
+	return historyGrowths.sum();
+}
+
+public void resetCounters(){
+	reset();
+}
+}
@@ -14,6 +14,7 @@ package clojure.lang;
 
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.lang.invoke.SwitchPoint;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 
@@ -47,7 +48,11 @@ static public class Unbound extends AFn{
 }
 
 static class Frame{
-    final static Frame TOP = new Frame(PersistentHashMap.EMPTY, null);
+    final static Frame TOP = new Frame(new Object[0], null, null);
+    //frames binding no more than this many vars keep them in an array
+    final static int MAX_ARRAY_BINDINGS = 8;
+    //Var,TBox pairs, scanned by identity, or null if bindings is used
+    final Object[] array;
     //Var->TBox
     IEditableMap bindings;
     //Var->val
@@ -55,13 +60,43 @@ static class Frame{
     Frame prev;
 
     public Frame(IEditableMap bindings, Frame prev){
+        this(null, bindings, prev);
+	}
+
+    Frame(Object[] array, IEditableMap bindings, Frame prev){
 //		this.frameBindings = frameBindings;
+        this.array = array;
         this.bindings = bindings;
         this.prev = prev;
 	}
 
+    TBox get(Var v){
+        if(array != null)
+            {
+            for(int i = 0; i < array.length; i += 2)
+                if(array[i] == v)
+                    return (TBox) array[i + 1];
+            return null;
+            }
+        IMapEntry e = bindings.entryAt(v);
+        return e == null ? null : (TBox) e.val();
+    }
+
+    int count(){
+        return array != null ? array.length / 2 : bindings.count();
+    }
+
+    IEditableMap bindingMap(){
+        if(array == null)
+            return bindings;
+        ITransientMap ret = PersistentHashMap.EMPTY.asTransient();
+        for(int i = 0; i < array.length; i += 2)
+            ret = ret.assoc(array[i], array[i + 1]);
+        return (IEditableMap) ret.persistent();
+    }
+
     	protected Object clone() {
-		return new Frame(this.bindings, null);
+		return new Frame(this.array, this.bindings, null);
     	}
 
 }
@@ -84,6 +119,12 @@ static Keyword nsKey = Keyword.intern(null, "ns");
 
 volatile Object root;
 
+//guards VarCallSites linked to the current root, replaced on each root change
+transient volatile SwitchPoint rootSwitchPoint;
+transient int rootSwitchPointsInvalidated;
+//after this many root changes call sites stop linking the root in
+static final int ROOT_SWITCH_POINT_LIMIT = 64;
+
 volatile boolean dynamic = false;
 transient final AtomicBoolean threadBound;
 public final Symbol sym;
@@ -187,7 +228,7 @@ Var(Namespace ns, Symbol sym, Object root){
 }
 
 public boolean isBound(){
-	return hasRoot() || (threadBound.get() && dvals.get().bindings.containsKey(this));
+	return hasRoot() || (threadBound.get() && dvals.get().get(this) != null);
 }
 
 final public Object get(){
@@ -278,6 +319,7 @@ synchronized public void bindRoot(Object root){
 	Object oldroot = this.root;
 	this.root = root;
 	++rev;
+	invalidateRootSwitchPoint();
         alterMeta(dissoc, RT.list(macroKey));
     notifyWatches(oldroot,this.root);
 }
@@ -287,12 +329,40 @@ synchronized void swapRoot(Object root){
 	Object oldroot = this.root;
 	this.root = root;
 	++rev;
+	invalidateRootSwitchPoint();
     notifyWatches(oldroot,root);
 }
 
+//null once the root has changed too often to be worth linking in
+SwitchPoint rootSwitchPoint(){
+	SwitchPoint sp = rootSwitchPoint;
+	if(sp == null)
+		{
+		synchronized(this)
+			{
+			sp = rootSwitchPoint;
+			if(sp == null && rootSwitchPointsInvalidated < ROOT_SWITCH_POINT_LIMIT)
+				rootSwitchPoint = sp = new SwitchPoint();
+			}
+		}
+	return sp;
+}
+
+//caller holds the lock and has already set the new root
+void invalidateRootSwitchPoint(){
+	SwitchPoint sp = rootSwitchPoint;
+	if(sp != null)
+		{
+		rootSwitchPoint = null;
+		++rootSwitchPointsInvalidated;
+		SwitchPoint.invalidateAll(new SwitchPoint[]{sp});
+		}
+}
+
 synchronized public void unbindRoot(){
 	this.root = new Unbound(this);
 	++rev;
+	invalidateRootSwitchPoint();
 }
 
 synchronized public void commuteRoot(IFn fn) {
@@ -301,6 +371,7 @@ synchronized public void commuteRoot(IFn fn) {
 	Object oldroot = root;
 	this.root = newRoot;
 	++rev;
+	invalidateRootSwitchPoint();
     notifyWatches(oldroot,newRoot);
 }
 
@@ -310,13 +381,26 @@ synchronized public Object alterRoot(IFn fn, ISeq args) {
 	Object oldroot = root;
 	this.root = newRoot;
 	++rev;
+	invalidateRootSwitchPoint();
     notifyWatches(oldroot,newRoot);
 	return newRoot;
 }
 
 public static void pushThreadBindings(Associative bindings){
 	Frame f = dvals.get();
-    ITransientMap bmap = f.bindings.asTransient();
+	Thread t = Thread.currentThread();
+	//few bindings, the common case, are copied into a small array rather than a new map
+	Object[] a = null;
+	int n = 0;
+	ITransientMap bmap = null;
+	if(f.array != null && f.count() + bindings.count() <= Frame.MAX_ARRAY_BINDINGS)
+		{
+		n = f.array.length;
+		a = new Object[n + 2 * bindings.count()];
+		System.arraycopy(f.array, 0, a, 0, n);
+		}
+	else
+		bmap = f.bindingMap().asTransient();
 	for(ISeq bs = bindings.seq(); bs != null; bs = bs.next())
 		{
 		IMapEntry e = (IMapEntry) bs.first();
@@ -325,9 +409,32 @@ public static void pushThreadBindings(Associative bindings){
 			throw new IllegalStateException(String.format("Can't dynamically bind non-dynamic var: %s/%s", v.ns, v.sym));
 		v.validate(v.getValidator(), e.val());
 		v.threadBound.set(true);
-		bmap = bmap.assoc(v, new TBox(Thread.currentThread(), e.val()));
+		TBox b = new TBox(t, e.val());
+		if(a == null)
+			bmap = bmap.assoc(v, b);
+		else
+			{
+			int i = 0;
+			while(i < n && a[i] != v)
+				i += 2;
+			a[i] = v;
+			a[i + 1] = b;
+			if(i == n)
+				n += 2;
+			}
+		}
+	if(a == null)
+		dvals.set(new Frame((IEditableMap) bmap.persistent(), f));
+	else
+		{
+		if(n < a.length)
+			{
+			Object[] trimmed = new Object[n];
+			System.arraycopy(a, 0, trimmed, 0, n);
+			a = trimmed;
+			}
+		dvals.set(new Frame(a, null, f));
 		}
-    dvals.set(new Frame((IEditableMap) bmap.persistent(), f));
 }
 
 public static void popThreadBindings(){
@@ -344,6 +451,12 @@ public static void popThreadBindings(){
 public static Associative getThreadBindings(){
     Frame f = dvals.get();
     ITransientMap ret = PersistentHashMap.EMPTY.asTransient();
+    if(f.array != null)
+        {
+        for(int i = 0; i < f.array.length; i += 2)
+            ret = ret.assoc(f.array[i], ((TBox) f.array[i + 1]).val);
+        return ret.persistent();
+        }
     for(ISeq bs = f.bindings.seq(); bs != null; bs = bs.next())
         {
         IMapEntry e = (IMapEntry) bs.first();
@@ -356,11 +469,7 @@ public static Associative getThreadBindings(){
 
 public final TBox getThreadBinding(){
 	if(threadBound.get())
-		{
-		IMapEntry e = dvals.get().bindings.entryAt(this);
-		if(e != null)
-			return (TBox) e.val();
-		}
+		return dvals.get().get(this);
 	return null;
 }
 
@@ -0,0 +1,81 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.SwitchPoint;
+
+/**
+ * Fetches the fn for (f args*) on a non-dynamic var when compiled with the
+ * :indy-linking compiler option, in place of Var.getRawRoot(). The site is
+ * called with the Var and links its current root in as a constant, guarded
+ * by the var's root SwitchPoint, so the JIT can inline the call as if direct
+ * linked while redefining the var still relinks the site on its next call.
+ * Vars whose root keeps changing stop handing out SwitchPoints, their sites
+ * then just call getRawRoot.
+ *
+ * <p>Only the fn goes through the site, the args are passed to IFn.invoke as
+ * usual so locals clearing is unaffected.</p>
+ */
+public final class VarCallSite extends MutableCallSite{
+
+static final MethodType TYPE = MethodType.methodType(Object.class, Var.class);
+static final MethodHandle LINK;
+static final MethodHandle GET_RAW_ROOT;
+
+static
+	{
+	try
+		{
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		LINK = lookup.findVirtual(VarCallSite.class, "link", TYPE);
+		GET_RAW_ROOT = lookup.findVirtual(Var.class, "getRawRoot", MethodType.methodType(Object.class));
+		}
+	catch(ReflectiveOperationException e)
+		{
+		throw Util.sneakyThrow(e);
+		}
+	}
+
+final MethodHandle relink;
+
+VarCallSite(){
+	super(TYPE);
+	this.relink = LINK.bindTo(this);
+	setTarget(relink);
+}
+
+/**
+ * Bootstrap method for invokedynamic instructions of type (Var)Object.
+ */
+public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type){
+	if(!type.equals(TYPE))
+		throw new IllegalArgumentException("Unsupported var call site type: " + type);
+	return new VarCallSite();
+}
+
+Object link(Var v){
+	//read the SwitchPoint before the root, a root change after this invalidates it
+	SwitchPoint sp = v.rootSwitchPoint();
+	Object root = v.getRawRoot();
+	if(sp == null)
+		setTarget(GET_RAW_ROOT);
+	else
+		setTarget(sp.guardWithTest(
+				MethodHandles.dropArguments(MethodHandles.constant(Object.class, root), 0, Var.class),
+				relink));
+	return root;
+}
+}
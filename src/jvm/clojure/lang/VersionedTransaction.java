@@ -0,0 +1,267 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A TL2 style alternative to the lock based commit of LockingTransaction,
+ * used for every transaction when clojure.stm.engine=tl2.
+ *
+ * <p>Writes are buffered until commit, when the refs written, commuted and
+ * ensured are locked in id order by setting the low bit of their stamp
+ * (commit point << 1). Sets and ensures fail if a newer version has been
+ * committed since the read point, commutes are re-run on the latest value,
+ * then a commit point is taken and the values are written back. There is no
+ * barging, a conflicting transaction just retries after a short randomized
+ * backoff. Reads do not consume a point, they see the history as of the
+ * last commit and wait out a commit in progress on the ref being read.</p>
+ *
+ * <p>Ensure only locks at commit time, so it conflicts with writes that
+ * commit before us, rather than keeping other writers out for the whole
+ * transaction.</p>
+ */
+class VersionedTransaction extends LockingTransaction{
+
+static final int SPIN_LIMIT = 100;
+static final long LOCK_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(LOCK_WAIT_MSECS);
+
+final TreeSet<Ref> lockSet = new TreeSet<Ref>();
+
+void getReadPoint(){
+	readPoint = lastPoint.get();
+}
+
+static long version(Ref ref){
+	return ref.stamp >>> 1;
+}
+
+//returns the (unlocked) stamp once no commit is in progress on ref
+long awaitStamp(Ref ref){
+	long s = ref.stamp;
+	if((s & 1) == 0)
+		return s;
+	long start = System.nanoTime();
+	try
+		{
+		for(int spins = 0; ; spins++)
+			{
+			if(spins > SPIN_LIMIT)
+				{
+				if(System.nanoTime() - start > LOCK_WAIT_NANOS)
+					throw retryex;
+				Thread.yield();
+				}
+			s = ref.stamp;
+			if((s & 1) == 0)
+				return s;
+			}
+		}
+	finally
+		{
+		if(STMStats.enabled)
+			STMStats.recordLockWait(System.nanoTime() - start);
+		}
+}
+
+void lockStamp(Ref ref){
+	for(; ;)
+		{
+		long s = awaitStamp(ref);
+		if(Ref.STAMP.compareAndSet(ref, s, s | 1))
+			return;
+		}
+}
+
+static void backoff(int attempt){
+	LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(1000L << Math.min(attempt, 10)));
+}
+
+Object run(Callable fn) throws Exception{
+	boolean done = false;
+	Object ret = null;
+	long commitPoint = 0;
+	ArrayList<Ref> locked = new ArrayList<Ref>();
+	ArrayList<Notify> notify = new ArrayList<Notify>();
+
+	int i = 0;
+	for(; !done && i < RETRY_LIMIT; i++)
+		{
+		try
+			{
+			if(i > 0)
+				backoff(i);
+			getReadPoint();
+			if(i == 0)
+				{
+				startPoint = readPoint;
+				startTime = System.nanoTime();
+				}
+			info = new Info(RUNNING, startPoint);
+			ret = fn.call();
+			info.status.set(COMMITTING);
+
+			lockSet.addAll(sets);
+			lockSet.addAll(commutes.keySet());
+			lockSet.addAll(ensures);
+			for(Ref ref : lockSet)
+				{
+				lockStamp(ref);
+				locked.add(ref);
+				}
+
+			//someone completed a write after our snapshot
+			for(Ref ref : sets)
+				if(version(ref) > readPoint)
+					throw retryex;
+			for(Ref ref : ensures)
+				if(version(ref) > readPoint)
+					throw retryex;
+
+			for(Map.Entry<Ref, ArrayList<CFn>> e : commutes.entrySet())
+				{
+				Ref ref = e.getKey();
+				if(sets.contains(ref)) continue;
+
+				Object val = ref.tvals == null ? null : ref.tvals.val;
+				for(CFn f : e.getValue())
+					{
+					val = f.fn.applyTo(RT.cons(val, f.args));
+					}
+				if(STMStats.enabled)
+					STMStats.recordCommutes(e.getValue().size());
+				vals.put(ref, val);
+				}
+
+			for(Map.Entry<Ref, Object> e : vals.entrySet())
+				{
+				Ref ref = e.getKey();
+				ref.validate(ref.getValidator(), e.getValue());
+				}
+
+			//at this point, all values calced, all refs to be written locked
+			//no more client code to be called
+			commitPoint = getCommitPoint();
+			for(Map.Entry<Ref, Object> e : vals.entrySet())
+				{
+				Ref ref = e.getKey();
+				Object oldval = ref.tvals == null ? null : ref.tvals.val;
+				Object newval = e.getValue();
+				//excludes non-transactional readers of the history
+				ref.lock.writeLock().lock();
+				try
+					{
+					writeVal(ref, newval, commitPoint);
+					}
+				finally
+					{
+					ref.lock.writeLock().unlock();
+					}
+				if(ref.getWatches().count() > 0)
+					notify.add(new Notify(ref, oldval, newval));
+				}
+
+			done = true;
+			info.status.set(COMMITTED);
+			}
+		catch(RetryEx retry)
+			{
+			//eat this so we retry rather than fall out
+			}
+		catch(Throwable e)
+			{
+			//the transaction ends here, after i retries
+			if(STMStats.enabled)
+				STMStats.recordTransaction(i, false);
+			throw e;
+			}
+		finally
+			{
+			for(int k = locked.size() - 1; k >= 0; --k)
+				{
+				Ref ref = locked.get(k);
+				if(done && vals.containsKey(ref))
+					ref.stamp = commitPoint << 1;
+				else
+					ref.stamp = ref.stamp & ~1L;
+				}
+			locked.clear();
+			lockSet.clear();
+			ensures.clear();
+			stop(done ? COMMITTED : RETRY);
+			try
+				{
+				if(done) //re-dispatch out of transaction
+					{
+					for(Notify n : notify)
+						{
+						n.ref.notifyWatches(n.oldval, n.newval);
+						}
+					for(Agent.Action action : actions)
+						{
+						Agent.dispatchCommitted(action);
+						}
+					}
+				}
+			finally
+				{
+				notify.clear();
+				actions.clear();
+				}
+			}
+		}
+	if(STMStats.enabled)
+		STMStats.recordTransaction(i - 1, !done);
+	if(!done)
+		throw Util.runtimeException("Transaction failed after reaching retry limit");
+	return ret;
+}
+
+Object doGet(Ref ref){
+	if(!info.running())
+		throw retryex;
+	if(vals.containsKey(ref))
+		return vals.get(ref);
+	//a commit in progress may be writing a point we can see
+	awaitStamp(ref);
+	return super.doGet(ref);
+}
+
+Object doSet(Ref ref, Object val){
+	if(!info.running())
+		throw retryex;
+	if(commutes.containsKey(ref))
+		throw new IllegalStateException("Can't set after commute");
+	if(!sets.contains(ref))
+		{
+		//doomed already, don't wait for commit to find out
+		if(version(ref) > readPoint)
+			throw retryex;
+		sets.add(ref);
+		}
+	vals.put(ref, val);
+	return val;
+}
+
+void doEnsure(Ref ref){
+	if(!info.running())
+		throw retryex;
+	if(version(ref) > readPoint)
+		throw retryex;
+	ensures.add(ref);
+}
+}
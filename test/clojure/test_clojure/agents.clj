@@ -154,6 +154,73 @@
       (.join))
     (is (= @a :thread-binding))))
 
+;; the first action is running, so a limit of 2 leaves room for one more
+(deftest queue-limit-blocks-direct-sends
+  (let [latch (CountDownLatch. 1)
+        a (agent [] :queue-limit 2)
+        sender (future
+                 (send-off a (fn [v] (.await latch) (conj v 0)))
+                 (send a conj 1)
+                 (send a conj 2)
+                 :sent)]
+    (is (= 2 (.getQueueLimit a)))
+    (is (= ::timeout (deref sender 200 ::timeout)))
+    (is (= 2 (.getQueueCount a)))
+    ;; sends from within an action don't wait for room
+    (let [b (agent nil)]
+      (send b (fn [_] (send a conj 3)))
+      (is (await-for fragile-wait b)))
+    (is (= 3 (.getQueueCount a)))
+    ;; nor do sends held by a transaction until it commits
+    (is (= :committed (deref (future (dosync (send a conj 4)) :committed) fragile-wait ::timeout)))
+    (is (= 4 (.getQueueCount a)))
+    (.countDown latch)
+    (is (= :sent (deref sender fragile-wait ::timeout)))
+    (is (await-for fragile-wait a))
+    (is (= #{0 1 2 3 4} (set @a)))
+    (is (thrown? IllegalArgumentException (.setQueueLimit a -1)))))
+
+(deftest batched-actions
+  (let [threads (atom #{})
+        latch (CountDownLatch. 1)
+        a (agent [] :batch-size 50)]
+    (is (= 50 (.getBatchSize a)))
+    (send a (fn [v] (.await latch) v))
+    (dotimes [i 100]
+      (send a (fn [v] (swap! threads conj (Thread/currentThread)) (conj v i))))
+    (.countDown latch)
+    (is (await-for fragile-wait a))
+    (is (= (range 100) @a))
+    ;; 101 actions in batches of 50 take at most 3 executor tasks
+    (is (<= 1 (count @threads) 3))
+    (is (thrown? IllegalArgumentException (.setBatchSize a 0))))
+  (testing "errors end the batch"
+    (let [a (agent 0 :batch-size 10 :error-mode :fail)]
+      (send a (fn [_] (Thread/sleep 50) 1))
+      (send a (fn [_] (throw (Exception. "boom"))))
+      (send a inc)
+      (Thread/sleep 200)
+      (is (agent-error a))
+      (is (= 1 @a))
+      (restart-agent a 10)
+      (is (await-for fragile-wait a))
+      (is (= 11 @a)))))
+
+(deftest virtual-thread-executor
+  (let [exec (clojure.lang.Agent/virtualThreadExecutor)
+        version (System/getProperty "java.specification.version")
+        major (Long/parseLong (if (.startsWith version "1.") (subs version 2) version))]
+    ;; virtual threads are there from Java 21
+    (is (= (>= major 21) (some? exec)))
+    (when exec
+      (let [a (agent 0)]
+        (try
+          (dotimes [_ 10] (send-via exec a inc))
+          (is (await-for fragile-wait a))
+          (is (= 10 @a))
+          (finally
+            (.shutdown ^java.util.concurrent.ExecutorService exec)))))))
+
 ;; check for a race condition that was causing seque to leak threads from the
 ;; send-off pool. Specifically, if we consume all items from the seque, and
 ;; the LBQ continues to grow, it means there was an agent action blocking on
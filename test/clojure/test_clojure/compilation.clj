@@ -13,7 +13,9 @@
   (:import (clojure.lang Compiler Compiler$CompilerException))
   (:require [clojure.test.generative :refer (defspec)]
             [clojure.data.generators :as gen]
-            [clojure.test-clojure.compilation.line-number-examples :as line])
+            [clojure.test-clojure.compilation.line-number-examples :as line]
+            clojure.java.shell
+            clojure.string)
   (:use clojure.test
         [clojure.test-helper :only (should-not-reflect should-print-err-message)]))
 
@@ -442,3 +444,102 @@
 (deftest CLJ-1550-dcl-package
   (let [pkg (.getPackage clojure.test_clojure.compilation.load_ns.x)]
     (is (= "clojure.test_clojure.compilation.load_ns" (and pkg (.getName pkg))))))
+
+(deftest indy-linking
+  (binding [*compiler-options* {:indy-linking true}
+            *ns* *ns*]
+    (let [ns-name (gensym "indy-linking")]
+      (try
+        (is (= [3 30 "abc" 210 :unbound]
+               (eval `(do (ns ~ns-name)
+                          (defn ~'add [a# b#] (+ a# b#))
+                          (defn ~'call-add [] (~'add 1 2))
+                          (def ~'r1 (~'call-add))
+                          ;; redefinition relinks the call site
+                          (defn ~'add [a# b#] (* 10 (+ a# b#)))
+                          (def ~'r2 (~'call-add))
+                          ;; roots that are not fns
+                          (def ~'r3 (let [~'s (fn [] (~'str "a" "b" "c"))] (~'s)))
+                          (defn ~'many [& xs#] (apply + xs#))
+                          (def ~'r4 (~'many 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20))
+                          (declare ~'later)
+                          (defn ~'call-later [] (try (~'later) (catch IllegalStateException e# :unbound)))
+                          [~'r1 ~'r2 ~'r3 ~'r4 (~'call-later)]))))
+        (let [v (ns-resolve ns-name 'add)
+              call-add (ns-resolve ns-name 'call-add)]
+          (testing "alter-var-root and with-redefs relink"
+            (alter-var-root v (constantly (fn [a b] (- a b))))
+            (is (= -1 (@call-add)))
+            (with-redefs-fn {v (fn [a b] :redef)}
+              #(is (= :redef (@call-add))))
+            (is (= -1 (@call-add))))
+          (testing "frequently changed roots fall back to getRawRoot"
+            (dotimes [i 100]
+              (alter-var-root v (constantly (fn [a b] i)))
+              (is (= i (@call-add)))))
+          (testing "non-fn roots still fail as before"
+            (alter-var-root v (constantly 42))
+            (is (thrown? ClassCastException (@call-add)))))
+        (finally
+          (remove-ns ns-name))))))
+
+(defn- java-sh
+  "Runs clojure main class with args in a child JVM on this JVM's classpath
+  plus dirs"
+  [dirs props main & args]
+  (apply clojure.java.shell/sh
+         (str (System/getProperty "java.home") "/bin/java")
+         (concat props
+                 ["-cp" (clojure.string/join java.io.File/pathSeparator
+                                             (conj (vec dirs) (System/getProperty "java.class.path")))
+                  main]
+                 args)))
+
+(deftest lazy-vars
+  (let [tmp #(.toFile (java.nio.file.Files/createTempDirectory
+                       % (make-array java.nio.file.attribute.FileAttribute 0)))
+        src (tmp "lazy-vars-src")
+        classes (tmp "lazy-vars-classes")
+        f (doto (java.io.File. src "lazy_vars/a.clj") (-> .getParentFile .mkdirs))]
+    (try
+      (spit f (binding [*print-meta* true]
+                (pr-str '(ns lazy-vars.a)
+                        '(defn f [x] (* 2 x))
+                        '(defn g [& xs] (apply + xs))
+                        '(defn p ^long [^long x] (inc x))
+                        '(let [k 10] (defn h [x] (+ k x)))
+                        '(defmacro m [x] (list 'g x 1))
+                        '(defn uses-m [] (m 5))
+                        '(def v (f 1)))))
+      (let [{:keys [exit err]} (java-sh [src classes]
+                                        ["-Dclojure.compiler.lazy-vars=true"
+                                         (str "-Dclojure.compile.path=" classes)]
+                                        "clojure.lang.Compile" "lazy-vars.a")]
+        (is (= 0 exit) err))
+      (let [{:keys [exit out err]}
+            (java-sh [classes] [] "clojure.main" "-e"
+                     (pr-str '(do
+                               (require 'lazy-vars.a)
+                               (let [class-of #(.getName (class (deref %)))
+                                    vars [#'lazy-vars.a/f #'lazy-vars.a/g #'lazy-vars.a/p
+                                          #'lazy-vars.a/h #'lazy-vars.a/uses-m]
+                                    before (mapv class-of vars)
+                                    results [(lazy-vars.a/f 3) (lazy-vars.a/g 1 2 3 4 5)
+                                             (lazy-vars.a/p 1) (lazy-vars.a/h 1)
+                                             (lazy-vars.a/uses-m) lazy-vars.a/v
+                                             (meta (with-meta lazy-vars.a/g {:a 1}))]]
+                                 (prn [before results (mapv class-of vars)])))))
+            [before results after] (read-string out)]
+        (is (= 0 exit) err)
+        (testing "fns are loaded on first call, unless called while loading"
+          (is (= ["lazy_vars.a$f" "clojure.lang.FnLoaderThunk" "lazy_vars.a$p"]
+                 (subvec before 0 3)))
+          (is (re-matches #"lazy_vars.a\$fn__\d+\$h__\d+" (before 3)) "closures are bound eagerly")
+          (is (= "clojure.lang.FnLoaderThunk" (before 4))))
+        (is (= [6 15 2 11 6 2 {:a 1}] results))
+        (is (= ["lazy_vars.a$f" "lazy_vars.a$g" "lazy_vars.a$p" (before 3) "lazy_vars.a$uses_m"]
+               after)))
+      (finally
+        (doseq [dir [src classes]
+                f (reverse (file-seq dir))]
+          (.delete ^java.io.File f))))))
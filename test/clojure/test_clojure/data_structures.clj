@@ -14,7 +14,8 @@
         [clojure.test.generative :exclude (is)])
   (:require [clojure.test-clojure.generators :as cgen]
             [clojure.data.generators :as gen]
-            [clojure.string :as string])
+            [clojure.string :as string]
+            [clojure.core.shapes :as shapes])
   (:import [java.util Collection]))
 
 
@@ -1029,6 +1030,119 @@
                     (into (range 7))
                     pop))))
 
+(deftest test-shape-maps
+  (let [m {:a 1 :b 2 :c 3}
+        sm (shapes/shaped m)]
+    (testing "is a map"
+      (is (instance? clojure.lang.PersistentShapeMap sm))
+      (is (map? sm))
+      (is (= m sm))
+      (is (= sm m))
+      (is (= (hash m) (hash sm)))
+      (is (= 2 (:b sm) (sm :b) (get sm :b)))
+      (is (= :none (get sm :d :none) (get sm "a" :none)))
+      (is (= [:c 3] (find sm :c)))
+      (is (= (seq m) (seq sm)))
+      (is (= [:a :b :c] (keys sm)))
+      (is (= [1 2 3] (vals sm)))
+      (is (= 6 (reduce-kv (fn [acc _ v] (+ acc v)) 0 sm)))
+      (is (= {:a 1} (meta (with-meta sm {:a 1}))))
+      (is (= {} (empty sm)))
+      (is (thrown? RuntimeException (.assocEx ^clojure.lang.IPersistentMap sm :a 1))))
+    (testing "shares shapes"
+      (is (identical? (shapes/shape-of sm) (shapes/shape-of (shapes/shaped {:a 4 :b 5 :c 6}))))
+      (is (identical? (shapes/shape-of sm) (shapes/shape [:a :b :c])))
+      (is (identical? (shapes/shape-of (assoc sm :d 4))
+                      (shapes/shape-of (assoc (shapes/shaped {:a 0 :b 0 :c 0}) :d 0))))
+      (is (identical? (shapes/shape-of (dissoc sm :b)) (shapes/shape [:a :c])))
+      (is (= {:a 7 :b 8 :c 9} (shapes/shaped (shapes/shape [:a :b :c]) [7 8 9])))
+      (is (= {:x 1} (shapes/shaped [:x] [1])))
+      (is (nil? (shapes/shape-of m))))
+    (testing "collected shapes leave the intern table"
+      (let [^java.util.Map table (-> (doto (.getDeclaredField clojure.lang.PersistentShapeMap$Shape "table")
+                                       (.setAccessible true))
+                                     (.get nil))
+            k (keyword (str (gensym "shape-collected-")))
+            s (shapes/shape [k])
+            ^java.lang.ref.Reference ref (some #(when (identical? s (.get ^java.lang.ref.Reference %)) %)
+                                               (keys table))]
+        (is ref)
+        ;; as the collector would
+        (.clear ref)
+        (.enqueue ref)
+        (shapes/shape [(keyword (str (gensym "shape-collected-")))])
+        (is (not (.containsKey table ref)))
+        (is (not (identical? s (shapes/shape [k]))))
+        (is (= [k] (.keys ^clojure.lang.PersistentShapeMap$Shape (shapes/shape [k]))))))
+    (testing "maps it can't hold"
+      (let [m {"a" 1}] (is (identical? m (shapes/shaped m))))
+      (is (= {} (shapes/shaped {})))
+      (is (= {"a" 1} (shapes/shaped {"a" 1})))
+      (is (instance? clojure.lang.PersistentArrayMap (assoc sm "d" 4)))
+      (is (= {:a 1 :b 2 :c 3 "d" 4} (assoc sm "d" 4)))
+      (let [big (reduce #(assoc %1 (keyword (str "k" %2)) %2) sm (range 20))]
+        (is (instance? clojure.lang.PersistentHashMap big))
+        (is (= 23 (count big))))
+      (is (thrown? IllegalArgumentException (shapes/shape [:a :a])))
+      (is (thrown? IllegalArgumentException (shapes/shape ["a"])))
+      (is (thrown? IllegalArgumentException (shapes/shape (map #(keyword (str "k" %)) (range 9)))))
+      (is (thrown? IllegalArgumentException (shapes/shaped [:a :b] [1]))))
+    (testing "transients"
+      (is (= {:a 1 :b 2 :c 3 :d 4} (into sm {:d 4})))
+      (is (instance? clojure.lang.PersistentShapeMap (into sm {:d 4})))
+      (is (= {:b 2} (persistent! (-> (transient sm) (dissoc! :a) (dissoc! :c)))))
+      (is (= {} (persistent! (reduce dissoc! (transient sm) [:a :b :c]))))
+      (is (= {:z 0} (persistent! (-> (transient sm) (dissoc! :a) (dissoc! :b) (dissoc! :c) (assoc! :z 0)))))
+      (is (= (into m (map (fn [i] [i i])) (range 10)) (into sm (map (fn [i] [i i])) (range 10)))))
+    (testing "random ops agree with hash maps"
+      (let [rnd (java.util.Random. 42)
+            ks (conj (mapv #(keyword (str "k" %)) (range 12)) "s")]
+        (dotimes [_ 200]
+          (loop [sm (shapes/shaped {:k0 0}) hm {:k0 0} n 0]
+            (when (< n 30)
+              (let [k (ks (.nextInt rnd (count ks)))
+                    [sm hm] (if (zero? (.nextInt rnd 3))
+                              [(dissoc sm k) (dissoc hm k)]
+                              [(assoc sm k n) (assoc hm k n)])]
+                (is (= hm sm))
+                (is (= (get hm :k1) (get sm :k1)))
+                (recur (shapes/shaped sm) hm (inc n))))))))))
+
+(deftest test-queue-transients-and-reduce
+  (let [EMPTY clojure.lang.PersistentQueue/EMPTY
+        ;; fronts of a list, a vector's seq, and a vector's seq with a rear
+        qs [(conj EMPTY 0)
+            (into EMPTY (range 100))
+            (into (pop (into EMPTY (range -1 50))) (range 50 100))]]
+    (testing "transients"
+      (is (= (range 100) (into EMPTY (range 100))))
+      (is (= (range 100) (persistent! (reduce conj! (transient EMPTY) (range 100)))))
+      (is (= (range 200) (into (into EMPTY (range 100)) (range 100 200))))
+      (is (= (range 1 200) (into (pop (into EMPTY (range 100))) (range 100 200))))
+      (is (= EMPTY (persistent! (transient EMPTY))))
+      (is (= {:a 1} (meta (into (with-meta EMPTY {:a 1}) (range 3)))))
+      (let [t (transient EMPTY)]
+        (is (= 2 (count (conj! (conj! t 1) 2))))
+        (is (= [1 2] (persistent! t)))
+        (is (thrown? IllegalAccessError (conj! t 3)))))
+    (testing "pop after transient conj"
+      (is (= (range 5 100) (nth (iterate pop (into EMPTY (range 100))) 5))))
+    (testing "reduce"
+      (doseq [q qs]
+        (is (= (reduce + (seq q)) (reduce + q) (reduce + 0 q)))
+        (is (= (vec (seq q)) (reduce conj [] q) (into [] (map identity) q)))
+        (is (= (first q) (reduce (fn [_ x] (reduced x)) nil q))))
+      (is (= 0 (reduce + EMPTY)))
+      (is (= 10 (reduce + 10 EMPTY)))
+      (is (= 98 (reduce (fn [acc x] (if (= x 98) (reduced x) acc)) 0 (last qs)))))
+    (testing "chunked seqs"
+      (doseq [q qs]
+        (is (= (seq q) (map identity q) (into [] (seq q))))
+        (is (chunked-seq? (seq q))))
+      (let [s (seq (last qs))]
+        (is (= 31 (count (.chunkedFirst ^clojure.lang.IChunkedSeq s))))
+        (is (= (range 31 100) (.chunkedNext ^clojure.lang.IChunkedSeq s)))))))
+
 
 (deftest test-duplicates
   (let [equal-sets-incl-meta (fn [s1 s2]
@@ -1236,6 +1350,28 @@
     (is (= (hash s)
            (hash-unordered unique-elem)))))
 
+(deftest hashes-match-across-representations
+  (let [elems (concat [nil :k "s" 1 1.5 [1 2] {:a 1}] (range 2000))]
+    (doseq [n [1 2 3 31 32 33 1057 2000]
+            :let [xs (take n elems)]]
+      (is (= (hash-ordered xs)
+             (hash (vec xs))
+             (hash (seq (object-array xs)))
+             (hash (next (seq (object-array (cons :x xs)))))))))
+  (doseq [e [(first {:a 1}) (first {nil nil}) (clojure.lang.MapEntry. [1] {:b 2})]]
+    (is (= (hash e) (hash [(key e) (val e)]))))
+  (doseq [n [0 1 2 8 9 40]
+          :let [kvs (mapcat (fn [i] [(keyword (str "k" i)) (* i i)]) (range n))
+                entries (map vec (partition 2 kvs))]]
+    (is (= (hash-unordered entries)
+           (hash (apply array-map kvs))
+           (hash (apply hash-map kvs))
+           (hash (apply sorted-map kvs))
+           (hash (shapes/shaped (apply array-map kvs)))))
+    (is (= (hash-unordered (cons [nil :v] entries))
+           (hash (apply hash-map nil :v kvs))
+           (hash (apply array-map nil :v kvs))))))
+
 (deftest ireduce-reduced
   (let [f (fn [_ a] (if (= a 5) (reduced "foo")))]
     (is (= "foo" (.reduce ^clojure.lang.IReduce (list 1 2 3 4 5) f)))
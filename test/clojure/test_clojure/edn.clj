@@ -10,9 +10,13 @@
 
 
 (ns clojure.test-clojure.edn
+  (:use clojure.test)
   (:require [clojure.test.generative :refer (defspec)]
             [clojure.test-clojure.generators :as cgen]
-            [clojure.edn :as edn]))
+            [clojure.edn :as edn])
+  (:import [clojure.lang EdnReader$ReaderException]
+           [java.io FilterReader PushbackReader StringReader]
+           [java.nio ByteBuffer]))
 
 (defn roundtrip
   "Print an object and read it back as edn. Returns rather than throws
@@ -36,3 +40,111 @@
   [^{:tag cgen/non-ednable} o]
   (when-not (instance? Throwable %)
     (throw (ex-info "edn/read should have thrown, see ex-data" {:printed o :read %}))))
+
+(defn- read-all
+  "Reads all the objects in s with edn/read."
+  ([s] (read-all {} s))
+  ([opts s]
+   (let [r (PushbackReader. (StringReader. s))
+         eof (Object.)]
+     (doall (take-while #(not (identical? eof %))
+                        (repeatedly #(edn/read (assoc opts :eof eof) r)))))))
+
+(defn- trickle-reader
+  "Returns a Reader of s that returns a char at a time, to read across
+  buffer refills everywhere."
+  [s]
+  (proxy [FilterReader] [(StringReader. s)]
+    (read
+      ([] (proxy-super read))
+      ([cbuf off len] (proxy-super read cbuf off (min len 1))))))
+
+(defn- sources
+  [^String s]
+  {:string s
+   :chars (.toCharArray s)
+   :bytes (ByteBuffer/wrap (.getBytes s "UTF-8"))
+   :reader (StringReader. s)
+   :trickle (trickle-reader s)})
+
+(defspec buffer-reader-reads-as-edn-reader
+  (fn [o]
+    (binding [*print-length* nil
+              *print-dup* nil
+              *print-level* nil]
+      (let [s (pr-str o)]
+        [(edn/read-string s) (first (edn/read-seq (trickle-reader s)))])))
+  [^{:tag cgen/ednable} o]
+  (when-not (apply = %)
+    (throw (ex-info "EdnBufferReader and EdnReader differ, see ex-data" {:printed o :read %}))))
+
+(def ^:private sample
+  (str "{:a 1, :b/c [1 -2 +3 0 -0 123456789012345678 1234567890123456789012 1N 0x1F -07 2r101 36rZZ 1/2 -3/6]}\n"
+       "[1.0 -2.5 1. 3e2 -4.5E-3 0.000001 1.5M 123456789.123456789 1e400 -0.0 01.5 ##Inf ##-Inf]\n"
+       "(nil true false sym ns/sym / :kw :ns/kw a.b/c.d -foo +bar <=> a'b a#b)\n"
+       "[\\a \\A \\newline \\space \\tab \\u0041 \\o101 \\( \\\\]\n"
+       "[\"\" \"plain\" \"tab\\there\" \"esc\\\"q\\\\\" \"\\u00e9\\101\\7\" \"multi\nline\" \"h\u00e9llo \u4e16\u754c\"]\n"
+       "; a comment\n #_ [discarded form] #_#_ 1 2 \r\n"
+       "#{1 :a \"s\"} #:ns{:a 1 :b/c 2 :_/d 3 sym 4} #:ns {:e 5} ^:m [1] ^{:k v} (2) ^tag sym\n"
+       "#inst \"2020-01-02T03:04:05.678-00:00\" #uuid \"b6883c0a-0342-4007-9966-bc2dfa6b109e\" #my/tag [1 2]\n"
+       "[" (apply str (repeat 10000 "x")) " \"" (apply str (repeat 10000 "y")) "\"]"))
+
+(def ^:private sample-opts {:readers {'my/tag (fn [v] {:tagged v})}})
+
+(deftest buffer-reader-sources
+  (let [expected (read-all sample-opts sample)]
+    (doseq [[k source] (sources sample)]
+      (testing k
+        (is (= expected (edn/read-seq sample-opts source)))))
+    (testing "meta"
+      (is (= (map meta expected) (map meta (edn/read-seq sample-opts sample)))))
+    (testing "ByteBuffers are read from their position, which is left unchanged"
+      (let [b (.position ^ByteBuffer (ByteBuffer/wrap (.getBytes "1 2 3")) 2)]
+        (is (= [2 3] (edn/read-seq b)))
+        (is (= 2 (.position b)))))
+    (testing "offset into a char array"
+      (is (= [2 3] (edn/read-seq (clojure.lang.EdnBufferReader. (.toCharArray "1 2 3 4") 2 3) ))))))
+
+(deftest buffer-reader-numbers
+  (let [tokens (concat (repeatedly 1000 #(pr-str (rand)))
+                       (repeatedly 1000 #(pr-str (* (- (rand) 0.5) (Math/pow 10 (- (rand-int 60) 30)))))
+                       (repeatedly 1000 #(format "%.3f" (* 1000 (rand))))
+                       (repeatedly 1000 #(format "%de%d" (rand-int 100000) (- (rand-int 50) 25)))
+                       (repeatedly 1000 #(pr-str (rand-int Integer/MAX_VALUE)))
+                       (repeatedly 1000 #(pr-str (- (long (* (rand) Long/MAX_VALUE)))))
+                       [(pr-str Long/MAX_VALUE) (pr-str Long/MIN_VALUE)])
+        s (apply str (interpose " " tokens))]
+    (is (= (read-all s) (edn/read-seq s)))
+    (is (= (map class (read-all s)) (map class (edn/read-seq s)))))
+  (is (Double/isNaN (first (edn/read-seq "NaN")))))
+
+(deftest buffer-reader-errors
+  (are [s msg] (thrown-with-msg? EdnReader$ReaderException msg (doall (edn/read-seq s)))
+       "[1 2" #"EOF while reading, starting at line 1"
+       "(1 2]" #"Unmatched delimiter: \]"
+       "{:a}" #"Map literal must contain an even number of forms"
+       "#{1 1}" #"Duplicate key: 1"
+       "1.2.3" #"Invalid number: 1.2.3"
+       "08" #"Invalid number: 08"
+       "\"abc" #"EOF while reading string"
+       "\"\\q\"" #"Unsupported escape character"
+       "\\foo" #"Unsupported character"
+       "::kw" #"Invalid token: ::kw"
+       "@foo" #"Invalid leading character"
+       "#<foo>" #"Unreadable form"
+       "#foo 1" #"No reader function for tag foo"
+       "#:a/b {}" #"Namespaced map must specify a valid namespace"
+       "##Foo" #"Unknown symbolic value")
+  (let [e (try (doall (edn/read-seq "[1 2]\n\n  {:a 1}\n [3 }")) (catch EdnReader$ReaderException e e))]
+    (is (= 4 (.line e)))
+    (is (= 6 (.column e))))
+  (is (= :done (edn/read {:eof :done} (PushbackReader. (StringReader. ""))))))
+
+(deftest read-reducible
+  (let [r (edn/read-reducible "1 2 3 4 5")]
+    (is (= 15 (reduce + 0 r)))
+    (is (= [2 3 4] (into [] (comp (map inc) (take 3)) r)))
+    (is (= 15 (transduce identity + r)) "each reduction reads anew"))
+  (let [r (edn/read-reducible (StringReader. "1 2 3 4 5"))]
+    (is (= [1 2] (into [] (take 2) r)))
+    (is (= [3 4 5] (into [] r)) "Readers are read on from where the last reduction stopped")))
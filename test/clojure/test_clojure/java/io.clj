@@ -13,7 +13,8 @@
                     FileInputStream InputStreamReader InputStream
                     FileOutputStream OutputStreamWriter OutputStream
                     ByteArrayInputStream ByteArrayOutputStream)
-           (java.net URL URI Socket ServerSocket)))
+           (java.net URL URI Socket ServerSocket)
+           (java.nio.file Path)))
 
 (defn temp-file
   [prefix suffix]
@@ -232,3 +233,91 @@
       (is (instance? OutputStream (output-stream client-socket)))
       (finally (.close server-socket)
                (.close client-socket)))))
+
+(deftest test-path
+  (let [file (temp-file "test-path" "txt")
+        path (.toPath file)]
+    (is (= file (as-file path)))
+    (is (= (as-url file) (as-url path)))
+    (with-open [w (writer path)]
+      (.write w "a"))
+    (with-open [w (writer path :append true)]
+      (.write w "b"))
+    (is (= "ab" (slurp path)))
+    (with-open [s (input-stream path)]
+      (stream-should-have s (.getBytes "ab") "Path"))
+    (with-open [s (output-stream path)]
+      (.write s (.getBytes "c")))
+    (is (= "c" (slurp path)))))
+
+(deftype TrackedSource [^bytes data closes])
+
+(extend TrackedSource
+  IOFactory
+  (assoc default-streams-impl
+    :make-input-stream (fn [^TrackedSource x opts]
+                         (make-input-stream
+                          (proxy [ByteArrayInputStream] [(.data x)]
+                            (close [] (swap! (.closes x) inc)))
+                          opts))))
+
+(defn- tracked-source
+  [^String s]
+  (TrackedSource. (.getBytes s "UTF-8") (atom 0)))
+
+(defn- should-close-each-reduction
+  [mk-reducible content expected]
+  (let [src (tracked-source content)
+        r (mk-reducible src)]
+    (is (= expected (into [] r)))
+    (is (= 1 @(.closes src)) "closed after completing")
+    (is (= (take 1 expected) (into [] (take 1) r)))
+    (is (= 2 @(.closes src)) "closed after stopping early")
+    (is (thrown? ArithmeticException (reduce (fn [_ _] (/ 1 0)) nil r)))
+    (is (= 3 @(.closes src)) "closed after throwing")))
+
+(deftest test-line-reducible
+  (let [file (temp-file "test-line-reducible" "txt")
+        content "a\nb≪\r\n\nccc"
+        expected ["a" "b≪" "" "ccc"]]
+    (spit file content)
+    (doseq [[x msg] [[file File]
+                     [(.toPath file) Path]
+                     [(str file) "File as String"]
+                     [(.getBytes content "UTF-8") "byte array"]]]
+      (is (= expected (into [] (line-reducible x))) msg))
+    (is (= 6 (transduce (map count) + (line-reducible file))))
+    (should-close-each-reduction line-reducible content expected)
+    (testing "open Readers are read on and left open"
+      (let [r (java.io.StringReader. content)
+            lines (line-reducible r)]
+        (is (= ["a"] (into [] (take 1) lines)))
+        (is (= (rest expected) (into [] lines)))
+        (is (= -1 (.read r (char-array 1))) "not closed")))
+    (is (= ["é"] (into [] (line-reducible (.getBytes "é" "ISO-8859-1") :encoding "ISO-8859-1"))))
+    (testing "malformed input is replaced, as by reader"
+      (copy (byte-array [(int \a) -1 (int \b)]) file)
+      (is (= ["a\uFFFDb"] (line-seq (reader file)) (into [] (line-reducible file)))))))
+
+(deftest test-byte-reducible
+  (let [file (temp-file "test-byte-reducible" "bin")
+        data (byte-array (map unchecked-byte (range 1000)))]
+    (copy data file)
+    (doseq [mk [(constantly file) #(.toPath file) (constantly data) #(ByteArrayInputStream. data)]
+            size [1 7 65536]
+            :let [x (mk)]]
+      (is (= (vec data) (into [] (byte-reducible x :buffer-size size))) [(class x) size]))
+    (is (= Byte (class (first (into [] (take 1) (byte-reducible file))))))
+    (is (= (vec (take 10 data)) (into [] (take 10) (byte-reducible (.toPath file) :buffer-size 3))))
+    (should-close-each-reduction byte-reducible "abc" (vec (.getBytes "abc")))))
+
+(deftest test-edn-reducible
+  (let [file (temp-file "test-edn-reducible" "edn")
+        content "{:a 1}\n[2 #my/tag 3] ; comment\n\"s\" :k"
+        expected [{:a 1} [2 {:tagged 3}] "s" :k]
+        readers {'my/tag (fn [v] {:tagged v})}]
+    (spit file content)
+    (doseq [x [file (.toPath file) (str file) (java.io.StringReader. content)]]
+      (is (= expected (into [] (edn-reducible x :readers readers))) (class x)))
+    (is (= 2 (transduce (comp (filter map?) (map :a)) + 1 (edn-reducible file :readers readers))))
+    (should-close-each-reduction #(edn-reducible % :readers readers) content expected)))
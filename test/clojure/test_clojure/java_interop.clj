@@ -69,6 +69,43 @@
     (is (= "field" (. t -a)))
     (is (thrown? IllegalArgumentException (. t -BOGUS)))))
 
+(deftest test-reflective-call-cache
+  ;; resolution is cached per receiver class and arg classes, so the
+  ;; same call site must still pick the right overload for each
+  (let [append (fn [sb x] (.append sb x))
+        sb (StringBuilder.)]
+    (doseq [x [1 \a "s" 2.5 nil true \b 3]]
+      (append sb x))
+    (is (= "1as2.5nulltrueb3" (str sb))))
+  (let [index-of (fn [s x] (.indexOf s x))]
+    (dotimes [_ 3]
+      (is (= 1 (index-of "abc" "b")))
+      (is (= 2 (index-of "abc" (int \c))))
+      (is (= 0 (index-of [1 2] 1)))
+      (is (= -1 (index-of [1 2] nil)))))
+  (let [abs (fn [x] (Math/abs x))]
+    (dotimes [_ 3]
+      (is (= 7 (abs -7)))
+      (is (= 7.5 (abs -7.5)))))
+  (let [size (fn [c] (.size c))]
+    (is (= [0 1 2] (map size [[] (java.util.ArrayList. [1]) #{1 2}]))))
+  (let [equals (fn [s x] (.equals s x))
+        t (eval '(do (deftype ReflectiveCallArg []) (ReflectiveCallArg.)))]
+    (dotimes [_ 3]
+      (is (false? (equals "s" t)))
+      (is (true? (equals t t)))))
+  (let [value-of (fn [x] (String/valueOf x))]
+    (is (= ["1" "a" "1.5" "true" "1"] (map value-of [1 \a 1.5 true 1]))))
+  (is (thrown? IllegalArgumentException (let [f (fn [x] (.noSuchMethod x))] (f "s"))))
+  (testing "calls on JDK classes with Clojure args are cached"
+    (let [put (fn [m k v] (.put m k v))
+          cache (-> (doto (.getDeclaredField clojure.lang.Reflector "instanceMethods")
+                      (.setAccessible true))
+                    (.get nil)
+                    (.get java.util.IdentityHashMap))]
+      (put (java.util.IdentityHashMap.) :a 1)
+      (is (some #(= "put" (.getName ^java.lang.reflect.Method %)) (vals cache))))))
+
 (deftest test-double-dot
   (is (= (.. System (getProperties) (get "os.name"))
          (. (. System (getProperties)) (get "os.name")))))
@@ -7,7 +7,8 @@
 ;   You must not remove this notice, or any other, from this software.
 
 (ns clojure.test-clojure.keywords
-  (:use clojure.test))
+  (:use clojure.test)
+  (:require clojure.edn))
 
 (let [this-ns (str (.name *ns*))]
   (deftest test-find-keyword
@@ -23,3 +24,38 @@
       (are [result lookup] (= result (find-keyword this-ns lookup))
            ::foo "foo"
            nil (str absent-keyword-sym)))))
+
+(deftest test-intern-keyword
+  (let [prefix (str (gensym "kw-intern-"))
+        names (mapv #(str prefix "-" %) (range 5000))
+        kws (->> (repeatedly 4 #(future (mapv keyword names)))
+                 doall
+                 (mapv deref))]
+    (testing "concurrent interning, past the table's initial size"
+      (is (every? #(every? true? (map identical? (first kws) %)) (rest kws)))
+      (is (every? true? (map #(identical? %1 (find-keyword %2)) (first kws) names))))
+    (testing "every way of interning finds the same keyword"
+      (let [k (keyword "kw.ns" (str prefix "-x"))]
+        (is (identical? k (keyword (str "kw.ns/" prefix "-x"))))
+        (is (identical? k (keyword (symbol "kw.ns" (str prefix "-x")))))
+        (is (identical? k (read-string (str ":kw.ns/" prefix "-x"))))
+        (is (identical? k (clojure.edn/read-string (str ":kw.ns/" prefix "-x"))))
+        (is (identical? k (find-keyword "kw.ns" (str prefix "-x"))))))
+    (testing "names split at the first slash, as symbols do"
+      (is (= "a" (namespace (keyword "a/b/c"))))
+      (is (= "b/c" (name (keyword "a/b/c"))))
+      (is (nil? (namespace (keyword "/"))))
+      (is (identical? (keyword "a" "b/c") (keyword "a/b/c"))))
+    (testing "metadata is not kept on the keyword's symbol"
+      (is (nil? (meta (.sym (keyword (with-meta (symbol (str prefix "-m")) {:a 1}))))))))
+  (testing "keywords no longer referenced are collected"
+    (let [s (str (gensym "kw-collected-"))]
+      (keyword s)
+      (is (loop [i 0]
+            (System/gc)
+            (Thread/sleep 10)
+            ;; interning drops collected entries
+            (keyword (str (gensym "kw-collect-trigger-")))
+            (cond (nil? (find-keyword s)) true
+                  (< i 50) (recur (inc i))
+                  :else false))))))
@@ -232,3 +232,37 @@
     (is (fn? (get-method simple3 :b)))
     (is (= :b ((get-method simple3 :b) 1)))
     (is (nil? (get-method simple3 :c)))))
+
+(deftest concurrent-dispatch-with-changing-hierarchy
+  (testing "dispatch stays correct while methods and the hierarchy change underneath it"
+    (let [h (atom (-> (make-hierarchy)
+                      (derive ::sq ::rect)
+                      (derive ::rect ::shape)))
+          mf (clojure.lang.MultiFn. "area" identity :default h)]
+      (.addMethod mf ::shape (constantly :shape))
+      (.addMethod mf [::rect ::rect] (constantly :rects))
+      (let [running (atom true)
+            readers (doall
+                      (for [_ (range 4)]
+                        (future
+                          (loop [bad 0]
+                            (if @running
+                              (recur (cond-> bad
+                                       (not (#{:shape :rect} (mf ::sq))) inc
+                                       (not= :rects (mf [::sq ::sq])) inc))
+                              bad)))))]
+        (dotimes [i 200]
+          (if (even? i)
+            (.addMethod mf ::rect (constantly :rect))
+            (.removeMethod mf ::rect))
+          (swap! h derive (keyword (str "x" i)) ::shape))
+        (reset! running false)
+        (is (every? zero? (map deref readers))))
+      (is (= :shape (mf ::sq)))
+      (is (= :shape (mf :x5)))
+      (swap! h derive ::sq ::special)
+      (.addMethod mf ::special (constantly :special))
+      (is (thrown? IllegalArgumentException (mf ::sq)))
+      (.preferMethod mf ::special ::shape)
+      (is (= :special (mf ::sq)))
+      (is (thrown? IllegalStateException (.preferMethod mf ::shape ::special))))))
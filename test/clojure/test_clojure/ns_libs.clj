@@ -9,7 +9,9 @@
 ; Authors: Frantisek Sodomka, Stuart Halloway
 
 (ns clojure.test-clojure.ns-libs
-  (:use clojure.test))
+  (:use clojure.test)
+  (:require [clojure.core.loader :as loader]
+            clojure.java.shell))
 
 ; http://clojure.org/namespaces
 
@@ -103,3 +105,171 @@
   (is (thrown-with-cause-msg? clojure.lang.Compiler$CompilerException
                         #"defrecord and deftype fields must be symbols, user\.MyType had: :key1"
                         (eval '(deftype MyType [:key1])))))
+
+(defn- write-lib-dir
+  "Writes the libs (a map of lib name to its forms) under a new temp dir,
+  returning the dir"
+  ^java.io.File [libs]
+  (let [dir (.toFile (java.nio.file.Files/createTempDirectory
+                      "parload" (make-array java.nio.file.attribute.FileAttribute 0)))]
+    (doseq [[lib forms] libs
+            :let [f (java.io.File. dir (str (.. (name lib) (replace \- \_) (replace \. \/)) ".clj"))]]
+      (.mkdirs (.getParentFile f))
+      (spit f (apply str (map pr-str forms))))
+    dir))
+
+(defn- delete-tree [^java.io.File f]
+  (run! delete-tree (.listFiles f))
+  (.delete f))
+
+(defn- call-with-libs
+  "Calls f with the libs written as write-lib-dir and loadable through
+  Compiler/LOADER, then deletes them and unloads their namespaces"
+  [libs f]
+  (let [dir (write-lib-dir libs)]
+    (try
+      (with-bindings {clojure.lang.Compiler/LOADER
+                      (doto (clojure.lang.DynamicClassLoader.)
+                        (.addURL (.toURL (.toURI dir))))}
+        (f))
+      (finally
+        (delete-tree dir)
+        (run! remove-ns (keys libs))
+        (dosync (commute @#'clojure.core/*loaded-libs* #(apply disj % (keys libs))))))))
+
+(defn await-lib-waiters
+  "Waits up to 10 seconds for n threads to be waiting for another to
+  finish loading lib"
+  [lib n]
+  (let [^java.util.Map waits @#'clojure.core/lib-waits
+        deadline (+ (System/nanoTime) 10000000000)]
+    (while (and (< (count (filter #{lib} (vals waits))) n)
+                (< (System/nanoTime) deadline))
+      (Thread/yield))))
+
+(deftest test-require-parallel
+  (let [p "parload.t1"
+        lib #(symbol (str p "." %))
+        log (symbol (str p ".log") "log")
+        gate (symbol (str p ".log") "gate")
+        libs {(lib "log") `[(~'ns ~(lib "log"))
+                            (def ~'log (atom []))
+                            (def ~'gate (java.util.concurrent.CountDownLatch. 1))]
+              (lib "a") `[(~'ns ~(lib "a") (:require ~(lib "log"))) (swap! ~log conj :a)]
+              (lib "b") `[(~'ns ~(lib "b") (:require [~(lib "a") :as ~'a])) (swap! ~log conj :b)]
+              (lib "c") `[(~'ns ~(lib "c") (:require (~(symbol p) ~'a ~'log))) (swap! ~log conj :c)]
+              (lib "d") `[(~'ns ~(lib "d") (:use ~(lib "b")) (:require ~(lib "c")))
+                          (swap! ~log conj :d)
+                          (.countDown ~gate)]
+              ;; finishes only once d has loaded on another thread
+              (lib "slow") `[(~'ns ~(lib "slow") (:require ~(lib "log")))
+                             (swap! ~log conj (if (.await ~gate 10 java.util.concurrent.TimeUnit/SECONDS)
+                                                :slow
+                                                :timeout))]}]
+    (call-with-libs libs
+      (fn []
+        (is (= {(lib "d") #{(lib "b") (lib "c")}
+                (lib "b") #{(lib "a")}
+                (lib "c") #{(lib "a") (lib "log")}
+                (lib "a") #{(lib "log")}
+                (lib "log") #{}}
+               (loader/dependency-graph [(lib "d")])))
+        (let [times (loader/require-parallel [(lib "d") (lib "slow")] :threads 4)
+              order @@(resolve log)]
+          (is (= (set (keys libs)) (set (keys times))))
+          (is (every? pos? (vals times)))
+          (is (= #{:a :b :c :d :slow} (set order)) "independent libs load in parallel")
+          (is (= :a (first order)))
+          (is (< (.indexOf order :b) (.indexOf order :d)))
+          (is (< (.indexOf order :c) (.indexOf order :d)))
+          (is (every? (loaded-libs) (keys libs)))
+          (is (= {} (loader/require-parallel [(lib "d")]))))))))
+
+(def once-loads (atom 0))
+
+(deftest test-concurrent-require
+  (let [lib 'parload.t2.once]
+    (call-with-libs {lib `[(~'ns ~lib)
+                           (await-lib-waiters '~lib 3)
+                           (swap! once-loads inc)]}
+      (fn []
+        (let [gate (java.util.concurrent.CountDownLatch. 1)
+              fs (doall (repeatedly 4 #(future (.await gate) (require lib))))]
+          (.countDown gate)
+          (run! deref fs)
+          (is (= 1 @once-loads)))))))
+
+(deftest test-load-profile
+  (let [lib 'parload.t3.prof
+        dir (write-lib-dir {lib `[(~'ns ~lib (:require [clojure.set :as ~'set]))
+                                  (defn ~'f [x#] (set/union #{x#} #{1}))
+                                  (~'f 2)]})]
+    (try
+      (let [{:keys [exit out err]}
+            (clojure.java.shell/sh
+              (str (System/getProperty "java.home") "/bin/java")
+              "-Dclojure.load.profile=true"
+              "-cp" (str dir java.io.File/pathSeparator (System/getProperty "java.class.path"))
+              "clojure.main" "-e"
+              (pr-str `(do (require 'clojure.core.loader '~lib)
+                           (prn (select-keys (clojure.core.loader/load-profile)
+                                             ["parload/t3/prof" "clojure/set"])))))
+            profile (read-string out)
+            phases [:read :analyze :emit :define :eval]]
+        (is (= 0 exit) err)
+        (is (= 1 (get-in profile ["parload/t3/prof" :loads])))
+        (is (every? pos? (map (profile "parload/t3/prof") phases)))
+        (is (zero? (get-in profile ["parload/t3/prof" :init])))
+        (is (= (get-in profile ["parload/t3/prof" :total])
+               (reduce + (map (profile "parload/t3/prof") (conj phases :init)))))
+        (is (pos? (get-in profile ["clojure/set" :init])))
+        (is (re-find #"(?m)^\s+total\s+read\s+analyze.*lib$" err) "report printed at exit"))
+      (finally
+        (delete-tree dir)))))
+
+(def x-loading (promise))
+
+(deftest test-require-and-requiring-resolve-dont-deadlock
+  ;; one thread is loading x, whose top level then calls requiring-resolve,
+  ;; while another calls requiring-resolve on x
+  (let [x 'parload.t3.x
+        y 'parload.t3.y]
+    (call-with-libs {x `[(~'ns ~x)
+                         (deliver x-loading true)
+                         (await-lib-waiters '~x 1)
+                         (def ~'g ((requiring-resolve '~(symbol (name y) "f"))))]
+                     y `[(~'ns ~y)
+                         (defn ~'f [] :f)]}
+      (fn []
+        (let [loader (future (require x))
+              _ @x-loading
+              resolver (future (requiring-resolve (symbol (name x) "g")))]
+          (is (not= :timeout (deref loader 10000 :timeout)))
+          (is (= (resolve (symbol (name x) "g")) (deref resolver 10000 :timeout)))
+          (is (= :f @(resolve (symbol (name x) "g")))))))))
+
+(def cycle-entered (java.util.concurrent.CountDownLatch. 2))
+
+(defn- messages [^Throwable t]
+  (map #(.getMessage ^Throwable %) (take-while some? (iterate #(.getCause ^Throwable %) t))))
+
+(deftest test-cross-thread-cyclic-require
+  ;; each thread starts loading one lib of the cycle before requiring the other
+  (let [a 'parload.t4.a
+        b 'parload.t4.b]
+    (call-with-libs {a `[(~'ns ~a)
+                         (.countDown cycle-entered)
+                         (.await cycle-entered)
+                         (require '~b)]
+                     b `[(~'ns ~b)
+                         (.countDown cycle-entered)
+                         (.await cycle-entered)
+                         (require '~a)]}
+      (fn []
+        (let [fs (mapv #(future (try (require %) :loaded (catch Exception e e))) [a b])
+              results (doall (map #(deref % 10000 :timeout) fs))]
+          (is (not-any? #{:timeout} results))
+          ;; the thread that closes the cycle throws, freeing the other to finish
+          (is (seq (remove keyword? results)))
+          (is (every? #(some (partial re-find #"Cyclic load dependency") (messages %))
+                      (remove keyword? results))))))))
@@ -797,3 +797,60 @@
                 '(reify ITestCLJ888
                    (i-clj-888 [this & more]
                      :foo))))))
+
+(defprotocol PMegamorphic
+  (mega-name [x]))
+
+(extend-protocol PMegamorphic
+  Object
+  (mega-name [x] (.getName (class x)))
+  Number
+  (mega-name [x] :number)
+  nil
+  (mega-name [x] :nil))
+
+(deftest megamorphic-dispatch
+  (let [xs (concat [nil 1 2.5 1/2 (biginteger 3) (byte 1)]
+                   [[] {} #{} () "s" :k 's \c (Object.) (java.util.Date.)
+                    (atom 1) (ref 1) (agent 1) (volatile! 1) (delay 1) (promise)
+                    (java.util.ArrayList.) (java.util.HashMap.) (java.util.TreeMap.)
+                    (java.util.LinkedList.) (java.util.HashSet.) (java.util.ArrayDeque.)
+                    (java.util.concurrent.ConcurrentHashMap.) (StringBuilder.)
+                    (range 3) (lazy-seq nil) (sorted-map) (sorted-set) (vector-of :int)
+                    (transient []) (transient {}) (int-array 1) (object-array 1)
+                    (make-array String 1) (java.util.UUID/randomUUID) #"re" (Exception.)
+                    (Thread/currentThread) (->TestRecord 1 2) (->EmptyRecord)
+                    (reify Object) (fn []) #'mega-name String Class
+                    (java.io.StringReader. "") (java.io.StringWriter.) (java.io.File. "f")
+                    (java.net.URI. "http://x") (java.util.Random.) (Boolean. true) true])
+        expected (map #(cond (nil? %) :nil (number? %) :number :else (.getName (class %))) xs)
+        classes (count (set (map class xs)))]
+    (is (< 50 classes))
+    ;; every class seen once, then again from the populated cache
+    (dotimes [_ 3]
+      (is (= expected (map mega-name xs))))
+    (testing "extending after caching replaces the cached impl"
+      (extend-protocol PMegamorphic java.util.Date (mega-name [x] :date))
+      (is (= :date (mega-name (java.util.Date.))))
+      (is (= "java.lang.String" (mega-name "s"))))))
+
+(defprotocol PNilAndTwo
+  (nil-and-two [x]))
+
+(extend-protocol PNilAndTwo
+  nil
+  (nil-and-two [x] :nil)
+  String
+  (nil-and-two [x] :string)
+  Long
+  (nil-and-two [x] :long))
+
+(deftest nil-receiver-stays-cached
+  (is (= [:nil :string :long] (map nil-and-two [nil "s" 1])))
+  (let [^clojure.lang.MethodImplCache cache (.__methodImplCache ^clojure.lang.AFunction nil-and-two)
+        cached (->> (.table cache)
+                    (partition 2)
+                    (keep second)
+                    (map #(.c ^clojure.lang.MethodImplCache$Entry %)))]
+    (is (= #{nil String Long} (set cached)))
+    (is (= 3 (count cached)))))
@@ -93,3 +93,63 @@
 (deftest test-closed-over-clearing
   ;; this will throw OutOfMemory without proper reference clearing
   (is (number? (reduce + 0 (r/map identity (range 1e8))))))
+
+(deftest test-fold-sorted
+  (let [m (into (sorted-map) (map vector (range 10000) (range 10000)))
+        s (into (sorted-set) (range 10000))
+        kv+ (fn ([] 0) ([acc k v] (+ acc k v)))]
+    (is (= (* 2 (reduce + (range 10000))) (r/fold 16 + kv+ m)))
+    (is (= (reduce + (range 10000)) (r/fold 16 + + s)))
+    (is (= (range 10000) (seq (r/fold 16 r/cat r/append! s))))
+    (is (= (vec (keys m)) (r/fold 16 into (fn [acc k _] (conj acc k)) m)))
+    (is (= (range 10000) (into [] (r/map inc (r/fold 16 r/cat r/append! (r/map dec s))))))
+    (is (= 0 (r/fold + + (sorted-set))))))
+
+(deftest test-fold-sets-array-maps-and-ranges
+  (let [fold-vec (fn [n coll] (r/fold n (r/monoid into vector) conj coll))
+        kv+ (fn ([] 0) ([acc k v] (+ acc k v)))]
+    (doseq [coll [(range 10000) (range 5 -1000 -3) (range 1e4) (range 0N 1000 7)
+                  (range 1/2 100 1/3) (range 0.0 10 0.1) (range 0M 10 0.25M)]
+            n [1 16 512]]
+      (is (= (vec coll) (fold-vec n coll))))
+    (doseq [s [#{} #{1 2 3} (set (range 10000)) (into #{nil false} (range 100))]]
+      (is (= s (set (fold-vec 16 s))))
+      (is (= (count s) (r/fold 16 + (fn [acc _] (inc acc)) s))))
+    (let [m (apply array-map (range 2000))]
+      (is (= (reduce-kv kv+ 0 m) (r/fold 16 + kv+ m)))
+      (is (= (vec (keys m)) (r/fold 16 into (fn [acc k _] (conj acc k)) m))))
+    (is (= (reduce + (range 10000))
+           (r/fold 16 + + (r/map dec (range 1 10001)))))))
+
+(deftest test-subrange
+  (let [s (into (sorted-set) (range 0 1000 3))
+        m (into (sorted-map-by >) (map vector (range 1000) (range 1000)))
+        fold-keys (fn [sr] (seq (r/fold 4 r/cat r/append! sr)))
+        fold-map-keys (fn [sr] (seq (r/fold 4 r/cat (fn [acc k _] (r/append! acc k)) sr)))]
+    (doseq [[t k] [[> 300] [>= 300] [< 300] [<= 300] [> 1001] [< -1]]]
+      (is (= (seq (subseq s t k)) (fold-keys (r/subrange s t k))))
+      (is (= (seq (rsubseq s t k)) (fold-keys (r/rsubrange s t k))))
+      (is (= (vec (subseq s t k)) (into [] (r/subrange s t k))))
+      (is (= (seq (map key (subseq m t k))) (fold-map-keys (r/subrange m t k))))
+      (is (= (seq (map key (rsubseq m t k))) (fold-map-keys (r/rsubrange m t k))))
+      (is (= (vec (subseq m t k)) (into [] (r/subrange m t k))))
+      (is (= (vec (rsubseq m t k)) (into [] (r/rsubrange m t k))))
+      (is (= (reduce (fn [acc e] (+ acc (key e) (val e))) 0 (subseq m t k))
+             (reduce (fn [acc e] (+ acc (key e) (val e))) 0 (r/subrange m t k))
+             (reduce-kv (fn [acc k v] (+ acc k v)) 0 (r/subrange m t k))))
+      (is (= (map key (subseq m t k)) (transduce (map key) conj [] (r/subrange m t k)))))
+    (doseq [[st sk et ek] [[> 100 < 900] [>= 99 <= 900] [>= 500 < 500] [> 200 <= 201]]]
+      (is (= (seq (subseq s st sk et ek)) (fold-keys (r/subrange s st sk et ek))))
+      (is (= (seq (rsubseq s st sk et ek)) (fold-keys (r/rsubrange s st sk et ek))))
+      (is (= (seq (map key (subseq m st sk et ek)))
+             (fold-map-keys (r/subrange m st sk et ek))))
+      (is (= (seq (map key (rsubseq m st sk et ek)))
+             (fold-map-keys (r/rsubrange m st sk et ek)))))
+    (is (= (reduce + (subseq s > 10 < 100))
+           (r/reduce + (r/subrange s > 10 < 100))
+           (r/fold 2 + + (r/subrange s > 10 < 100))))
+    (is (= 33 (r/reduce (fn [acc x] (if (> x 100) (reduced acc) (inc acc))) 0 (r/subrange s > 0))))
+    (let [m (into (sorted-map) (map vector (range 10) (range 10)))]
+      (is (= [[6 6] [7 7] [8 8] [9 9]] (into [] (r/subrange m > 5))))
+      (is (= (into [] (r/map identity (r/subrange m > 5))) (into [] (r/subrange m > 5))))
+      (is (= [6 7] (into [] (comp (map key) (take 2)) (r/subrange m > 5)))))))
@@ -10,7 +10,9 @@
 
 
 (ns clojure.test-clojure.refs
-  (:use clojure.test))
+  (:use clojure.test)
+  (:require clojure.java.shell
+            [clojure.core.stm :as stm]))
 
 ; http://clojure.org/refs
 
@@ -20,3 +22,74 @@
 ; ensure ref-set alter commute
 ; set-validator get-validator
 
+
+(def ^:private stm-stress
+  '(let [a (ref 0) b (ref 0) c (ref 0) d (ref 0 :min-history 1)
+         consistent (atom true)
+         writers (doall (for [_ (range 4)]
+                          (future (dotimes [_ 2000]
+                                    (dosync (alter a inc)
+                                            (alter b dec)
+                                            (commute c inc)
+                                            (ensure d))))))
+         readers (doall (for [_ (range 2)]
+                          (future (dotimes [_ 2000]
+                                    (dosync (when-not (zero? (+ @a @b))
+                                              (reset! consistent false)))))))]
+     (run! deref (concat writers readers))
+     (prn [@a @b @c @d @consistent])))
+
+(deftest tl2-engine
+  (let [{:keys [exit out err]}
+        (clojure.java.shell/sh
+          (str (System/getProperty "java.home") "/bin/java")
+          "-Dclojure.stm.engine=tl2"
+          "-cp" (System/getProperty "java.class.path")
+          "clojure.main" "-e" (pr-str (list 'do stm-stress '(shutdown-agents))))]
+    (is (= 0 exit) err)
+    (is (= [8000 -8000 8000 0 true] (read-string out)))))
+
+(deftest stm-stats
+  (let [was (stm/enable-stats! true)]
+    (try
+      (stm/reset-stats!)
+      (let [r (ref 0)
+            c (ref 0)
+            n 200
+            fs (doall (for [_ (range 4)]
+                        (future (dotimes [_ n]
+                                  (dosync (alter r inc) (commute c inc))))))
+            _ (run! deref fs)
+            s (stm/stats)]
+        (is (= (* 4 n) @r @c))
+        (is (:enabled s))
+        (is (= (* 4 n) (:transactions s)))
+        ;; a commit that reruns commutes and then retries reruns them again
+        (is (<= (* 4 n) (:commute-reexecutions s)))
+        (is (every? #(<= 0 (% s)) [:retries :max-retries :barges :lock-wait-nanos])))
+      ;; a transaction whose body throws is still counted
+      (stm/reset-stats!)
+      (let [r (ref 0)
+            e (try (dosync (alter r inc) (/ 1 0)) (catch ArithmeticException e e))
+            s (stm/stats)]
+        (is (instance? ArithmeticException e))
+        (is (= 0 @r))
+        (is (= 1 (:transactions s)))
+        (is (= 0 (:retry-limit-failures s))))
+      ;; a reader older than every value in the history faults and grows it
+      (let [r (ref 0 :min-history 0 :max-history 5)
+            started (java.util.concurrent.CountDownLatch. 1)
+            latch (java.util.concurrent.CountDownLatch. 1)
+            f (future (dosync (.countDown started) (.await latch) @r))]
+        (.await started)
+        (dosync (alter r inc))
+        (.countDown latch)
+        @f
+        (is (pos? (:history-faults (stm/stats))))
+        (is (= {:history-count 0 :min-history 0 :max-history 5 :faults 1}
+               (stm/ref-stats r)))
+        (dosync (alter r inc))
+        (is (= {:history-count 1 :min-history 0 :max-history 5 :faults 0}
+               (stm/ref-stats r))))
+      (finally
+        (stm/enable-stats! was)))))
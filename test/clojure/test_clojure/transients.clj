@@ -95,7 +95,7 @@
 (deftest ops-on-transient-maps
   (doseq [x [{:foo 1 :bar 2}
              (array-map :foo 1 :bar 2)
-             (hash-map :foo 1 :bar 2)]]  ; no transient sorted maps
+             (hash-map :foo 1 :bar 2)]]
     (is (= (:foo x) (:foo (transient x))))
     (is (= (count x) (count (transient x))))
     (are [conj-args] (= (apply conj x conj-args)
@@ -137,7 +137,7 @@
            (persistent! (pop! (transient x)))))))
 
 (deftest ops-on-transient-sets
-  (doseq [x [#{"foo" "bar"} (hash-set "foo" "bar")]]  ; no transient sorted sets
+  (doseq [x [#{"foo" "bar"} (hash-set "foo" "bar") (sorted-set "foo" "bar")]]
     (is (= "bar" ((transient x) "bar")))
     (is (= 2 (count (transient x))))
     (are [conj-args] (= (apply conj x conj-args)
@@ -152,3 +152,51 @@
          '()
          '("bar")
          '("bar" "baz" "foo"))))
+
+(deftest ops-on-transient-sorted-maps
+  (doseq [x [(sorted-map 1 :a 2 :b)
+             (sorted-map-by > 1 :a 2 :b)
+             (into (sorted-map) (map vector (range 2000) (range)))]]
+    (is (= (x 1) ((transient x) 1)))
+    (is (= (count x) (count (transient x))))
+    (are [assoc-args] (let [p (persistent! (apply assoc! (transient x) assoc-args))]
+                        (and (= (apply assoc x assoc-args) p)
+                             (= (seq (apply assoc x assoc-args)) (seq p))
+                             (sorted? p)
+                             (identical? (.comparator ^clojure.lang.Sorted x)
+                                         (.comparator ^clojure.lang.Sorted p))))
+         '()
+         '(0 nil)
+         '(1 :c 3 :d)
+         (mapcat (fn [i] [i (- i)]) (range -500 500)))
+    (are [dissoc-args] (= (apply dissoc x dissoc-args)
+                          (persistent!
+                           (apply dissoc! (transient x) dissoc-args)))
+         '()
+         '(1)
+         '(1 2 3)
+         (range 2000))
+    (let [t (-> (transient x) (assoc! 3 :c) (dissoc! 1) (dissoc! 3) (assoc! 1 nil))]
+      (is (= (count (-> x (dissoc 3) (assoc 1 nil))) (count t)))
+      (is (contains? t 1))
+      (is (nil? (get t 1 :not-found)))
+      (is (not (contains? t 3)))
+      (is (= [1 nil] (find t 1))))))
+
+(deftest sorted-transient-errors
+  (is (thrown? ClassCastException (persistent! (conj! (transient (sorted-map)) [(Object.) 1]))))
+  (is (thrown? ClassCastException (into (sorted-set) [1 :a])))
+  (let [t (transient (sorted-set 1))]
+    (persistent! t)
+    (is (thrown? IllegalAccessError (conj! t 2)))))
+
+(deftest sorted-map-bulk-build
+  (let [kvs (interleave (range 1000) (map str (range 1000)))]
+    (is (= (apply sorted-map kvs)
+           (clojure.lang.PersistentTreeMap/createSorted compare (seq kvs))))
+    (is (= (range 1000)
+           (keys (clojure.lang.PersistentTreeMap/createSorted compare (seq kvs))))))
+  (is (thrown? IllegalArgumentException
+               (clojure.lang.PersistentTreeMap/createSorted compare (seq [2 :b 1 :a]))))
+  (is (thrown? IllegalArgumentException
+               (clojure.lang.PersistentTreeMap/createSorted compare (seq [1 :a 1 :b])))))
@@ -107,3 +107,33 @@
                   1000 :timeout)))
   (is (= 0 (deref (future (apply #'sample (range)))
                   1000 :timeout))))
+
+(def dyn-vars (vec (for [i (range 20)]
+                     (doto (intern *ns* (symbol (str "dyn-" i)) :root)
+                       (.setDynamic)))))
+
+(deftest test-binding-frames
+  ;; small frames are kept in an array, large ones spill into a map
+  (doseq [n [1 8 9 20]
+          :let [vs (take n dyn-vars)]]
+    (with-bindings (zipmap vs (range))
+      (is (= (range n) (map deref vs)))
+      (is (= (zipmap vs (range)) (select-keys (get-thread-bindings) vs)))
+      (is (every? bound? vs))
+      (with-bindings {(first vs) :inner (last dyn-vars) :last}
+        (is (= :inner @(first vs)))
+        (is (= :last @(last dyn-vars)))
+        (is (= (range 1 (min n 19)) (map deref (take 18 (rest vs)))))
+        (var-set (first vs) :set)
+        (is (= :set @(first vs)))
+        (is (= [:set :last] @(future [@(first vs) @(last dyn-vars)]))))
+      (is (= 0 @(first vs)))
+      (is (= (range n) ((bound-fn [] (doall (map deref vs))))))
+      (is (= (range n) @(future (doall (map deref vs))))))
+    (is (every? #(= :root @%) vs)))
+  (binding [a 1]
+    (with-bindings (zipmap (take 7 dyn-vars) (range))
+      (with-bindings {#'a 2 (nth dyn-vars 7) 7}
+        (is (= 2 a))
+        (is (= (range 8) (map deref (take 8 dyn-vars)))))
+      (is (= 1 a)))))
@@ -9,7 +9,9 @@
 ; Author: Stuart Halloway, Daniel Solano Gómez
 
 (ns clojure.test-clojure.vectors
-  (:use clojure.test))
+  (:use clojure.test)
+  (:require [clojure.core.rrb :as rrb]
+            [clojure.core.reducers :as r]))
 
 (deftest test-reversed-vec
   (let [r (range 6)
@@ -416,3 +418,161 @@
   (is (= [0 1 2 3] (vec (reify clojure.lang.IReduceInit
                           (reduce [_ f start]
                             (reduce f start (range 4))))))))
+
+(deftest test-primitive-long-and-double-vectors
+  (doseq [[empty-v xs nth-prim]
+          [[clojure.lang.PersistentLongVector/EMPTY (range 2000)
+            (fn [^clojure.lang.PersistentLongVector v i] (.nthLong v (int i)))]
+           [clojure.lang.PersistentDoubleVector/EMPTY (map double (range 2000))
+            (fn [^clojure.lang.PersistentDoubleVector v i] (.nthDouble v (int i)))]]]
+    (let [v (into empty-v xs)
+          pv (reduce conj empty-v xs)]
+      (testing "transient and persistent builds agree"
+        (is (= (vec xs) v pv))
+        (is (= (hash (vec xs)) (hash v)))
+        (is (= 2000 (count v))))
+      (testing "nth and primitive nth"
+        (is (= (nth xs 1234) (nth v 1234) (nth-prim v 1234)))
+        (is (thrown? IndexOutOfBoundsException (nth v 2000))))
+      (testing "reduce and kv-reduce"
+        (is (== (reduce + xs) (reduce + v) (reduce + 0 v)))
+        (is (== (reduce + xs) (reduce (fn [acc ^long x] (+ acc x)) 0 v)))
+        (is (== 10 (reduce (fn [acc x] (if (== x 10) (reduced x) acc)) 0 v)))
+        (is (== (reduce + (range 2000)) (reduce-kv (fn [acc i _] (+ acc i)) 0 v))))
+      (testing "seq, assoc and pop"
+        (is (= xs (seq v)))
+        (is (== 42 (nth (assoc v 100 42) 100)))
+        (is (== 42 (nth (persistent! (assoc! (transient v) 100 42)) 100)))
+        (is (= (butlast xs) (seq (pop v))))
+        (is (= (take 1000 xs) (persistent! (reduce (fn [t _] (pop! t)) (transient v) (range 1000)))))
+        (is (= (take 1000 xs) (reduce (fn [v _] (pop v)) v (range 1000)))))
+      (testing "values are coerced"
+        (is (== 3 (nth (conj empty-v 3.0) 0)))
+        (is (= [] (empty v)))))))
+
+(deftest test-mapped-vector
+  (let [f (java.io.File/createTempFile "mapped-vector" ".bin")]
+    (try
+      (with-open [out (java.io.DataOutputStream. (java.io.FileOutputStream. f))]
+        (dotimes [i 1000] (.writeLong out (* i i))))
+      (let [v (clojure.lang.MappedVector/open (.toPath f) :long)
+            expected (mapv #(* % %) (range 1000))]
+        (testing "reads like a vector"
+          (is (= 1000 (count v)))
+          (is (= expected v))
+          (is (= (hash expected) (hash v)))
+          (is (= 998001 (nth v 999) (peek v)))
+          (is (= (seq expected) (seq v)))
+          (is (thrown? IndexOutOfBoundsException (nth v 1000))))
+        (testing "reduce"
+          (is (= (reduce + expected) (reduce + v) (reduce + 0 v)))
+          (is (= (reduce + expected) (reduce (fn [acc ^long x] (+ acc x)) 0 v)))
+          (is (= 100 (reduce (fn [_ x] (if (>= x 100) (reduced x) x)) 0 v)))
+          (is (= (reduce-kv + 0 expected) (reduce-kv + 0 v))))
+        (testing "updates leave the file alone"
+          (let [v2 (-> v (assoc 5 -1) (conj 7.0) (assoc 1000 8))]
+            (is (= (-> expected (assoc 5 -1) (conj 8)) v2))
+            (is (= (reduce + (-> expected (assoc 5 -1) (conj 8))) (reduce + v2)))
+            (is (= (subvec (assoc expected 5 -1) 0 999) (-> v2 pop pop)))
+            (is (= 25 (nth v 5)))))
+        (testing "metadata and empty"
+          (is (= {:a 1} (meta (with-meta v {:a 1}))))
+          (is (= [] (empty v)))))
+      (finally (.delete f))))
+  (testing "multiple segments, narrow and record elements"
+    (let [seg (fn [& xs] (java.nio.ByteBuffer/wrap (byte-array xs)))
+          v (clojure.lang.MappedVector/create
+             (into-array java.nio.ByteBuffer [(seg 1 2 3) (seg 4 5 6) (seg -7)]) :byte)
+          pairs (clojure.lang.MappedVector/create
+                 (into-array java.nio.ByteBuffer [(seg 1 2 3 4) (seg 5 6)])
+                 2 (fn [^java.nio.ByteBuffer b off] [(.get b (int off)) (.get b (int (inc off)))]))]
+      (is (= [1 2 3 4 5 6 -7] v))
+      (is (= 14 (reduce + v)))
+      (is (thrown? IllegalArgumentException (conj v 1000)))
+      (is (= [[1 2] [3 4] [5 6]] pairs))
+      (are [segs type] (thrown? IllegalArgumentException
+                                (clojure.lang.MappedVector/create
+                                 (into-array java.nio.ByteBuffer segs) type))
+           [(seg 1 2 3)] :short
+           [(seg 1 2) (seg 3 4 5 6)] :short
+           [(seg 1 2 3) (seg 4 5) (seg 6 7 8)] :byte
+           [(java.nio.ByteBuffer/allocate 8) (java.nio.ByteBuffer/allocate 24)] :long))))
+
+(defn- same-vector?
+  [rv v]
+  (and (= (count v) (count rv))
+       (= v rv)
+       (= (seq v) (seq rv) (iterator-seq (.iterator ^Iterable rv)))
+       (= v (mapv #(nth rv %) (range (count rv))))
+       (= (hash v) (hash rv))
+       (= (reduce + 0 v) (reduce + 0 rv))
+       (= (reduce-kv (fn [acc i x] (+ acc (* i x))) 0 v)
+          (reduce-kv (fn [acc i x] (+ acc (* i x))) 0 rv))))
+
+(deftest test-rrb-vector
+  (let [rnd (java.util.Random. 42)
+        rand-int #(.nextInt rnd (max 1 (int %)))]
+    (dotimes [_ 30]
+      (loop [rv (rrb/rrb-vector (vec (range (rand-int 3000))))
+             v (vec (range (count rv)))
+             ops 0]
+        (when (< ops 30)
+          (let [n (count v)
+                [rv v] (case (int (rand-int 8))
+                         0 (let [xs (range (rand-int 2000))]
+                             [(reduce conj rv xs) (into v xs)])
+                         1 (let [start (rand-int (inc n))
+                                 end (+ start (rand-int (inc (- n start))))]
+                             [(rrb/slice rv start end) (subvec v start end)])
+                         2 (let [w (vec (range 100000 (+ 100000 (rand-int 5000))))
+                                 w (subvec w (rand-int (inc (quot (count w) 3))))]
+                             [(rrb/catvec rv (rrb/slice w 0)) (into v w)])
+                         3 (let [w (vec (range (rand-int 100)))]
+                             [(rrb/catvec w rv) (into w v)])
+                         4 (let [k (min n (rand-int 100))]
+                             [(nth (iterate pop rv) k) (nth (iterate pop v) k)])
+                         5 (if (pos? n)
+                             (let [i (rand-int n)] [(assoc rv i -1) (assoc v i -1)])
+                             [rv v])
+                         6 (let [i (rand-int (inc n))]
+                             [(rrb/insert-at rv i -2) (into (conj (subvec v 0 i) -2) (subvec v i))])
+                         7 (let [xs (range (rand-int 100))
+                                 k (min (+ n (count xs)) (rand-int 80))
+                                 t (reduce conj! (transient rv) xs)
+                                 w (into v xs)]
+                             [(persistent! (nth (iterate pop! t) k)) (nth (iterate pop w) k)]))]
+            (is (same-vector? rv v))
+            (recur rv v (inc ops))))))))
+
+(deftest test-rrb-vector-interop
+  (let [v (vec (range 10000))
+        rv (rrb/catvec (subvec v 0 5000) (rrb/slice v 5000))]
+    (testing "is a vector"
+      (is (vector? rv))
+      (is (instance? clojure.lang.RRBVector rv))
+      (is (= v rv))
+      (is (= rv v))
+      (is (= 42 (rv 42) (get rv 42) (nth rv 42)))
+      (is (= 9999 (peek rv)))
+      (is (= [] (empty rv) (rrb/rrb-vector) (rrb/catvec)))
+      (is (= {:a 1} (meta (with-meta rv {:a 1}))))
+      (is (thrown? IndexOutOfBoundsException (nth rv 10000)))
+      (is (thrown? IndexOutOfBoundsException (rrb/slice rv 5 4)))
+      (is (thrown? IllegalStateException (pop (rrb/rrb-vector)))))
+    (testing "subvec slices"
+      (is (instance? clojure.lang.RRBVector (subvec rv 10 20)))
+      (is (= (range 10 20) (subvec rv 10 20)))
+      (is (= [] (subvec rv 20 20))))
+    (testing "fold splits"
+      (is (= (reduce + v) (r/fold 100 + + rv)))
+      (is (= v (into [] (r/fold 100 r/cat r/append! rv)))))
+    (testing "transients"
+      (let [t (transient rv)]
+        (is (= 3 (-> t (conj! 1) (assoc! 0 3) (nth 0))))
+        (is (= 10001 (count (persistent! t))))
+        (is (thrown? IllegalAccessError (conj! t 2)))))
+    (testing "catvec and insert-at"
+      (is (= (concat v [1 2] (range 5)) (rrb/catvec rv [1 2] (range 5))))
+      (is (= (concat [-1] v) (rrb/insert-at rv 0 -1)))
+      (is (= (conj v -1) (rrb/insert-at rv 10000 -1)))
+      (is (thrown? IndexOutOfBoundsException (rrb/insert-at rv 10001 -1))))))